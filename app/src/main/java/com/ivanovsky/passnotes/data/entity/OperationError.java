@@ -78,6 +78,7 @@ public class OperationError implements Serializable {
             "Failed to get parent for: %s";
     public static final String GENERIC_MESSAGE_FILE_IS_NOT_A_DIRECTORY =
             "File is not a directory: %s";
+    public static final String GENERIC_MESSAGE_FAILED_TO_MOVE_FILE = "Failed to move file: %s";
     public static final String GENERIC_INVALID_DATABASE_ENTRY = "Invalid db entry: %s";
     public static final String GENERIC_FILE_ALREADY_EXISTS =
             "File with identical name already exists: %s";
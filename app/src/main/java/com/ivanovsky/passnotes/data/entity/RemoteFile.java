@@ -2,10 +2,17 @@ package com.ivanovsky.passnotes.data.entity;
 
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 import java.util.Objects;
 
-@Entity(tableName = "remote_file")
+@Entity(
+        tableName = "remote_file",
+        indices = {
+            @Index("uid"),
+            @Index("remote_path"),
+            @Index("locally_modified")
+        })
 public class RemoteFile {
 
     @ColumnInfo(name = "fs_authority")
@@ -62,6 +69,28 @@ public class RemoteFile {
 
     public RemoteFile() {}
 
+    public RemoteFile copy() {
+        RemoteFile copy = new RemoteFile();
+        copy.fsAuthority = fsAuthority;
+        copy.locallyModified = locallyModified;
+        copy.uploaded = uploaded;
+        copy.uploadFailed = uploadFailed;
+        copy.uploading = uploading;
+        copy.downloading = downloading;
+        copy.id = id;
+        copy.retryCount = retryCount;
+        copy.lastRetryTimestamp = lastRetryTimestamp;
+        copy.lastDownloadTimestamp = lastDownloadTimestamp;
+        copy.lastModificationTimestamp = lastModificationTimestamp;
+        copy.lastRemoteModificationTimestamp = lastRemoteModificationTimestamp;
+        copy.localPath = localPath;
+        copy.localBackupPath = localBackupPath;
+        copy.remotePath = remotePath;
+        copy.uid = uid;
+        copy.revision = revision;
+        return copy;
+    }
+
     public FSAuthority getFsAuthority() {
         return fsAuthority;
     }
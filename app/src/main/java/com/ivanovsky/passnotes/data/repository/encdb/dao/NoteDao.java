@@ -15,9 +15,23 @@ public interface NoteDao {
     @NonNull
     OperationResult<List<Note>> getNotesByGroupUid(@NonNull UUID groupUid);
 
+    /**
+     * Returns notes of the group that contain only properties required to display them in a
+     * list: title, user name, url, notes and OTP. Other properties are not read.
+     */
+    @NonNull
+    OperationResult<List<Note>> getNoteSummariesByGroupUid(@NonNull UUID groupUid);
+
     @NonNull
     OperationResult<Note> getNoteByUid(@NonNull UUID noteUid);
 
+    /**
+     * Returns note that contains only properties required to display it in a list,
+     * see {@link #getNoteSummariesByGroupUid(UUID)}.
+     */
+    @NonNull
+    OperationResult<Note> getNoteSummaryByUid(@NonNull UUID noteUid);
+
     @NonNull
     OperationResult<UUID> insert(@NonNull Note note);
 
@@ -21,6 +21,7 @@ import com.ivanovsky.passnotes.data.entity.OperationError;
 import com.ivanovsky.passnotes.data.entity.OperationResult;
 import com.ivanovsky.passnotes.data.entity.RemoteFile;
 import com.ivanovsky.passnotes.data.entity.RemoteFileMetadata;
+import com.ivanovsky.passnotes.data.entity.SyncProgress;
 import com.ivanovsky.passnotes.data.repository.RemoteFileRepository;
 import com.ivanovsky.passnotes.data.repository.file.FSOptions;
 import com.ivanovsky.passnotes.data.repository.file.FileSystemAuthenticator;
@@ -47,14 +48,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import timber.log.Timber;
 
 public class RemoteFileSystemProvider implements FileSystemProvider {
@@ -74,9 +71,8 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
     private final RemoteApiClient client;
     private final RemoteFileCache cache;
     private final StatusMap processingMap;
-    private final Map<UUID, CountDownLatch> processingUidToLatch;
-    private final Lock unitProcessingLock;
     private final FileHelper fileHelper;
+    private final ObserverBus observerBus;
     private final RemoteFileSyncProcessor syncProcessor;
     private final FSAuthority fsAuthority;
 
@@ -92,9 +88,8 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
         this.client = client;
         this.cache = new RemoteFileCache(remoteFileRepository, fsAuthority);
         this.processingMap = new StatusMap();
-        this.processingUidToLatch = new HashMap<>();
-        this.unitProcessingLock = new ReentrantLock();
         this.fileHelper = fileHelper;
+        this.observerBus = observerBus;
         this.syncProcessor =
                 new RemoteFileSyncProcessor(
                         fileSystemResolver, this, cache, observerBus, fsAuthority);
@@ -235,6 +230,59 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
 
         ProcessingUnit unit = null;
         try {
+            RemoteFile knownFile = options.isCacheEnabled() ? cache.getByUid(file.getUid()) : null;
+            if (knownFile != null
+                    && knownFile.getRevision() != null
+                    && canResolveDownloadConflict(knownFile, onConflictStrategy)) {
+                // revision is checked by the client, file is downloaded only if it was changed
+                unit =
+                        new ProcessingUnit(
+                                UUID.randomUUID(),
+                                ProcessingStatus.DOWNLOADING,
+                                knownFile.getUid(),
+                                knownFile.getRemotePath());
+
+                if (startProcessingUnit(unit)) {
+                    RemoteFileMetadata metadata =
+                            getOrThrow(
+                                    client.downloadFileIfChanged(
+                                            file,
+                                            knownFile.getRemotePath(),
+                                            knownFile.getRevision(),
+                                            knownFile.getLocalPath(),
+                                            createProgressListener(knownFile.getUid())));
+
+                    if (metadata == null) {
+                        Timber.d(
+                                "Local cached file is not modified: remote=%s, local=%s",
+                                knownFile.getRemotePath(), knownFile.getLocalPath());
+
+                        knownFile.setUploaded(true);
+                        knownFile.setUploadFailed(false);
+                        knownFile.setLocallyModified(false);
+                        knownFile.setRetryCount(0);
+                        knownFile.setLastRetryTimestamp(null);
+
+                        cache.update(knownFile);
+                    } else {
+                        Timber.d(
+                                "Updated cached file: remote=%s, local=%s",
+                                knownFile.getRemotePath(), knownFile.getLocalPath());
+
+                        updateDownloadedFile(knownFile, metadata);
+                    }
+
+                    result.from(openFile(knownFile.getLocalPath()));
+                } else {
+                    result.setError(
+                            newGenericIOError(
+                                    ERROR_FAILED_TO_START_PROCESSING_UNIT, new Stacktrace()));
+                }
+
+                onFinishProcessingUnit(unit.getProcessingUid());
+                return result;
+            }
+
             RemoteFileMetadata metadata = getOrThrow(client.getFileMetadata(file));
 
             String uid = metadata.getUid();
@@ -256,11 +304,16 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
                             "Downloading new file: remote=%s, local=%s",
                             remotePath, destinationPath);
 
-                    metadata = getOrThrow(client.downloadFile(remotePath, destinationPath));
+                    metadata =
+                            getOrThrow(
+                                    client.downloadFile(
+                                            remotePath,
+                                            destinationPath,
+                                            createProgressListener(uid)));
 
                     if (options.isCacheEnabled()) {
                         String localBackupPath = destinationPath + "_backup";
-                        FileUtils.copyFileOrThrow(
+                        FileUtils.linkOrCopyFileOrThrow(
                                 new File(destinationPath), new File(localBackupPath));
 
                         cachedFile = new RemoteFile();
@@ -307,30 +360,13 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
 
                         metadata =
                                 getOrThrow(
-                                        client.downloadFile(remotePath, cachedFile.getLocalPath()));
+                                        client.downloadFile(
+                                                remotePath,
+                                                cachedFile.getLocalPath(),
+                                                createProgressListener(uid)));
 
                         if (options.isCacheEnabled()) {
-                            String lastBackupPath = cachedFile.getLocalPath() + "_backup";
-                            FileUtils.copyFileOrThrow(
-                                    new File(cachedFile.getLocalPath()), new File(lastBackupPath));
-
-                            cachedFile.setRemotePath(metadata.getPath());
-                            cachedFile.setLocalBackupPath(lastBackupPath);
-                            cachedFile.setRevision(metadata.getRevision());
-                            cachedFile.setUploaded(true);
-                            cachedFile.setUploadFailed(false);
-                            cachedFile.setLocallyModified(false);
-                            cachedFile.setLastModificationTimestamp(
-                                    anyLastTimestamp(
-                                            metadata.getServerModified(),
-                                            metadata.getClientModified()));
-                            cachedFile.setLastRemoteModificationTimestamp(
-                                    metadata.getServerModified().getTime());
-                            cachedFile.setLastDownloadTimestamp(System.currentTimeMillis());
-                            cachedFile.setRetryCount(0);
-                            cachedFile.setLastRetryTimestamp(null);
-
-                            cache.update(cachedFile);
+                            updateDownloadedFile(cachedFile, metadata);
                         }
 
                         result.from(openFile(cachedFile.getLocalPath()));
@@ -371,6 +407,10 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
             // use cached file
             RemoteFile cachedFile = cache.getByUid(file.getUid());
             if (cachedFile != null) {
+                if (unit != null) {
+                    onFinishProcessingUnit(unit.getProcessingUid());
+                }
+
                 unit =
                         new ProcessingUnit(
                                 UUID.randomUUID(),
@@ -687,50 +727,23 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
         }
     }
 
-    private ProcessingUnit findProcessingUnit(String fileUid, String remotePath) {
-        ProcessingUnit entry;
-
-        if (fileUid == null) {
-            entry = processingMap.getByRemotePath(remotePath);
-        } else {
-            entry = processingMap.getByFileUid(fileUid);
-        }
-
-        return entry;
-    }
-
-    private void awaitProcessingUnitFinish(String fileUid, String remotePath)
+    private void awaitProcessingUnitFinish(ProcessingUnit unit, CountDownLatch latch)
             throws InterruptedException {
-        ProcessingUnit unit = findProcessingUnit(fileUid, remotePath);
-
-        CountDownLatch latch;
-
         Timber.d(
                 "Waiting until operation finished: fileUid="
-                        + fileUid
+                        + unit.getFileUid()
                         + ", remotePath="
-                        + remotePath);
+                        + unit.getRemotePath());
 
-        unitProcessingLock.lock();
-        try {
-            if (!processingUidToLatch.containsKey(unit.getProcessingUid())) {
-                latch = new CountDownLatch(1);
-
-                processingUidToLatch.put(unit.getProcessingUid(), latch);
-            } else {
-                latch = processingUidToLatch.get(unit.getProcessingUid());
-            }
-        } finally {
-            unitProcessingLock.unlock();
-        }
-
-        if (latch != null) {
-            Timber.d("Awaiting on latch: 0x" + Integer.toHexString(latch.hashCode()));
+        Timber.d("Awaiting on latch: 0x" + Integer.toHexString(latch.hashCode()));
 
-            latch.await(MAX_AWAITING_TIMEOUT_IN_SEC, TimeUnit.SECONDS);
-        }
+        latch.await(MAX_AWAITING_TIMEOUT_IN_SEC, TimeUnit.SECONDS);
 
-        Timber.d("Waiting finished: fileUid=" + fileUid + ", remotePath=" + remotePath);
+        Timber.d(
+                "Waiting finished: fileUid="
+                        + unit.getFileUid()
+                        + ", remotePath="
+                        + unit.getRemotePath());
     }
 
     private OperationResult<OutputStream> processFileUploading(
@@ -799,61 +812,30 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
         cache.update(file);
 
         onFinishProcessingUnit(processingUnitUid);
+
+        observerBus.notifyRemoteFileUploadDeferred(fsAuthority, file.getUid());
     }
 
     private boolean startProcessingUnit(ProcessingUnit unit) {
-        boolean unitStarted = false;
-
-        unitProcessingLock.lock();
-
         Timber.d("Starting processing unit: %s", unit);
 
-        try {
-            boolean running = true;
-            while (running) {
-                ProcessingUnit runningUnit =
-                        findProcessingUnit(unit.getFileUid(), unit.getRemotePath());
-                if (runningUnit == null) {
-                    processingMap.put(unit);
-                    unitStarted = true;
-                    running = false;
-                } else {
-                    unitProcessingLock.unlock();
-
-                    try {
-                        awaitProcessingUnitFinish(unit.getFileUid(), unit.getRemotePath());
+        while (true) {
+            CountDownLatch runningUnitLatch = processingMap.claim(unit);
+            if (runningUnitLatch == null) {
+                return true;
+            }
 
-                        unitProcessingLock.lock();
-                    } catch (InterruptedException e) {
-                        Timber.d("Can't await job finish, timeout has occurred.");
-                        running = false;
-                    }
-                }
+            try {
+                awaitProcessingUnitFinish(unit, runningUnitLatch);
+            } catch (InterruptedException e) {
+                Timber.d("Can't await job finish, timeout has occurred.");
+                return false;
             }
-        } finally {
-            unitProcessingLock.unlock();
         }
-
-        return unitStarted;
     }
 
     private void onFinishProcessingUnit(UUID processingUid) {
-        CountDownLatch latch = null;
-
-        unitProcessingLock.lock();
-        try {
-            processingMap.remove(processingUid);
-
-            if (processingUidToLatch.containsKey(processingUid)) {
-                latch = processingUidToLatch.remove(processingUid);
-            }
-        } finally {
-            unitProcessingLock.unlock();
-        }
-
-        if (latch != null) {
-            latch.countDown();
-        }
+        processingMap.release(processingUid);
     }
 
     private boolean canResolveMergeConflict(
@@ -910,6 +892,34 @@ public class RemoteFileSystemProvider implements FileSystemProvider {
         return client.getFileMetadata(file);
     }
 
+    private DownloadProgressListener createProgressListener(String uid) {
+        return (downloadedBytes, totalBytes) ->
+                observerBus.notifySyncProgressChanged(
+                        fsAuthority, uid, new SyncProgress(downloadedBytes, totalBytes));
+    }
+
+    private void updateDownloadedFile(RemoteFile cachedFile, RemoteFileMetadata metadata)
+            throws IOException {
+        String lastBackupPath = cachedFile.getLocalPath() + "_backup";
+        FileUtils.linkOrCopyFileOrThrow(
+                new File(cachedFile.getLocalPath()), new File(lastBackupPath));
+
+        cachedFile.setRemotePath(metadata.getPath());
+        cachedFile.setLocalBackupPath(lastBackupPath);
+        cachedFile.setRevision(metadata.getRevision());
+        cachedFile.setUploaded(true);
+        cachedFile.setUploadFailed(false);
+        cachedFile.setLocallyModified(false);
+        cachedFile.setLastModificationTimestamp(
+                anyLastTimestamp(metadata.getServerModified(), metadata.getClientModified()));
+        cachedFile.setLastRemoteModificationTimestamp(metadata.getServerModified().getTime());
+        cachedFile.setLastDownloadTimestamp(System.currentTimeMillis());
+        cachedFile.setRetryCount(0);
+        cachedFile.setLastRetryTimestamp(null);
+
+        cache.update(cachedFile);
+    }
+
     private <T> T getOrThrow(OperationResult<T> result) throws RemoteFSException {
         if (result.isSucceededOrDeferred()) {
             return result.getObj();
@@ -2,6 +2,7 @@ package com.ivanovsky.passnotes
 
 import android.app.Application
 import com.ivanovsky.passnotes.data.repository.settings.SettingsImpl
+import com.ivanovsky.passnotes.domain.UploadRetryScheduler
 import com.ivanovsky.passnotes.domain.loggingAndReporting.CrashReporterInteractor
 import com.ivanovsky.passnotes.domain.loggingAndReporting.LoggerInteractor
 import com.ivanovsky.passnotes.domain.workers.BackgroundSyncWorker
@@ -9,6 +10,7 @@ import com.ivanovsky.passnotes.domain.workers.CleanUpWorker
 import com.ivanovsky.passnotes.injection.AppStartDependencies
 import com.ivanovsky.passnotes.injection.DIModuleBuilder
 import com.ivanovsky.passnotes.injection.DefaultModuleBuilder
+import com.ivanovsky.passnotes.injection.GlobalInjector
 import org.koin.android.ext.koin.androidContext
 import org.koin.android.ext.koin.androidLogger
 import org.koin.core.context.startKoin
@@ -58,6 +60,7 @@ open class App : Application() {
             modules(moduleBuilder.buildModules())
         }
 
+        GlobalInjector.get<UploadRetryScheduler>().start()
         BackgroundSyncWorker.schedule(settings, this)
         CleanUpWorker.schedule(this)
     }
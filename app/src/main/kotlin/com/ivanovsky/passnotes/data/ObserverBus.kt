@@ -3,6 +3,7 @@ package com.ivanovsky.passnotes.data
 import android.os.Handler
 import android.os.Looper
 import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.entity.SyncProgress
 import com.ivanovsky.passnotes.data.entity.SyncProgressStatus
 import com.ivanovsky.passnotes.data.entity.SyncState
 import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
@@ -26,7 +27,11 @@ class ObserverBus {
     }
 
     interface NoteDataSetChanged : Observer {
-        fun onNoteDataSetChanged(groupUid: UUID)
+
+        /**
+         * @param noteUids uids of inserted, removed or moved notes, null if they are unknown
+         */
+        fun onNoteDataSetChanged(groupUid: UUID, noteUids: Set<UUID>?)
     }
 
     interface NoteContentObserver : Observer {
@@ -51,6 +56,17 @@ class ObserverBus {
             uid: String,
             status: SyncProgressStatus
         )
+
+        fun onSyncProgressChanged(
+            fsAuthority: FSAuthority,
+            uid: String,
+            progress: SyncProgress
+        ) {
+        }
+    }
+
+    interface RemoteFileUploadObserver : Observer {
+        fun onRemoteFileUploadDeferred(fsAuthority: FSAuthority, uid: String)
     }
 
     /**
@@ -94,9 +110,9 @@ class ObserverBus {
         }
     }
 
-    fun notifyNoteDataSetChanged(groupUid: UUID) {
+    fun notifyNoteDataSetChanged(groupUid: UUID, noteUids: Set<UUID>? = null) {
         filterObservers(NoteDataSetChanged::class.java).forEach { observer ->
-            handler.post { observer.onNoteDataSetChanged(groupUid) }
+            handler.post { observer.onNoteDataSetChanged(groupUid, noteUids) }
         }
     }
 
@@ -128,6 +144,22 @@ class ObserverBus {
         }
     }
 
+    fun notifySyncProgressChanged(
+        fsAuthority: FSAuthority,
+        uid: String,
+        progress: SyncProgress
+    ) {
+        filterObservers(SyncProgressStatusObserver::class.java).forEach { observer ->
+            handler.post { observer.onSyncProgressChanged(fsAuthority, uid, progress) }
+        }
+    }
+
+    fun notifyRemoteFileUploadDeferred(fsAuthority: FSAuthority, uid: String) {
+        filterObservers(RemoteFileUploadObserver::class.java).forEach { observer ->
+            handler.post { observer.onRemoteFileUploadDeferred(fsAuthority, uid) }
+        }
+    }
+
     fun notifyDatabaseDataSetChanged() {
         filterObservers(DatabaseDataSetObserver::class.java).forEach { observer ->
             handler.post(observer::onDatabaseDataSetChanged)
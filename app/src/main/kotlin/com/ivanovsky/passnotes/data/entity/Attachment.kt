@@ -2,14 +2,21 @@ package com.ivanovsky.passnotes.data.entity
 
 import android.os.Parcelable
 import kotlinx.parcelize.Parcelize
+import kotlinx.parcelize.TypeParceler
 
+/**
+ * Attachment metadata, binary data is read from [content] only when it's needed.
+ */
 @Parcelize
+@TypeParceler<AttachmentContent, AttachmentContent.Parceler>
 data class Attachment(
     val uid: String,
     val name: String,
     val hash: Hash,
-    val data: ByteArray
+    val content: AttachmentContent
 ) : Parcelable {
+
+    // Content is identified by hash, bytes are not compared
     override fun equals(other: Any?): Boolean {
         if (this === other) return true
         if (javaClass != other?.javaClass) return false
@@ -19,7 +26,6 @@ data class Attachment(
         if (uid != other.uid) return false
         if (name != other.name) return false
         if (hash != other.hash) return false
-        if (!data.contentEquals(other.data)) return false
 
         return true
     }
@@ -28,7 +34,6 @@ data class Attachment(
         var result = uid.hashCode()
         result = 31 * result + name.hashCode()
         result = 31 * result + hash.hashCode()
-        result = 31 * result + data.contentHashCode()
         return result
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package com.ivanovsky.passnotes.data.entity
+
+import android.os.Parcel
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import kotlinx.parcelize.Parceler as KotlinParceler
+
+/**
+ * Binary data of [Attachment]. Implementations keep a reference to the data
+ * stored in the database and don't copy it until [openStream] or [readBytes] is called.
+ */
+interface AttachmentContent {
+
+    val size: Long
+
+    fun openStream(): InputStream
+
+    fun readBytes(): ByteArray = openStream().use { input -> input.readBytes() }
+
+    /**
+     * Content is written as bytes, it is read back as [ByteArrayAttachmentContent].
+     */
+    object Parceler : KotlinParceler<AttachmentContent> {
+
+        override fun create(parcel: Parcel): AttachmentContent {
+            val data = parcel.createByteArray() ?: byteArrayOf()
+            return ByteArrayAttachmentContent(data)
+        }
+
+        override fun AttachmentContent.write(parcel: Parcel, flags: Int) {
+            parcel.writeByteArray(readBytes())
+        }
+    }
+}
+
+class ByteArrayAttachmentContent(
+    private val data: ByteArray
+) : AttachmentContent {
+
+    override val size: Long
+        get() = data.size.toLong()
+
+    override fun openStream(): InputStream = ByteArrayInputStream(data)
+
+    override fun readBytes(): ByteArray = data
+}
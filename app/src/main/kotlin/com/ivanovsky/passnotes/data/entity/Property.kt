@@ -1,21 +1,85 @@
 package com.ivanovsky.passnotes.data.entity
 
+import android.os.Parcel
 import android.os.Parcelable
 import com.ivanovsky.passnotes.data.entity.PropertyType.NOTES
 import com.ivanovsky.passnotes.data.entity.PropertyType.PASSWORD
 import com.ivanovsky.passnotes.data.entity.PropertyType.TITLE
 import com.ivanovsky.passnotes.data.entity.PropertyType.URL
 import com.ivanovsky.passnotes.data.entity.PropertyType.USER_NAME
-import kotlinx.parcelize.Parcelize
-
-@Parcelize
-data class Property(
-    val type: PropertyType? = null,
-    val name: String? = null,
-    val value: String? = null,
-    val isProtected: Boolean = false
+
+/**
+ * Field of [Note]. Value of the property can be resolved lazily (see [createLazy]), which
+ * allows to keep protected values encrypted in memory until they are accessed.
+ * [equals], [hashCode] and parceling resolve the value, [toString] doesn't print
+ * protected values.
+ */
+class Property private constructor(
+    val type: PropertyType?,
+    val name: String?,
+    private val lazyValue: Lazy<String?>,
+    val isProtected: Boolean
 ) : EncryptedDatabaseElement, Parcelable {
 
+    val value: String?
+        get() = lazyValue.value
+
+    constructor(
+        type: PropertyType? = null,
+        name: String? = null,
+        value: String? = null,
+        isProtected: Boolean = false
+    ) : this(type, name, lazyOf(value), isProtected)
+
+    /**
+     * Copies property without resolving its value
+     */
+    fun copy(
+        type: PropertyType? = this.type,
+        name: String? = this.name,
+        isProtected: Boolean = this.isProtected
+    ): Property = Property(type, name, lazyValue, isProtected)
+
+    fun copy(
+        type: PropertyType? = this.type,
+        name: String? = this.name,
+        value: String?,
+        isProtected: Boolean = this.isProtected
+    ): Property = Property(type, name, value, isProtected)
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is Property) return false
+
+        return type == other.type &&
+            name == other.name &&
+            isProtected == other.isProtected &&
+            value == other.value
+    }
+
+    override fun hashCode(): Int {
+        var result = type?.hashCode() ?: 0
+        result = 31 * result + (name?.hashCode() ?: 0)
+        result = 31 * result + (value?.hashCode() ?: 0)
+        result = 31 * result + isProtected.hashCode()
+        return result
+    }
+
+    override fun toString(): String {
+        val printableValue = if (isProtected) PROTECTED_VALUE_MASK else value
+        return "Property(type=$type, name=$name, value=$printableValue, " +
+            "isProtected=$isProtected)"
+    }
+
+    override fun describeContents(): Int = 0
+
+    override fun writeToParcel(parcel: Parcel, flags: Int) {
+        parcel.writeString(type?.name)
+        parcel.writeString(name)
+        parcel.writeString(value)
+        parcel.writeInt(if (isProtected) 1 else 0)
+    }
+
     companion object {
         const val PROPERTY_NAME_TEMPLATE = "_etm_template"
         const val PROPERTY_NAME_TEMPLATE_UID = "_etm_template_uuid"
@@ -24,6 +88,8 @@ data class Property(
 
         const val PROPERTY_VALUE_TEMPLATE = "1"
 
+        private const val PROTECTED_VALUE_MASK = "***"
+
         val DEFAULT_PROPERTIES = listOf(
             Property(TITLE, TITLE.propertyName, "", isProtected = false),
             Property(PASSWORD, PASSWORD.propertyName, "", isProtected = true),
@@ -31,5 +97,30 @@ data class Property(
             Property(URL, URL.propertyName, "", isProtected = false),
             Property(NOTES, NOTES.propertyName, "", isProtected = false)
         )
+
+        /**
+         * Creates property which value is resolved by [valueProvider] on the first access
+         * and then kept in memory
+         */
+        fun createLazy(
+            type: PropertyType?,
+            name: String?,
+            isProtected: Boolean,
+            valueProvider: () -> String?
+        ): Property = Property(type, name, lazy(valueProvider), isProtected)
+
+        @JvmField
+        val CREATOR = object : Parcelable.Creator<Property> {
+            override fun createFromParcel(parcel: Parcel): Property {
+                return Property(
+                    type = parcel.readString()?.let { PropertyType.valueOf(it) },
+                    name = parcel.readString(),
+                    value = parcel.readString(),
+                    isProtected = parcel.readInt() != 0
+                )
+            }
+
+            override fun newArray(size: Int): Array<Property?> = arrayOfNulls(size)
+        }
     }
-}
\ No newline at end of file
+}
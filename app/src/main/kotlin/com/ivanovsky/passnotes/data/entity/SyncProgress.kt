@@ -0,0 +1,6 @@
+package com.ivanovsky.passnotes.data.entity
+
+data class SyncProgress(
+    val transferredBytes: Long,
+    val totalBytes: Long?
+)
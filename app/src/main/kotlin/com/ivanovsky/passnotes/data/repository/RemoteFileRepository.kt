@@ -4,37 +4,109 @@ import com.ivanovsky.passnotes.data.entity.FSAuthority
 import com.ivanovsky.passnotes.data.entity.RemoteFile
 import com.ivanovsky.passnotes.data.repository.db.dao.RemoteFileDao
 
+/**
+ * Keeps in memory rows that were requested by uid or remote path, so repeated lookups don't
+ * query the database. All changes are written to the database first and then applied to
+ * the memory. Returned instances are copies and can be modified by callers.
+ */
 class RemoteFileRepository(
     private val dao: RemoteFileDao
 ) {
 
+    private val lock = Any()
+    private val filesById = HashMap<Long, RemoteFile>()
+
+    // Contains only loaded keys, a loaded key always has all its rows in [filesById]
+    private val idsByUid = HashMap<String, MutableSet<Long>>()
+    private val idsByRemotePath = HashMap<String, MutableSet<Long>>()
+
     fun getAll(fsAuthority: FSAuthority): List<RemoteFile> {
         return dao.all
             .filter { file -> file.fsAuthority == fsAuthority }
     }
 
+    fun getLocallyModified(): List<RemoteFile> {
+        return dao.getLocallyModified()
+    }
+
+    fun getLocallyModified(fsAuthority: FSAuthority): List<RemoteFile> {
+        return getLocallyModified()
+            .filter { file -> file.fsAuthority == fsAuthority }
+    }
+
     fun findByUid(uid: String, fsAuthority: FSAuthority): RemoteFile? {
-        return dao.all
-            .firstOrNull { file -> file.uid == uid && file.fsAuthority == fsAuthority }
+        return synchronized(lock) {
+            val ids = idsByUid[uid]
+                ?: loadIds(rows = dao.getByUid(uid)).also { ids -> idsByUid[uid] = ids }
+
+            findFile(ids, fsAuthority)
+        }
     }
 
     fun findByRemotePath(remotePath: String, fsAuthority: FSAuthority): RemoteFile? {
-        return dao.all
-            .firstOrNull { file ->
-                file.remotePath == remotePath && file.fsAuthority == fsAuthority
-            }
+        return synchronized(lock) {
+            val ids = idsByRemotePath[remotePath]
+                ?: loadIds(rows = dao.getByRemotePath(remotePath))
+                    .also { ids -> idsByRemotePath[remotePath] = ids }
+
+            findFile(ids, fsAuthority)
+        }
     }
 
     fun insert(file: RemoteFile) {
         val id = dao.insert(file)
         file.id = id
+
+        synchronized(lock) {
+            putFile(file.copy())
+        }
     }
 
     fun update(file: RemoteFile) {
         dao.update(file)
+
+        synchronized(lock) {
+            removeFile(file.id)
+            putFile(file.copy())
+        }
     }
 
     fun remove(id: Long) {
         dao.delete(id)
+
+        synchronized(lock) {
+            removeFile(id)
+        }
+    }
+
+    private fun findFile(ids: Set<Long>, fsAuthority: FSAuthority): RemoteFile? {
+        return ids
+            .mapNotNull { id -> filesById[id] }
+            .firstOrNull { file -> file.fsAuthority == fsAuthority }
+            ?.copy()
+    }
+
+    private fun loadIds(rows: List<RemoteFile>): MutableSet<Long> {
+        for (row in rows) {
+            removeFile(row.id)
+            putFile(row)
+        }
+
+        return rows.mapTo(HashSet<Long>()) { row -> row.id }
+    }
+
+    private fun putFile(file: RemoteFile) {
+        val id = file.id ?: return
+
+        filesById[id] = file
+        file.uid?.let { uid -> idsByUid[uid]?.add(id) }
+        file.remotePath?.let { remotePath -> idsByRemotePath[remotePath]?.add(id) }
+    }
+
+    private fun removeFile(id: Long?) {
+        val file = filesById.remove(id ?: return) ?: return
+
+        file.uid?.let { uid -> idsByUid[uid]?.remove(id) }
+        file.remotePath?.let { remotePath -> idsByRemotePath[remotePath]?.remove(id) }
     }
-}
\ No newline at end of file
+}
@@ -22,6 +22,7 @@ import com.ivanovsky.passnotes.data.repository.db.migration.MigrationFrom3To4
 import com.ivanovsky.passnotes.data.repository.db.migration.MigrationFrom4To5
 import com.ivanovsky.passnotes.data.repository.db.migration.MigrationFrom5To6
 import com.ivanovsky.passnotes.data.repository.db.migration.MigrationFrom6To7
+import com.ivanovsky.passnotes.data.repository.db.migration.MigrationFrom7To8
 
 // TODO(improvement): Unused data from should be removed from database
 
@@ -32,7 +33,7 @@ import com.ivanovsky.passnotes.data.repository.db.migration.MigrationFrom6To7
         GitRoot::class,
         TemporaryFile::class
     ],
-    version = 7
+    version = 8
 )
 @TypeConverters(
     FSAuthorityTypeConverter::class
@@ -69,7 +70,8 @@ abstract class AppDatabase : RoomDatabase() {
                 MigrationFrom3To4(),
                 MigrationFrom4To5(),
                 MigrationFrom5To6(),
-                MigrationFrom6To7()
+                MigrationFrom6To7(),
+                MigrationFrom7To8()
             )
         }
     }
@@ -11,6 +11,15 @@ interface RemoteFileDao {
     @get:Query("SELECT * FROM remote_file")
     val all: List<RemoteFile>
 
+    @Query("SELECT * FROM remote_file WHERE uid = :uid")
+    fun getByUid(uid: String): List<RemoteFile>
+
+    @Query("SELECT * FROM remote_file WHERE remote_path = :remotePath")
+    fun getByRemotePath(remotePath: String): List<RemoteFile>
+
+    @Query("SELECT * FROM remote_file WHERE locally_modified = 1")
+    fun getLocallyModified(): List<RemoteFile>
+
     @Insert
     fun insert(file: RemoteFile): Long
 
@@ -0,0 +1,20 @@
+package com.ivanovsky.passnotes.data.repository.db.migration
+
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+
+class MigrationFrom7To8 : Migration(7, 8) {
+
+    override fun migrate(db: SupportSQLiteDatabase) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS index_remote_file_uid ON remote_file (uid)")
+        db.execSQL(
+            "CREATE INDEX IF NOT EXISTS index_remote_file_remote_path ON remote_file (remote_path)"
+        )
+        db.execSQL(
+            """
+            CREATE INDEX IF NOT EXISTS index_remote_file_locally_modified
+            ON remote_file (locally_modified)
+            """.trimIndent()
+        )
+    }
+}
@@ -0,0 +1,235 @@
+package com.ivanovsky.passnotes.data.repository.encdb
+
+import arrow.core.Either
+import com.ivanovsky.passnotes.data.entity.OperationError
+import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_FAILED_TO_GET_DATABASE
+import com.ivanovsky.passnotes.data.entity.OperationError.newDbError
+import com.ivanovsky.passnotes.domain.entity.exception.Stacktrace
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import timber.log.Timber
+
+/**
+ * Coalesces commit requests: the database is encrypted and written once after
+ * [quietPeriodInMillis] without new requests, but not later than [maxDelayInMillis]
+ * after the first unsaved request.
+ *
+ * All commits are executed on a single background thread, [flush] waits for it,
+ * so [flush] and [close] should not be called while [EncryptedDatabase.lock] is held.
+ * Failed commit is reported to [onCommitFailed] and retried with exponential backoff
+ * starting from [retryDelayInMillis], until it succeeds or the scheduler is closed.
+ */
+class DatabaseCommitScheduler(
+    private val commitAction: () -> Either<OperationError, Boolean>,
+    private val onCommitFailed: (error: OperationError) -> Unit = {},
+    private val quietPeriodInMillis: Long = DEFAULT_QUIET_PERIOD_IN_MILLIS,
+    private val maxDelayInMillis: Long = DEFAULT_MAX_DELAY_IN_MILLIS,
+    private val retryDelayInMillis: Long = DEFAULT_RETRY_DELAY_IN_MILLIS
+) {
+
+    private val lock = ReentrantLock()
+
+    // Thread is not a daemon, so the process is not stopped in the middle of the write
+    private val executor = ScheduledThreadPoolExecutor(1) { runnable ->
+        Thread(runnable, THREAD_NAME).apply {
+            isDaemon = false
+        }
+    }.apply {
+        removeOnCancelPolicy = true
+    }
+
+    // All fields are guarded by [lock]
+    private var scheduledCommit: Future<*>? = null
+    private var pendingCount = 0
+    private var inProgressCount = 0
+    private var firstRequestTime = 0L
+    private var commitCount = 0
+    private var lastLatencyInMillis = 0L
+    private var totalLatencyInMillis = 0L
+    private var failedAttemptCount = 0
+    private var isClosed = false
+
+    /**
+     * Marks the database as changed and schedules commit.
+     */
+    fun requestCommit(): Either<OperationError, Boolean> {
+        lock.withLock {
+            if (isClosed) {
+                return Either.Left(newDbError(MESSAGE_FAILED_TO_GET_DATABASE, Stacktrace()))
+            }
+
+            val now = System.currentTimeMillis()
+            if (pendingCount == 0) {
+                firstRequestTime = now
+            }
+            pendingCount++
+
+            val delay = quietPeriodInMillis.coerceAtMost(
+                (firstRequestTime + maxDelayInMillis - now).coerceAtLeast(0L)
+            )
+
+            scheduledCommit?.cancel(false)
+            scheduledCommit = try {
+                executor.schedule(Runnable { runCommit() }, delay, TimeUnit.MILLISECONDS)
+            } catch (exception: RejectedExecutionException) {
+                Timber.d(exception)
+                return Either.Left(newDbError(MESSAGE_FAILED_TO_GET_DATABASE, Stacktrace()))
+            }
+        }
+
+        return Either.Right(true)
+    }
+
+    /**
+     * Writes pending changes immediately and waits until they are written.
+     */
+    fun flush(): Either<OperationError, Boolean> {
+        val future = lock.withLock {
+            if (pendingCount == 0 && inProgressCount == 0) {
+                return Either.Right(true)
+            }
+
+            scheduledCommit?.cancel(false)
+            scheduledCommit = null
+
+            try {
+                executor.submit<Either<OperationError, Boolean>> { runCommit() }
+            } catch (exception: RejectedExecutionException) {
+                Timber.d(exception)
+                return Either.Left(newDbError(MESSAGE_FAILED_TO_GET_DATABASE, Stacktrace()))
+            }
+        }
+
+        return try {
+            future.get()
+        } catch (exception: ExecutionException) {
+            Timber.d(exception)
+            Either.Left(newDbError(MESSAGE_FAILED_TO_GET_DATABASE, exception))
+        } catch (exception: InterruptedException) {
+            Timber.d(exception)
+            Thread.currentThread().interrupt()
+            Either.Left(newDbError(MESSAGE_FAILED_TO_GET_DATABASE, exception))
+        }
+    }
+
+    /**
+     * Flushes pending changes and stops the background thread, further requests are rejected.
+     */
+    fun close(): Either<OperationError, Boolean> {
+        val result = flush()
+
+        lock.withLock {
+            isClosed = true
+            scheduledCommit?.cancel(false)
+            scheduledCommit = null
+        }
+        executor.shutdown()
+
+        return result
+    }
+
+    fun hasPendingCommits(): Boolean = lock.withLock { pendingCount > 0 || inProgressCount > 0 }
+
+    fun getStatistics(): CommitStatistics =
+        lock.withLock {
+            CommitStatistics(
+                pendingCommitCount = pendingCount + inProgressCount,
+                commitCount = commitCount,
+                lastLatencyInMillis = lastLatencyInMillis,
+                averageLatencyInMillis = if (commitCount > 0) {
+                    totalLatencyInMillis / commitCount
+                } else {
+                    0L
+                }
+            )
+        }
+
+    private fun runCommit(): Either<OperationError, Boolean> {
+        val requestCount = lock.withLock {
+            val count = pendingCount
+            pendingCount = 0
+            inProgressCount = count
+            count
+        }
+
+        if (requestCount == 0) {
+            return Either.Right(true)
+        }
+
+        val start = System.currentTimeMillis()
+        val result = commitAction.invoke()
+        val latency = System.currentTimeMillis() - start
+
+        lock.withLock {
+            inProgressCount = 0
+
+            if (result.isRight()) {
+                commitCount++
+                failedAttemptCount = 0
+                lastLatencyInMillis = latency
+                totalLatencyInMillis += latency
+            } else {
+                // Changes are still not written, they will be written by the retry
+                if (pendingCount == 0) {
+                    firstRequestTime = start
+                }
+                pendingCount += requestCount
+                failedAttemptCount++
+                scheduleRetry()
+            }
+        }
+
+        result.fold(
+            ifLeft = { error ->
+                Timber.e("Failed to commit %s changes: %s", requestCount, error)
+                onCommitFailed.invoke(error)
+            },
+            ifRight = {
+                Timber.d("Committed %s changes: latency=%sms", requestCount, latency)
+            }
+        )
+
+        return result
+    }
+
+    /**
+     * Should be called with [lock] held
+     */
+    private fun scheduleRetry() {
+        if (isClosed) {
+            return
+        }
+
+        val shift = (failedAttemptCount - 1).coerceIn(0, MAX_RETRY_SHIFT)
+        val delay = (retryDelayInMillis shl shift).coerceAtMost(MAX_RETRY_DELAY_IN_MILLIS)
+
+        scheduledCommit?.cancel(false)
+        scheduledCommit = try {
+            executor.schedule(Runnable { runCommit() }, delay, TimeUnit.MILLISECONDS)
+        } catch (exception: RejectedExecutionException) {
+            Timber.d(exception)
+            null
+        }
+    }
+
+    data class CommitStatistics(
+        val pendingCommitCount: Int,
+        val commitCount: Int,
+        val lastLatencyInMillis: Long,
+        val averageLatencyInMillis: Long
+    )
+
+    companion object {
+        private const val THREAD_NAME = "DatabaseCommitScheduler"
+        private const val DEFAULT_QUIET_PERIOD_IN_MILLIS = 300L
+        private const val DEFAULT_MAX_DELAY_IN_MILLIS = 2000L
+        private const val DEFAULT_RETRY_DELAY_IN_MILLIS = 1000L
+        private const val MAX_RETRY_DELAY_IN_MILLIS = 60_000L
+        private const val MAX_RETRY_SHIFT = 10
+    }
+}
@@ -15,6 +15,7 @@ interface EncryptedDatabase {
     val noteDao: NoteDao
     val templateDao: TemplateDao
     val watcher: DatabaseWatcher<EncryptedDatabase>
+    val commitScheduler: DatabaseCommitScheduler
     val lock: ReentrantLock
     fun getFile(): FileDescriptor
     fun getKey(): EncryptedDatabaseKey
@@ -24,6 +25,12 @@ interface EncryptedDatabase {
     fun commit(): Either<OperationError, Boolean>
     fun commitTo(output: FileDescriptor, fsOptions: FSOptions): Either<OperationError, Boolean>
 
+    /**
+     * Writes changes scheduled with [commitScheduler] and releases resources held by
+     * the database, database should not be used after this call.
+     */
+    fun close()
+
     // TODO: refactor, change key should not invoke commit
     fun changeKey(
         oldKey: EncryptedDatabaseKey,
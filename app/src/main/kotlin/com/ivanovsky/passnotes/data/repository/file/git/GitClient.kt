@@ -1,6 +1,7 @@
 package com.ivanovsky.passnotes.data.repository.file.git
 
 import com.ivanovsky.passnotes.R
+import com.ivanovsky.passnotes.data.entity.FSAuthority
 import com.ivanovsky.passnotes.data.entity.FSCredentials
 import com.ivanovsky.passnotes.data.entity.FileDescriptor
 import com.ivanovsky.passnotes.data.entity.GitRoot
@@ -8,6 +9,7 @@ import com.ivanovsky.passnotes.data.entity.OperationError
 import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_INVALID_DATABASE_ENTRY
 import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_MESSAGE_FAILED_TO_FIND_FILE
 import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_MESSAGE_FAILED_TO_GET_PARENT_FOR
+import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_MESSAGE_FAILED_TO_MOVE_FILE
 import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_MESSAGE_FILE_IS_NOT_A_DIRECTORY
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_INCORRECT_FILE_SYSTEM_CREDENTIALS
 import com.ivanovsky.passnotes.data.entity.OperationError.newGenericError
@@ -20,6 +22,7 @@ import com.ivanovsky.passnotes.data.repository.file.FileSystemResolver
 import com.ivanovsky.passnotes.data.repository.file.OnConflictStrategy
 import com.ivanovsky.passnotes.data.repository.file.git.model.SshKey
 import com.ivanovsky.passnotes.data.repository.file.git.model.VersionedFile
+import com.ivanovsky.passnotes.data.repository.file.remote.DownloadProgressListener
 import com.ivanovsky.passnotes.data.repository.file.remote.RemoteApiClient
 import com.ivanovsky.passnotes.data.repository.settings.Settings
 import com.ivanovsky.passnotes.domain.FileHelper
@@ -36,7 +39,10 @@ import com.ivanovsky.passnotes.util.InputOutputUtils
 import com.ivanovsky.passnotes.util.UrlUtils.SCHEME_SSH
 import java.io.File
 import java.util.concurrent.locks.ReentrantLock
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
 import kotlin.concurrent.withLock
+import kotlin.concurrent.write
 import timber.log.Timber
 
 class GitClient(
@@ -48,62 +54,73 @@ class GitClient(
     private val resourceProvider: ResourceProvider
 ) : RemoteApiClient {
 
-    private val lock = ReentrantLock()
+    // Working tree is read under read lock and modified under write lock,
+    // operations that modify the repository are serialized by [updateLock]
+    private val workingTreeLock = ReentrantReadWriteLock()
+    private val updateLock = ReentrantLock()
+    private val openLock = ReentrantLock()
+
+    @Volatile
+    private var openedRepository: OpenedRepository? = null
 
     override fun listFiles(dir: FileDescriptor): OperationResult<List<FileDescriptor>> {
         Timber.d("listFiles: path=%s", dir.path)
-        val openRepoResult = lock.withLock { openAndUpdateGitRepository() }
-        if (openRepoResult.isFailed) {
-            return openRepoResult.mapError()
+        val getRepositoryResult = getRepository()
+        if (getRepositoryResult.isFailed) {
+            return getRepositoryResult.mapError()
         }
 
-        val repository = openRepoResult.obj
-        val localDir = File(repository.root, dir.path)
-        if (!localDir.exists()) {
-            return OperationResult.error(failedToFindFile(dir.path))
-        }
-        if (!localDir.isDirectory) {
-            return OperationResult.error(fileIsNotDirectory(dir.path))
-        }
+        val repository = getRepositoryResult.obj
+        return workingTreeLock.read {
+            val localDir = File(repository.root, dir.path)
+            if (!localDir.exists()) {
+                return@read OperationResult.error(failedToFindFile(dir.path))
+            }
+            if (!localDir.isDirectory) {
+                return@read OperationResult.error(fileIsNotDirectory(dir.path))
+            }
 
-        val dirLocalFiles = localDir.listFiles() ?: emptyArray()
-        val dirFiles = dirLocalFiles
-            .filter { !it.isDirectory || it.name != GIT_DIRECTORY_NAME }
-            .map { it.toFileDescriptor(repository) }
+            val dirLocalFiles = localDir.listFiles() ?: emptyArray()
+            val dirFiles = dirLocalFiles
+                .filter { !it.isDirectory || it.name != GIT_DIRECTORY_NAME }
+                .map { it.toFileDescriptor(repository) }
 
-        return OperationResult.success(dirFiles)
+            OperationResult.success(dirFiles)
+        }
     }
 
     override fun getParent(file: FileDescriptor): OperationResult<FileDescriptor> {
         Timber.d("getParent: path=%s", file.path)
-        val openRepoResult = lock.withLock { openAndUpdateGitRepository() }
-        if (openRepoResult.isFailed) {
-            return openRepoResult.mapError()
+        val getRepositoryResult = getRepository()
+        if (getRepositoryResult.isFailed) {
+            return getRepositoryResult.mapError()
         }
 
-        val repository = openRepoResult.obj
-        val localFile = File(repository.root, file.path)
-        if (!localFile.exists()) {
-            return OperationResult.error(failedToFindFile(file.path))
-        }
+        val repository = getRepositoryResult.obj
+        return workingTreeLock.read {
+            val localFile = File(repository.root, file.path)
+            if (!localFile.exists()) {
+                return@read OperationResult.error(failedToFindFile(file.path))
+            }
 
-        val parentFile = localFile.parentFile
-            ?: return OperationResult.error(failedToGetParent(file.path))
+            val parentFile = localFile.parentFile
+                ?: return@read OperationResult.error(failedToGetParent(file.path))
 
-        return OperationResult.success(parentFile.toFileDescriptor(repository))
+            OperationResult.success(parentFile.toFileDescriptor(repository))
+        }
     }
 
     override fun getRoot(): OperationResult<FileDescriptor> {
         Timber.d("getRoot:")
 
-        val openRepoResult = lock.withLock { openAndUpdateGitRepository() }
-        if (openRepoResult.isFailed) {
-            return openRepoResult.mapError()
+        val getRepositoryResult = getRepository()
+        if (getRepositoryResult.isFailed) {
+            return getRepositoryResult.mapError()
         }
 
-        val repository = openRepoResult.obj
+        val repository = getRepositoryResult.obj
         val localRoot = repository.root
-        return openRepoResult.mapWithObject(
+        return getRepositoryResult.mapWithObject(
             localRoot.toFileDescriptor(repository)
         )
     }
@@ -111,19 +128,19 @@ class GitClient(
     override fun getFileMetadata(file: FileDescriptor): OperationResult<RemoteFileMetadata> {
         Timber.d("getFileMetadata: path=%s", file.path)
 
-        val getMetadataResult = lock.withLock {
-            val openRepoResult = openAndUpdateGitRepository()
-            if (openRepoResult.isFailed) {
-                return@withLock openRepoResult.mapError()
-            }
+        val getRepositoryResult = getRepository()
+        if (getRepositoryResult.isFailed) {
+            return getRepositoryResult.mapError()
+        }
 
-            val repository = openRepoResult.obj
-            val getMetadataResult = repository.getFileMetadata(file)
-            if (getMetadataResult.isFailed) {
-                return@withLock getMetadataResult.mapError()
-            }
+        val repository = getRepositoryResult.obj
+        val updateResult = updateRepositoryIfNeed(repository)
+        if (updateResult.isFailed) {
+            return updateResult.mapError()
+        }
 
-            getMetadataResult
+        val getMetadataResult = workingTreeLock.read {
+            repository.getFileMetadata(file)
         }
         if (getMetadataResult.isFailed) {
             return getMetadataResult.mapError()
@@ -143,28 +160,43 @@ class GitClient(
 
     override fun downloadFile(
         remotePath: String,
-        destinationPath: String
+        destinationPath: String,
+        progressListener: DownloadProgressListener?
     ): OperationResult<RemoteFileMetadata> {
         Timber.d("downloadFile: path=%s", remotePath)
-        return lock.withLock {
-            val openRepoResult = openAndUpdateGitRepository()
-            if (openRepoResult.isFailed) {
-                return@withLock openRepoResult.mapError()
-            }
+        val getRepositoryResult = getRepository()
+        if (getRepositoryResult.isFailed) {
+            return getRepositoryResult.mapError()
+        }
 
-            val repository = openRepoResult.obj
+        val repository = getRepositoryResult.obj
+        val updateResult = updateRepositoryIfNeed(repository)
+        if (updateResult.isFailed) {
+            return updateResult.mapError()
+        }
+
+        return workingTreeLock.read {
             val localRoot = repository.root
             val localFile = File(localRoot, remotePath)
             if (!localFile.exists()) {
-                return@withLock OperationResult.error(failedToFindFile(localFile.path))
+                return@read OperationResult.error(failedToFindFile(localFile.path))
             }
 
+            // File is copied from the working tree, so progress is not reported. Temporary
+            // file is used to keep the existing destination if copying fails
+            val tmpFile = File(destinationPath + TMP_FILE_SUFFIX)
             val copyResult = InputOutputUtils.copy(
                 sourceFile = localFile,
-                destinationFile = File(destinationPath)
+                destinationFile = tmpFile
             )
             if (copyResult.isFailed) {
-                return@withLock copyResult.mapError()
+                tmpFile.delete()
+                return@read copyResult.mapError()
+            }
+
+            if (!tmpFile.renameTo(File(destinationPath))) {
+                tmpFile.delete()
+                return@read OperationResult.error(failedToMoveFile(destinationPath))
             }
 
             repository.getFileMetadata(localFile.toFileDescriptor(repository))
@@ -176,14 +208,14 @@ class GitClient(
         localPath: String
     ): OperationResult<RemoteFileMetadata> {
         Timber.d("uploadFile: path=%s", remotePath)
-        return lock.withLock {
-            val openRepoResult = openAndUpdateGitRepository()
-            if (openRepoResult.isFailed) {
-                return@withLock openRepoResult.mapError()
-            }
-
-            val repository = openRepoResult.obj
+        val getRepositoryResult = getRepository()
+        if (getRepositoryResult.isFailed) {
+            return getRepositoryResult.mapError()
+        }
 
+        val repository = getRepositoryResult.obj
+        return updateLock.withLock {
+            // Upload always requires the latest remote state, regardless of the last fetch
             val fetchResult = repository.fetch()
             if (fetchResult.isFailed) {
                 return@withLock fetchResult.mapError()
@@ -196,55 +228,147 @@ class GitClient(
 
             val versionedFile = VersionedFile(localPath = remotePath.removePrefix("/"))
             val isUpToDate = isUpToDateResult.obj
-            if (!isUpToDate) {
-                val pullResult = repository.pull(
-                    file = versionedFile,
-                    changedFile = File(localPath)
-                )
-                if (pullResult.isFailed) {
-                    return@withLock pullResult.mapError()
+
+            val commitResult: OperationResult<File> = workingTreeLock.write {
+                if (!isUpToDate) {
+                    val pullResult = repository.pull(
+                        file = versionedFile,
+                        changedFile = File(localPath)
+                    )
+                    if (pullResult.isFailed) {
+                        return@write pullResult.mapError()
+                    }
                 }
-            }
 
-            val localFile = File(repository.root, remotePath)
-            if (!localFile.exists()) {
-                return@withLock OperationResult.error(failedToFindFile(localFile.path))
-            }
+                val localFile = File(repository.root, remotePath)
+                if (!localFile.exists()) {
+                    return@write OperationResult.error(failedToFindFile(localFile.path))
+                }
 
-            val copyResult = InputOutputUtils.copy(
-                sourceFile = File(localPath),
-                destinationFile = localFile
-            )
-            if (copyResult.isFailed) {
-                return@withLock copyResult.mapError()
-            }
+                val copyResult = InputOutputUtils.copy(
+                    sourceFile = File(localPath),
+                    destinationFile = localFile
+                )
+                if (copyResult.isFailed) {
+                    return@write copyResult.mapError()
+                }
 
-            val addResult = repository.addToIndex(versionedFile)
-            if (addResult.isFailed) {
-                return@withLock addResult.mapError()
-            }
+                val addResult = repository.addToIndex(versionedFile)
+                if (addResult.isFailed) {
+                    return@write addResult.mapError()
+                }
 
-            val commitResult = repository.commit(
-                message = formatCommitMessage(versionedFile),
-                userName = settings.gitUserName ?: getDefaultUserName(),
-                userEmail = settings.gitUserEmail ?: getDefaultUserEmail()
-            )
+                repository.commit(
+                    message = formatCommitMessage(versionedFile),
+                    userName = settings.gitUserName ?: getDefaultUserName(),
+                    userEmail = settings.gitUserEmail ?: getDefaultUserEmail()
+                )
+                    .mapWithObject(localFile)
+            }
             if (commitResult.isFailed) {
                 return@withLock commitResult.mapError()
             }
 
+            // Push doesn't modify working tree, so it can be read meanwhile
             val pushResult = repository.push()
             if (pushResult.isFailed) {
                 return@withLock pushResult.mapError()
             }
 
-            repository.getFileMetadata(localFile.toFileDescriptor(repository))
+            openedRepository?.lastFetchTime = System.currentTimeMillis()
+
+            val localFile = commitResult.obj
+            workingTreeLock.read {
+                repository.getFileMetadata(localFile.toFileDescriptor(repository))
+            }
         }
     }
 
-    private fun openAndUpdateGitRepository(): OperationResult<GitRepository> {
+    /**
+     * @return repository opened for the current [FSAuthority], the repository is opened
+     * only once and is reused by the following calls
+     */
+    private fun getRepository(): OperationResult<GitRepository> {
         val fsAuthority = authenticator.getFsAuthority()
 
+        val repository = openedRepository
+        if (repository != null && repository.isValidFor(fsAuthority)) {
+            return OperationResult.success(repository.repository)
+        }
+
+        return openLock.withLock {
+            // Repository could be opened by another thread while this one was waiting
+            val lockedRepository = openedRepository
+            if (lockedRepository != null && lockedRepository.isValidFor(fsAuthority)) {
+                return@withLock OperationResult.success(lockedRepository.repository)
+            }
+
+            val openResult = openGitRepository(fsAuthority)
+            if (openResult.isFailed) {
+                return@withLock openResult.mapError()
+            }
+
+            openedRepository = OpenedRepository(
+                fsAuthority = fsAuthority,
+                repository = openResult.obj
+            )
+
+            openResult
+        }
+    }
+
+    /**
+     * Fetches remote changes if the last fetch is older than [FETCH_INTERVAL_IN_MILLIS]
+     * and rebases local branch on them. Working tree is locked only for the rebase, so
+     * it can be read while fetch is in progress.
+     */
+    private fun updateRepositoryIfNeed(repository: GitRepository): OperationResult<Unit> {
+        if (!isFetchRequired()) {
+            return OperationResult.success(Unit)
+        }
+
+        return updateLock.withLock {
+            // Repository could be updated by another thread while this one was waiting
+            if (!isFetchRequired()) {
+                return@withLock OperationResult.success(Unit)
+            }
+
+            Timber.d("Local head: %s", repository.getLocalHeadId().getOrNull())
+
+            val fetchResult = repository.fetch()
+            if (fetchResult.isFailed) {
+                return@withLock fetchResult.mapError()
+            }
+
+            val isUpToDateResult = repository.isUpToDate()
+            if (isUpToDateResult.isFailed) {
+                return@withLock isUpToDateResult.mapError()
+            }
+
+            val isUpToDate = isUpToDateResult.getOrThrow()
+            Timber.d("isUpToDate=%s", isUpToDate)
+            if (!isUpToDate) {
+                val pullResult = workingTreeLock.write { repository.pull() }
+                if (pullResult.isFailed) {
+                    return@withLock pullResult.mapError()
+                }
+            }
+
+            openedRepository?.lastFetchTime = System.currentTimeMillis()
+
+            OperationResult.success(Unit)
+        }
+    }
+
+    private fun isFetchRequired(): Boolean {
+        val lastFetchTime = openedRepository?.lastFetchTime ?: return true
+        return System.currentTimeMillis() - lastFetchTime > FETCH_INTERVAL_IN_MILLIS
+    }
+
+    /**
+     * Opens local clone of the repository or clones it if it doesn't exist.
+     */
+    private fun openGitRepository(fsAuthority: FSAuthority): OperationResult<GitRepository> {
         val credentials = fsAuthority.credentials
             ?: return OperationResult.error(invalidCredentials())
 
@@ -270,38 +394,10 @@ class GitClient(
                 null
             }
 
-            val repositoryResult = GitRepository.open(
+            return GitRepository.open(
                 dir = root,
                 sshKey = sshKey
             )
-            if (repositoryResult.isFailed) {
-                return repositoryResult.mapError()
-            }
-
-            val repository = repositoryResult.obj
-
-            Timber.d("Local head: %s", repository.getLocalHeadId().getOrNull())
-
-            val fetchResult = repository.fetch()
-            if (fetchResult.isFailed) {
-                return fetchResult.mapError()
-            }
-
-            val isUpToDateResult = repository.isUpToDate()
-            if (isUpToDateResult.isFailed) {
-                return isUpToDateResult.mapError()
-            }
-
-            val isUpToDate = isUpToDateResult.getOrThrow()
-            Timber.d("isUpToDate=%s", isUpToDate)
-            if (!isUpToDate) {
-                val pullResult = repository.pull()
-                if (pullResult.isFailed) {
-                    return pullResult.mapError()
-                }
-            }
-
-            return repositoryResult
         }
 
         val newRootPathResult = fileHelper.generateDestinationFile()
@@ -467,6 +563,16 @@ class GitClient(
         )
     }
 
+    private fun failedToMoveFile(path: String): OperationError {
+        return newGenericIOError(
+            String.format(
+                GENERIC_MESSAGE_FAILED_TO_MOVE_FILE,
+                path
+            ),
+            Stacktrace()
+        )
+    }
+
     private fun failedToGetParent(path: String): OperationError {
         return newGenericIOError(
             String.format(
@@ -487,7 +593,23 @@ class GitClient(
         )
     }
 
+    private class OpenedRepository(
+        val fsAuthority: FSAuthority,
+        val repository: GitRepository
+    ) {
+
+        @Volatile
+        var lastFetchTime: Long? = null
+
+        fun isValidFor(fsAuthority: FSAuthority): Boolean {
+            // Local clone might be removed together with the used file
+            return this.fsAuthority == fsAuthority && repository.root.exists()
+        }
+    }
+
     companion object {
         private const val GIT_DIRECTORY_NAME = ".git"
+        private const val TMP_FILE_SUFFIX = ".download"
+        private const val FETCH_INTERVAL_IN_MILLIS = 30_000L
     }
 }
\ No newline at end of file
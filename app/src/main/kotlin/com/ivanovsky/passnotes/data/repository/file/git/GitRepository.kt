@@ -375,17 +375,31 @@ class GitRepository private constructor(
             dir: File,
             sshKey: SshKey?
         ): OperationResult<GitRepository> {
+            val getDefaultBranchResult = getRemoteDefaultBranch(url, sshKey)
+            if (getDefaultBranchResult.isFailed) {
+                return getDefaultBranchResult.mapError()
+            }
+
+            val defaultBranch = getDefaultBranchResult.obj
+            Timber.d("clone: defaultBranch=%s", defaultBranch)
+
             val result = execute {
-                val clone = if (sshKey == null) {
-                    Git.cloneRepository()
-                        .setURI(url)
-                        .setDirectory(dir)
-                } else {
-                    Git.cloneRepository()
-                        .setURI(url)
-                        .setTransportConfigCallback(createSshTransportCallback(sshKey))
-                        .setDirectory(dir)
-                }
+                // Only default branch is cloned without tags, fetch refspec of the clone
+                // is limited accordingly, so the following fetches are also incremental
+                val clone = Git.cloneRepository()
+                    .setURI(url)
+                    .setDirectory(dir)
+                    .setNoTags()
+                    .apply {
+                        if (defaultBranch != null) {
+                            setCloneAllBranches(false)
+                            setBranchesToClone(listOf(defaultBranch))
+                            setBranch(defaultBranch)
+                        }
+                        if (sshKey != null) {
+                            setTransportConfigCallback(createSshTransportCallback(sshKey))
+                        }
+                    }
 
                 clone.call()
             }
@@ -396,6 +410,34 @@ class GitRepository private constructor(
             return open(dir, sshKey)
         }
 
+        /**
+         * @return name of the branch referenced by remote HEAD, or null if server doesn't
+         * advertise it
+         */
+        private fun getRemoteDefaultBranch(
+            url: String,
+            sshKey: SshKey?
+        ): OperationResult<String?> {
+            return execute {
+                Git.lsRemoteRepository()
+                    .setRemote(url)
+                    .apply {
+                        if (sshKey != null) {
+                            setTransportConfigCallback(createSshTransportCallback(sshKey))
+                        }
+                    }
+                    .callAsMap()
+            }
+                .map { refs ->
+                    val head = refs[HEAD]
+                    if (head != null && head.isSymbolic) {
+                        head.target.name
+                    } else {
+                        null
+                    }
+                }
+        }
+
         private fun createSshTransportCallback(
             sshKey: SshKey
         ): TransportConfigCallback {
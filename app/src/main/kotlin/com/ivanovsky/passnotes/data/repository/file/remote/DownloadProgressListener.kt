@@ -0,0 +1,9 @@
+package com.ivanovsky.passnotes.data.repository.file.remote
+
+fun interface DownloadProgressListener {
+
+    /**
+     * @param totalBytes length of the downloaded file or null if it's unknown
+     */
+    fun onProgressChanged(downloadedBytes: Long, totalBytes: Long?)
+}
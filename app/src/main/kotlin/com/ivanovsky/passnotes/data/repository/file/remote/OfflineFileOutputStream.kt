@@ -2,9 +2,9 @@ package com.ivanovsky.passnotes.data.repository.file.remote
 
 import com.ivanovsky.passnotes.data.entity.RemoteFile
 import com.ivanovsky.passnotes.data.repository.file.BaseRemoteFileOutputStream
+import com.ivanovsky.passnotes.util.FileUtils.newReplacingFileOutputStream
 import java.io.BufferedOutputStream
 import java.io.File
-import java.io.FileOutputStream
 import java.io.IOException
 import java.io.OutputStream
 import java.util.UUID
@@ -27,7 +27,8 @@ class OfflineFileOutputStream(
     @Volatile
     private var closed = false
 
-    private val out: OutputStream = BufferedOutputStream(FileOutputStream(outputFile))
+    private val out: OutputStream =
+        BufferedOutputStream(newReplacingFileOutputStream(outputFile))
 
     @Throws(IOException::class)
     override fun write(b: Int) {
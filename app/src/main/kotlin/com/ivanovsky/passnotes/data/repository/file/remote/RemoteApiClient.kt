@@ -10,13 +10,48 @@ interface RemoteApiClient {
     fun getRoot(): OperationResult<FileDescriptor>
     fun getFileMetadata(file: FileDescriptor): OperationResult<RemoteFileMetadata>
 
+    /**
+     * Downloads file to [destinationPath], existing file at [destinationPath] is replaced
+     * only if the download is completed.
+     */
     fun downloadFile(
         remotePath: String,
-        destinationPath: String
+        destinationPath: String,
+        progressListener: DownloadProgressListener?
     ): OperationResult<RemoteFileMetadata>
 
+    /**
+     * Downloads [file] to [destinationPath] only if its revision differs from [revision].
+     *
+     * @return metadata of the downloaded file or null if the file is not changed
+     */
+    fun downloadFileIfChanged(
+        file: FileDescriptor,
+        remotePath: String,
+        revision: String,
+        destinationPath: String,
+        progressListener: DownloadProgressListener?
+    ): OperationResult<RemoteFileMetadata?> {
+        val getMetadataResult = getFileMetadata(file)
+        if (getMetadataResult.isFailed) {
+            return getMetadataResult.takeError()
+        }
+
+        val metadata = getMetadataResult.obj
+        if (metadata.revision == revision) {
+            return OperationResult.success(null)
+        }
+
+        val downloadResult = downloadFile(metadata.path, destinationPath, progressListener)
+        if (downloadResult.isFailed) {
+            return downloadResult.takeError()
+        }
+
+        return OperationResult.success(downloadResult.obj)
+    }
+
     fun uploadFile(
         remotePath: String,
         localPath: String
     ): OperationResult<RemoteFileMetadata>
-}
\ No newline at end of file
+}
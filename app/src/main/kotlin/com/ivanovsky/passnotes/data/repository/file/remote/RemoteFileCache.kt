@@ -26,7 +26,6 @@ class RemoteFileCache(
     }
 
     fun getLocallyModifiedFiles(): List<RemoteFile> {
-        return repository.getAll(fsAuthority)
-            .filter { it.isLocallyModified }
+        return repository.getLocallyModified(fsAuthority)
     }
 }
\ No newline at end of file
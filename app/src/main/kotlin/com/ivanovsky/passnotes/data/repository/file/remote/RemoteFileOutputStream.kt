@@ -4,9 +4,9 @@ import com.ivanovsky.passnotes.data.entity.OperationError
 import com.ivanovsky.passnotes.data.entity.RemoteFile
 import com.ivanovsky.passnotes.data.entity.RemoteFileMetadata
 import com.ivanovsky.passnotes.data.repository.file.BaseRemoteFileOutputStream
+import com.ivanovsky.passnotes.util.FileUtils.newReplacingFileOutputStream
 import java.io.BufferedOutputStream
 import java.io.File
-import java.io.FileOutputStream
 import java.io.IOException
 import java.io.OutputStream
 import java.util.UUID
@@ -30,7 +30,7 @@ class RemoteFileOutputStream(
     @Volatile
     private var closed = false
 
-    // Lazily initialized because FileOutputStream clears the file content.
+    // Lazily initialized because opening of the stream replaces the file content.
     @Volatile
     private var out: OutputStream? = null
 
@@ -39,7 +39,7 @@ class RemoteFileOutputStream(
         if (failed) return
 
         if (out == null) {
-            out = BufferedOutputStream(FileOutputStream(outputFile))
+            out = BufferedOutputStream(newReplacingFileOutputStream(outputFile))
         }
 
         try {
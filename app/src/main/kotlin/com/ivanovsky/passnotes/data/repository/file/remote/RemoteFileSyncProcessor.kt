@@ -27,6 +27,7 @@ import com.ivanovsky.passnotes.extensions.toEither
 import com.ivanovsky.passnotes.extensions.toFileDescriptor
 import com.ivanovsky.passnotes.util.FileUtils.copyFile
 import com.ivanovsky.passnotes.util.FileUtils.createTemporalFile
+import com.ivanovsky.passnotes.util.FileUtils.linkOrCopyFile
 import com.ivanovsky.passnotes.util.isNewerThan
 import com.ivanovsky.passnotes.util.toOperationResult
 import java.io.File
@@ -45,6 +46,7 @@ class RemoteFileSyncProcessor(
     private val syncResolver = SyncResolutionResolver()
     private val progressStatuses = ConcurrentHashMap<String, SyncProgressStatus>()
     private val statuses = ConcurrentHashMap<String, SyncStatus>()
+    private val metadataCache = RemoteMetadataCache(provider, fsAuthority)
 
     override fun getCachedFile(uid: String): FileDescriptor? =
         cache.getByUid(uid)?.toFileDescriptor()
@@ -65,7 +67,7 @@ class RemoteFileSyncProcessor(
             return SyncStatus.FILE_NOT_FOUND
         }
 
-        val getFile = provider.getFile(cachedFile.remotePath, FSOptions.noCache())
+        val getFile = metadataCache.getFile(cachedFile.remotePath)
         if (getFile.isFailed) {
             val errorType = getFile.error.type
 
@@ -297,6 +299,8 @@ class RemoteFileSyncProcessor(
             removeSyncStatusForFile(cachedFile.uid)
         }
 
+        metadataCache.invalidate(localFile.path)
+
         return result
     }
 
@@ -327,7 +331,7 @@ class RemoteFileSyncProcessor(
         val metadata = uploadResult.getOrThrow().second
 
         val localBackupPath = localFile.path + "_backup"
-        val copyResult = copyFile(
+        val copyResult = linkOrCopyFile(
             source = File(localFile.path),
             destination = File(localBackupPath)
         ).toOperationResult()
@@ -417,7 +421,7 @@ class RemoteFileSyncProcessor(
         val metadata = metadataResult.getOrThrow()
 
         val localBackupPath = input.path + "_backup"
-        val copyResult = copyFile(
+        val copyResult = linkOrCopyFile(
             File(input.path),
             File(localBackupPath)
         ).toOperationResult()
@@ -0,0 +1,141 @@
+package com.ivanovsky.passnotes.data.repository.file.remote
+
+import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.entity.FSType
+import com.ivanovsky.passnotes.data.entity.FileDescriptor
+import com.ivanovsky.passnotes.data.entity.OperationError
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.repository.file.FSOptions
+import com.ivanovsky.passnotes.util.FileUtils
+import com.ivanovsky.passnotes.util.FileUtils.ROOT_PATH
+import java.util.concurrent.ConcurrentHashMap
+import timber.log.Timber
+
+/**
+ * Short-lived cache of remote files metadata, that is shared by sync status queries
+ * of one [FSAuthority]. For WebDAV, metadata is obtained by listing of the parent directory,
+ * so statuses of all files from the same directory are resolved with a single request.
+ * Other file systems are cached per file.
+ */
+class RemoteMetadataCache(
+    private val provider: RemoteFileSystemProvider,
+    private val fsAuthority: FSAuthority,
+    private val ttlInMillis: Long = DEFAULT_TTL_IN_MILLIS
+) {
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+    private val locks = ConcurrentHashMap<String, Any>()
+
+    fun getFile(path: String): OperationResult<FileDescriptor> {
+        val parentPath = if (isDirectoryListingSupported()) {
+            FileUtils.getParentPath(path)
+        } else {
+            null
+        }
+
+        val key = parentPath ?: path
+        val lock = locks.getOrPut(key) { Any() }
+
+        // Concurrent queries for the same key wait for a single request
+        val files = synchronized(lock) {
+            val entry = entries[key]
+            if (entry != null && !entry.isExpired()) {
+                entry.files
+            } else {
+                val files = if (parentPath != null) {
+                    fetchDirectory(parentPath)
+                } else {
+                    fetchFile(path)
+                }
+
+                entries[key] = Entry(
+                    timestamp = System.currentTimeMillis(),
+                    files = files
+                )
+
+                files
+            }
+        }
+
+        if (files.isFailed) {
+            // Other errors might be specific to the directory, while the file is available
+            val isFileSystemError = (files.error.type in FILE_SYSTEM_ERROR_TYPES)
+
+            return if (parentPath == null || isFileSystemError) {
+                files.takeError()
+            } else {
+                provider.getFile(path, FSOptions.noCache())
+            }
+        }
+
+        val name = FileUtils.getFileNameFromPath(path)
+        val file = files.obj[name]
+            ?: return provider.getFile(path, FSOptions.noCache())
+
+        return OperationResult.success(file)
+    }
+
+    fun invalidate(path: String) {
+        entries.remove(path)
+        FileUtils.getParentPath(path)?.let { parentPath -> entries.remove(parentPath) }
+    }
+
+    private fun fetchDirectory(path: String): OperationResult<Map<String, FileDescriptor>> {
+        Timber.d("fetchDirectory: path=%s", path)
+
+        val dir = FileDescriptor(
+            fsAuthority = fsAuthority,
+            path = path,
+            uid = path,
+            name = FileUtils.getFileNameFromPath(path),
+            isDirectory = true,
+            isRoot = (path == ROOT_PATH),
+            modified = null
+        )
+
+        val listFiles = provider.listFiles(dir)
+        if (listFiles.isFailed) {
+            return listFiles.takeError()
+        }
+
+        val files = listFiles.obj
+            .filter { file -> !file.isDirectory }
+            .associateBy { file -> file.name }
+
+        return OperationResult.success(files)
+    }
+
+    private fun fetchFile(path: String): OperationResult<Map<String, FileDescriptor>> {
+        val getFile = provider.getFile(path, FSOptions.noCache())
+        if (getFile.isFailed) {
+            return getFile.takeError()
+        }
+
+        val file = getFile.obj
+        return OperationResult.success(mapOf(FileUtils.getFileNameFromPath(path) to file))
+    }
+
+    private fun isDirectoryListingSupported(): Boolean {
+        // Non-browsable WebDAV authority points to a single file, Git listing is based
+        // on the local working tree and doesn't contain the last commit time
+        return fsAuthority.type == FSType.WEBDAV && fsAuthority.isBrowsable
+    }
+
+    private fun Entry.isExpired(): Boolean {
+        return System.currentTimeMillis() - timestamp > ttlInMillis
+    }
+
+    private data class Entry(
+        val timestamp: Long,
+        val files: OperationResult<Map<String, FileDescriptor>>
+    )
+
+    companion object {
+        private const val DEFAULT_TTL_IN_MILLIS = 10_000L
+
+        private val FILE_SYSTEM_ERROR_TYPES = setOf(
+            OperationError.Type.NETWORK_IO_ERROR,
+            OperationError.Type.AUTH_ERROR
+        )
+    }
+}
@@ -1,28 +1,48 @@
 package com.ivanovsky.passnotes.data.repository.file.remote
 
 import java.util.UUID
-import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
 
+/**
+ * Running [ProcessingUnit]s indexed by processing uid and file uid.
+ * Only one unit per file uid can be running at the same time, see [claim].
+ */
 class StatusMap {
 
-    private val entries: MutableList<ProcessingUnit> = CopyOnWriteArrayList()
+    private val entriesByProcessingUid = ConcurrentHashMap<UUID, Entry>()
+    private val entriesByFileUid = ConcurrentHashMap<String, Entry>()
 
-    fun getByFileUid(fileUid: String): ProcessingUnit? {
-        return entries.firstOrNull { it.fileUid == fileUid }
-    }
+    /**
+     * Registers [unit] if there is no running unit with the same file uid.
+     *
+     * @return null if [unit] is registered, otherwise latch of the running unit, that
+     * is counted down when the running unit is released
+     */
+    fun claim(unit: ProcessingUnit): CountDownLatch? {
+        val entry = Entry(unit, CountDownLatch(1))
 
-    fun getByRemotePath(remotePath: String): ProcessingUnit? {
-        return entries.firstOrNull { it.remotePath == remotePath }
-    }
+        val runningEntry = entriesByFileUid.putIfAbsent(unit.fileUid, entry)
+        if (runningEntry != null) {
+            return runningEntry.latch
+        }
+
+        entriesByProcessingUid[unit.processingUid] = entry
 
-    fun put(unit: ProcessingUnit) {
-        entries.add(unit)
+        return null
     }
 
-    fun remove(processingUid: UUID) {
-        val idx = entries.indexOfFirst { it.processingUid == processingUid }
-        if (idx >= 0) {
-            entries.removeAt(idx)
-        }
+    fun release(processingUid: UUID): ProcessingUnit? {
+        val entry = entriesByProcessingUid.remove(processingUid) ?: return null
+
+        entriesByFileUid.remove(entry.unit.fileUid, entry)
+        entry.latch.countDown()
+
+        return entry.unit
     }
-}
\ No newline at end of file
+
+    private class Entry(
+        val unit: ProcessingUnit,
+        val latch: CountDownLatch
+    )
+}
@@ -0,0 +1,245 @@
+package com.ivanovsky.passnotes.data.repository.file.webdav
+
+import androidx.annotation.VisibleForTesting
+import com.ivanovsky.passnotes.data.entity.OperationError.Type.FILE_NOT_FOUND_ERROR
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.Request
+import okhttp3.RequestBody.Companion.toRequestBody
+
+/**
+ * Server specific way to upload file by chunks to a temporary location and to move it to
+ * destination after all chunks are uploaded.
+ */
+interface ChunkedUploadProtocol {
+
+    /**
+     * Prepares temporary location for [session] if it doesn't exist.
+     *
+     * @return number of bytes that are already stored in the temporary location
+     */
+    fun begin(session: UploadSession): OperationResult<Long>
+
+    fun uploadChunk(
+        session: UploadSession,
+        offset: Long,
+        data: ByteArray,
+        length: Int
+    ): OperationResult<Unit>
+
+    fun complete(session: UploadSession): OperationResult<Unit>
+
+    fun abort(session: UploadSession): OperationResult<Unit>
+}
+
+data class UploadSession(
+    val id: String,
+    val destinationUrl: String,
+    val fileLength: Long,
+    val fileModified: Long
+)
+
+/**
+ * Appends chunks to a temporary file with partial update PATCH requests,
+ * supported by SabreDAV based servers.
+ */
+class PartialUpdateUploadProtocol(
+    private val networkLayer: WebDavNetworkLayer
+) : ChunkedUploadProtocol {
+
+    override fun begin(session: UploadSession): OperationResult<Long> {
+        val url = session.getTemporaryUrl()
+
+        val getLength = networkLayer.execute { client ->
+            client.list(url, 0).firstOrNull()?.contentLength ?: 0L
+        }
+        if (getLength.isSucceeded || getLength.error.type != FILE_NOT_FOUND_ERROR) {
+            return getLength
+        }
+
+        val create = networkLayer.execute { client ->
+            client.put(url, ByteArray(0))
+        }
+        if (create.isFailed) {
+            return create.takeError()
+        }
+
+        return OperationResult.success(0L)
+    }
+
+    override fun uploadChunk(
+        session: UploadSession,
+        offset: Long,
+        data: ByteArray,
+        length: Int
+    ): OperationResult<Unit> {
+        // Explicit range makes repeated requests idempotent, unlike "append"
+        val request = Request.Builder()
+            .url(session.getTemporaryUrl())
+            .header(HEADER_UPDATE_RANGE, "bytes=$offset-${offset + length - 1}")
+            .patch(data.toRequestBody(PARTIAL_UPDATE_MEDIA_TYPE.toMediaType(), 0, length))
+            .build()
+
+        return networkLayer.executeRequest(request) { }
+    }
+
+    override fun complete(session: UploadSession): OperationResult<Unit> {
+        return networkLayer.move(
+            sourceUrl = session.getTemporaryUrl(),
+            destinationUrl = session.destinationUrl
+        )
+    }
+
+    override fun abort(session: UploadSession): OperationResult<Unit> {
+        return networkLayer.execute { client ->
+            client.delete(session.getTemporaryUrl())
+        }
+    }
+
+    private fun UploadSession.getTemporaryUrl(): String {
+        return "$destinationUrl.$id$TEMPORARY_FILE_EXTENSION"
+    }
+
+    companion object {
+        const val PARTIAL_UPDATE_MEDIA_TYPE = "application/x-sabredav-partialupdate"
+
+        private const val HEADER_UPDATE_RANGE = "X-Update-Range"
+        private const val TEMPORARY_FILE_EXTENSION = ".part"
+    }
+}
+
+/**
+ * Uploads chunks as separate files to the upload directory of Nextcloud/ownCloud
+ * and assembles them with MOVE request.
+ */
+class NextcloudUploadProtocol(
+    private val networkLayer: WebDavNetworkLayer,
+    private val uploadsUrl: String
+) : ChunkedUploadProtocol {
+
+    override fun begin(session: UploadSession): OperationResult<Long> {
+        val url = session.getUploadDirectoryUrl()
+
+        val getChunks = networkLayer.execute { client ->
+            client.list(url, 1)
+                .filter { resource -> !resource.isDirectory }
+                .mapNotNull { resource -> parseChunkOffset(resource.name, resource.contentLength) }
+        }
+        if (getChunks.isSucceeded) {
+            return OperationResult.success(getContiguousLength(getChunks.obj))
+        }
+        if (getChunks.error.type != FILE_NOT_FOUND_ERROR) {
+            return getChunks.takeError()
+        }
+
+        val create = networkLayer.execute { client ->
+            client.createDirectory(url)
+        }
+        if (create.isFailed) {
+            return create.takeError()
+        }
+
+        return OperationResult.success(0L)
+    }
+
+    override fun uploadChunk(
+        session: UploadSession,
+        offset: Long,
+        data: ByteArray,
+        length: Int
+    ): OperationResult<Unit> {
+        val name = formatChunkName(offset, length)
+        val request = Request.Builder()
+            .url("${session.getUploadDirectoryUrl()}/$name")
+            .put(data.toRequestBody(CHUNK_MEDIA_TYPE.toMediaType(), 0, length))
+            .build()
+
+        return networkLayer.executeRequest(request) { }
+    }
+
+    override fun complete(session: UploadSession): OperationResult<Unit> {
+        return networkLayer.move(
+            sourceUrl = "${session.getUploadDirectoryUrl()}/$ASSEMBLED_FILE_NAME",
+            destinationUrl = session.destinationUrl,
+            headers = mapOf(HEADER_TOTAL_LENGTH to session.fileLength.toString())
+        )
+    }
+
+    override fun abort(session: UploadSession): OperationResult<Unit> {
+        return networkLayer.execute { client ->
+            client.delete(session.getUploadDirectoryUrl())
+        }
+    }
+
+    private fun UploadSession.getUploadDirectoryUrl(): String {
+        return "$uploadsUrl/$id"
+    }
+
+    @VisibleForTesting
+    internal data class Chunk(
+        val offset: Long,
+        val length: Long
+    )
+
+    companion object {
+
+        private const val FILES_SEGMENT = "/remote.php/dav/files/"
+        private const val LEGACY_FILES_SEGMENT = "/remote.php/webdav/"
+        private const val UPLOADS_SEGMENT = "/remote.php/dav/uploads/"
+        private const val ASSEMBLED_FILE_NAME = ".file"
+        private const val HEADER_TOTAL_LENGTH = "OC-Total-Length"
+        private const val CHUNK_MEDIA_TYPE = "application/octet-stream"
+        private const val CHUNK_OFFSET_LENGTH = 15
+
+        /**
+         * @return url of the upload directory for [fileUrl] or null if [fileUrl] is not
+         * a Nextcloud/ownCloud file url
+         */
+        fun getUploadsUrl(fileUrl: String, username: String): String? {
+            val filesIdx = fileUrl.indexOf(FILES_SEGMENT)
+            if (filesIdx != -1) {
+                val userStartIdx = filesIdx + FILES_SEGMENT.length
+                val user = fileUrl.substring(userStartIdx).substringBefore("/")
+                if (user.isEmpty()) {
+                    return null
+                }
+
+                return fileUrl.substring(0, filesIdx) + UPLOADS_SEGMENT + user
+            }
+
+            val legacyIdx = fileUrl.indexOf(LEGACY_FILES_SEGMENT)
+            if (legacyIdx != -1) {
+                return fileUrl.substring(0, legacyIdx) + UPLOADS_SEGMENT + username
+            }
+
+            return null
+        }
+
+        /**
+         * Chunks are assembled in order of their names, so names are zero padded offsets.
+         */
+        @VisibleForTesting
+        internal fun formatChunkName(offset: Long, length: Int): String {
+            val end = offset + length - 1
+            return "%0${CHUNK_OFFSET_LENGTH}d-%0${CHUNK_OFFSET_LENGTH}d".format(offset, end)
+        }
+
+        @VisibleForTesting
+        internal fun parseChunkOffset(name: String, length: Long?): Chunk? {
+            val offset = name.substringBefore("-").toLongOrNull() ?: return null
+            return Chunk(offset = offset, length = length ?: return null)
+        }
+
+        @VisibleForTesting
+        internal fun getContiguousLength(chunks: List<Chunk>): Long {
+            var length = 0L
+            for (chunk in chunks.sortedBy { chunk -> chunk.offset }) {
+                if (chunk.offset != length) {
+                    break
+                }
+                length += chunk.length
+            }
+            return length
+        }
+    }
+}
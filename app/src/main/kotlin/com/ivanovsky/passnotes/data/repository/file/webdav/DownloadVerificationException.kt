@@ -0,0 +1,12 @@
+package com.ivanovsky.passnotes.data.repository.file.webdav
+
+import java.io.IOException
+
+/**
+ * Downloaded data doesn't match length or checksum declared by server. Unlike other
+ * [IOException]s, it is not a network error, so the download isn't substituted by cached
+ * file.
+ */
+class DownloadVerificationException(
+    message: String
+) : IOException(message)
@@ -0,0 +1,140 @@
+package com.ivanovsky.passnotes.data.repository.file.webdav
+
+import com.ivanovsky.passnotes.data.repository.file.remote.DownloadProgressListener
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.security.MessageDigest
+import java.util.Locale
+import okhttp3.Response
+import timber.log.Timber
+
+/**
+ * Streams response body into a temporary file next to the destination, verifies it and
+ * renames it to the destination. The destination is not modified if download is
+ * interrupted or the downloaded data is invalid, in the latter case
+ * [DownloadVerificationException] is thrown. Download is cancelled when the current thread
+ * is interrupted.
+ */
+class DownloadedFileWriter(
+    private val progressListener: DownloadProgressListener?
+) {
+
+    @Throws(IOException::class)
+    fun write(response: Response, destination: File) {
+        val body = response.body ?: throw IOException(ERROR_EMPTY_BODY)
+        val totalBytes = body.contentLength().takeIf { length -> length >= 0 }
+        val checksum = response.header(HEADER_OC_CHECKSUM)?.let { parseChecksum(it) }
+        val digest = checksum?.let { MessageDigest.getInstance(it.algorithm) }
+
+        val tmpFile = File(destination.path + TMP_FILE_SUFFIX)
+        try {
+            var downloadedBytes = 0L
+            var lastProgressTime = 0L
+
+            body.byteStream().use { input ->
+                FileOutputStream(tmpFile).use { output ->
+                    val buffer = ByteArray(BUFFER_SIZE)
+                    var length = input.read(buffer)
+                    while (length != -1) {
+                        if (Thread.currentThread().isInterrupted) {
+                            throw InterruptedIOException(ERROR_CANCELLED)
+                        }
+
+                        output.write(buffer, 0, length)
+                        digest?.update(buffer, 0, length)
+                        downloadedBytes += length
+
+                        val time = System.currentTimeMillis()
+                        if (time - lastProgressTime >= PROGRESS_INTERVAL_IN_MILLIS) {
+                            progressListener?.onProgressChanged(downloadedBytes, totalBytes)
+                            lastProgressTime = time
+                        }
+
+                        length = input.read(buffer)
+                    }
+
+                    output.flush()
+                    output.fd.sync()
+                }
+            }
+
+            if (totalBytes != null && downloadedBytes != totalBytes) {
+                throw DownloadVerificationException(
+                    "Unexpected length: expected=$totalBytes, actual=$downloadedBytes"
+                )
+            }
+
+            if (checksum != null && digest != null) {
+                val actualValue = digest.digest().toHexString()
+                if (!actualValue.equals(checksum.value, ignoreCase = true)) {
+                    throw DownloadVerificationException(
+                        "Checksum mismatch: ${checksum.algorithm}"
+                    )
+                }
+            }
+
+            progressListener?.onProgressChanged(downloadedBytes, totalBytes)
+
+            if (!tmpFile.renameTo(destination)) {
+                throw IOException("Failed to move file to ${destination.path}")
+            }
+        } catch (exception: IOException) {
+            tmpFile.delete()
+            throw exception
+        }
+    }
+
+    /**
+     * Parses checksum sent by Nextcloud and ownCloud, e.g. "SHA1:<hex>". Several checksums
+     * might be separated by space.
+     */
+    private fun parseChecksum(header: String): Checksum? {
+        val checksum = header.split(" ")
+            .mapNotNull { value ->
+                val type = value.substringBefore(CHECKSUM_SEPARATOR, missingDelimiterValue = "")
+                val algorithm = CHECKSUM_ALGORITHMS[type.uppercase(Locale.US)]
+                    ?: return@mapNotNull null
+
+                Checksum(
+                    algorithm = algorithm,
+                    value = value.substringAfter(CHECKSUM_SEPARATOR)
+                )
+            }
+            .firstOrNull()
+
+        if (checksum == null) {
+            Timber.d("Unsupported checksum: %s", header)
+        }
+
+        return checksum
+    }
+
+    private fun ByteArray.toHexString(): String {
+        return joinToString(separator = "") { byte -> "%02x".format(byte) }
+    }
+
+    private data class Checksum(
+        val algorithm: String,
+        val value: String
+    )
+
+    companion object {
+        private const val TMP_FILE_SUFFIX = ".download"
+        private const val BUFFER_SIZE = 8 * 1024
+        private const val PROGRESS_INTERVAL_IN_MILLIS = 250L
+
+        private const val HEADER_OC_CHECKSUM = "OC-Checksum"
+        private const val CHECKSUM_SEPARATOR = ":"
+
+        private const val ERROR_EMPTY_BODY = "Response body is empty"
+        private const val ERROR_CANCELLED = "Download is cancelled"
+
+        private val CHECKSUM_ALGORITHMS = mapOf(
+            "SHA1" to "SHA-1",
+            "SHA256" to "SHA-256",
+            "MD5" to "MD5"
+        )
+    }
+}
@@ -0,0 +1,172 @@
+package com.ivanovsky.passnotes.data.repository.file.webdav
+
+import com.ivanovsky.passnotes.data.entity.OperationError.newGenericIOError
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import timber.log.Timber
+
+/**
+ * Uploads file by chunks with [ChunkedUploadProtocol]. If connection is lost, upload is
+ * resumed from the last chunk stored on the server. Unfinished sessions are kept in memory,
+ * so the next upload of the same unmodified file also continues from that chunk.
+ * Attempts are delayed with exponential backoff starting from [retryDelayInMillis].
+ */
+class WebDavChunkedUploader(
+    val chunkSize: Int = DEFAULT_CHUNK_SIZE,
+    private val retryDelayInMillis: Long = DEFAULT_RETRY_DELAY_IN_MILLIS
+) {
+
+    private val sessions: MutableMap<String, UploadSession> = ConcurrentHashMap()
+
+    fun upload(
+        protocol: ChunkedUploadProtocol,
+        destinationUrl: String,
+        file: File
+    ): OperationResult<Unit> {
+        val session = getOrCreateSession(protocol, destinationUrl, file)
+
+        var attempt = 1
+        while (true) {
+            val upload = uploadRemainingChunks(protocol, session, file)
+            if (upload.isSucceeded) {
+                break
+            }
+
+            if (!upload.isFailedDueToNetwork || attempt >= MAX_ATTEMPTS) {
+                // Session is kept to continue upload with the next call
+                return upload.takeError()
+            }
+
+            val delay = getRetryDelay(attempt)
+            Timber.d(
+                "Resuming upload: url=%s, attempt=%s, delay=%s",
+                destinationUrl,
+                attempt,
+                delay
+            )
+
+            try {
+                Thread.sleep(delay)
+            } catch (exception: InterruptedException) {
+                Thread.currentThread().interrupt()
+                return upload.takeError()
+            }
+
+            attempt++
+        }
+
+        val complete = protocol.complete(session)
+        if (complete.isFailed) {
+            return complete.takeError()
+        }
+
+        sessions.remove(destinationUrl)
+
+        return OperationResult.success(Unit)
+    }
+
+    private fun getRetryDelay(attempt: Int): Long {
+        val shift = (attempt - 1).coerceAtLeast(0)
+        return (retryDelayInMillis shl shift).coerceAtMost(MAX_RETRY_DELAY_IN_MILLIS)
+    }
+
+    private fun getOrCreateSession(
+        protocol: ChunkedUploadProtocol,
+        destinationUrl: String,
+        file: File
+    ): UploadSession {
+        val fileLength = file.length()
+        val fileModified = file.lastModified()
+
+        val session = sessions[destinationUrl]
+        if (session != null &&
+            session.fileLength == fileLength &&
+            session.fileModified == fileModified
+        ) {
+            return session
+        }
+
+        if (session != null) {
+            // Local file was changed, uploaded chunks are not valid anymore
+            protocol.abort(session)
+        }
+
+        return UploadSession(
+            id = UUID.randomUUID().toString(),
+            destinationUrl = destinationUrl,
+            fileLength = fileLength,
+            fileModified = fileModified
+        ).also { newSession ->
+            sessions[destinationUrl] = newSession
+        }
+    }
+
+    private fun uploadRemainingChunks(
+        protocol: ChunkedUploadProtocol,
+        session: UploadSession,
+        file: File
+    ): OperationResult<Unit> {
+        val begin = protocol.begin(session)
+        if (begin.isFailed) {
+            return begin.takeError()
+        }
+
+        var offset = begin.obj
+        if (offset > session.fileLength) {
+            Timber.w("Uploaded data exceeds file length, restarting upload")
+            protocol.abort(session)
+
+            val restart = protocol.begin(session)
+            if (restart.isFailed) {
+                return restart.takeError()
+            }
+            offset = restart.obj
+        }
+
+        Timber.d(
+            "Uploading chunks: url=%s, offset=%s, length=%s",
+            session.destinationUrl,
+            offset,
+            session.fileLength
+        )
+
+        try {
+            RandomAccessFile(file, MODE_READ).use { input ->
+                val buffer = ByteArray(chunkSize)
+
+                input.seek(offset)
+                while (offset < session.fileLength) {
+                    val length = input.read(buffer)
+                    if (length == -1) {
+                        throw IOException("Unexpected end of file: offset=$offset")
+                    }
+
+                    val uploadChunk = protocol.uploadChunk(session, offset, buffer, length)
+                    if (uploadChunk.isFailed) {
+                        return uploadChunk.takeError()
+                    }
+
+                    offset += length
+                }
+            }
+        } catch (exception: IOException) {
+            Timber.d(exception)
+            return OperationResult.error(newGenericIOError(exception))
+        }
+
+        return OperationResult.success(Unit)
+    }
+
+    companion object {
+        const val DEFAULT_CHUNK_SIZE = 1024 * 1024
+        const val DEFAULT_RETRY_DELAY_IN_MILLIS = 1000L
+
+        private const val MAX_ATTEMPTS = 5
+        private const val MAX_RETRY_DELAY_IN_MILLIS = 16_000L
+        private const val MODE_READ = "r"
+    }
+}
@@ -5,26 +5,24 @@ import com.ivanovsky.passnotes.data.entity.FileDescriptor
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_FAILED_TO_GET_PARENT_PATH
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_FILE_IS_NOT_A_DIRECTORY
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_INCORRECT_FILE_SYSTEM_CREDENTIALS
-import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_IO_ERROR
 import com.ivanovsky.passnotes.data.entity.OperationError.newAuthError
 import com.ivanovsky.passnotes.data.entity.OperationError.newFileAccessError
 import com.ivanovsky.passnotes.data.entity.OperationError.newFileNotFoundError
-import com.ivanovsky.passnotes.data.entity.OperationError.newGenericError
 import com.ivanovsky.passnotes.data.entity.OperationResult
 import com.ivanovsky.passnotes.data.entity.RemoteFileMetadata
+import com.ivanovsky.passnotes.data.repository.file.remote.DownloadProgressListener
 import com.ivanovsky.passnotes.data.repository.file.remote.RemoteApiClient
 import com.ivanovsky.passnotes.domain.entity.exception.Stacktrace
 import com.ivanovsky.passnotes.extensions.getOrThrow
 import com.ivanovsky.passnotes.extensions.getUrl
 import com.ivanovsky.passnotes.util.FileUtils
 import com.ivanovsky.passnotes.util.FileUtils.ROOT_PATH
-import com.ivanovsky.passnotes.util.InputOutputUtils
 import com.ivanovsky.passnotes.util.StringUtils.EMPTY
 import com.thegrizzlylabs.sardineandroid.DavResource
 import java.io.File
-import java.io.FileOutputStream
-import java.io.IOException
-import java.util.concurrent.atomic.AtomicBoolean
+import java.util.Date
+import okhttp3.Request
+import okhttp3.Response
 import timber.log.Timber
 
 class WebDavClient(
@@ -38,6 +36,10 @@ class WebDavClient(
         }
     }
     private var fsAuthority = authenticator.getFsAuthority()
+    private val chunkedUploader = WebDavChunkedUploader()
+
+    @Volatile
+    private var uploadProtocol: Pair<String, ChunkedUploadProtocol?>? = null
 
     override fun listFiles(dir: FileDescriptor): OperationResult<List<FileDescriptor>> {
         Timber.d("listFiles: dir=$dir")
@@ -172,47 +174,168 @@ class WebDavClient(
 
     override fun downloadFile(
         remotePath: String,
-        destinationPath: String
+        destinationPath: String,
+        progressListener: DownloadProgressListener?
     ): OperationResult<RemoteFileMetadata> {
-        val input = webDavClient.execute { client ->
-            client.get(formatUrl(remotePath))
+        val checkCreds = checkCredentials()
+        if (checkCreds.isFailed) {
+            return checkCreds.takeError()
         }
-        if (input.isFailed) {
-            return input.takeError()
+
+        Timber.d("downloadFile: path=%s", remotePath)
+        val request = Request.Builder()
+            .url(formatUrl(remotePath))
+            .get()
+            .build()
+
+        val writer = DownloadedFileWriter(progressListener)
+        val download = webDavClient.executeRequest(request) { response ->
+            writer.write(response, File(destinationPath))
+        }
+        if (download.isFailed) {
+            return download.takeError()
         }
 
-        val cancellation = AtomicBoolean(false)
-        try {
-            val out = FileOutputStream(File(destinationPath))
-            InputOutputUtils.copyOrThrow(input.obj, out, true, cancellation)
-        } catch (e: IOException) {
-            Timber.d(e)
-            cancellation.set(true)
-            return OperationResult.error(
-                newGenericError(
-                    MESSAGE_IO_ERROR,
-                    Stacktrace()
-                )
+        return getFileMetadata(remotePath)
+    }
+
+    override fun downloadFileIfChanged(
+        file: FileDescriptor,
+        remotePath: String,
+        revision: String,
+        destinationPath: String,
+        progressListener: DownloadProgressListener?
+    ): OperationResult<RemoteFileMetadata?> {
+        if (!isEntityTag(revision)) {
+            // Revision is based on modification date, it can't be checked by server
+            return super.downloadFileIfChanged(
+                file,
+                remotePath,
+                revision,
+                destinationPath,
+                progressListener
             )
         }
 
-        return getFileMetadata(remotePath)
+        val checkCreds = checkCredentials()
+        if (checkCreds.isFailed) {
+            return checkCreds.takeError()
+        }
+
+        Timber.d("downloadFileIfChanged: path=%s, revision=%s", remotePath, revision)
+        val request = Request.Builder()
+            .url(formatUrl(remotePath))
+            .header(HEADER_IF_NONE_MATCH, revision)
+            .get()
+            .build()
+
+        val writer = DownloadedFileWriter(progressListener)
+        val download = webDavClient.executeRequest(request) { response ->
+            if (response.code == HTTP_NOT_MODIFIED) {
+                return@executeRequest ConditionalDownload.NotModified
+            }
+
+            writer.write(response, File(destinationPath))
+
+            ConditionalDownload.Downloaded(
+                metadata = response.toRemoteFileMetadata(uid = file.uid, path = remotePath)
+            )
+        }
+        if (download.isFailed) {
+            return download.takeError()
+        }
+
+        return when (val result = download.obj) {
+            is ConditionalDownload.NotModified -> OperationResult.success(null)
+            is ConditionalDownload.Downloaded -> {
+                if (result.metadata != null) {
+                    OperationResult.success(result.metadata)
+                } else {
+                    // Response doesn't contain neither ETag nor Last-Modified
+                    val getMetadataResult = getFileMetadata(remotePath)
+                    if (getMetadataResult.isFailed) {
+                        return getMetadataResult.takeError()
+                    }
+
+                    OperationResult.success(getMetadataResult.obj)
+                }
+            }
+        }
     }
 
     override fun uploadFile(
         remotePath: String,
         localPath: String
     ): OperationResult<RemoteFileMetadata> {
-        val put = webDavClient.execute { client ->
-            client.put(formatUrl(remotePath), File(localPath), CONTENT_TYPE)
+        val url = formatUrl(remotePath)
+        val file = File(localPath)
+
+        val protocol = if (file.length() > chunkedUploader.chunkSize) {
+            getChunkedUploadProtocol(url)
+        } else {
+            null
+        }
+
+        val upload = if (protocol != null) {
+            chunkedUploader.upload(protocol, url, file)
+        } else {
+            webDavClient.execute { client ->
+                client.put(url, file, CONTENT_TYPE)
+            }
         }
-        if (put.isFailed) {
-            return put.takeError()
+        if (upload.isFailed) {
+            return upload.takeError()
         }
 
         return getFileMetadata(remotePath)
     }
 
+    /**
+     * @return protocol supported by the server or null if only regular PUT requests
+     * can be used. Result is cached per server url.
+     */
+    private fun getChunkedUploadProtocol(url: String): ChunkedUploadProtocol? {
+        val serverUrl = getServerUrl()
+        val cached = uploadProtocol
+        if (cached != null && cached.first == serverUrl) {
+            return cached.second
+        }
+
+        val username = (fsAuthority.credentials as? FSCredentials.BasicCredentials)?.username
+        val uploadsUrl = username?.let { NextcloudUploadProtocol.getUploadsUrl(url, username) }
+
+        val protocol = if (uploadsUrl != null) {
+            NextcloudUploadProtocol(webDavClient, uploadsUrl)
+        } else if (isPartialUpdateSupported(serverUrl)) {
+            PartialUpdateUploadProtocol(webDavClient)
+        } else {
+            null
+        }
+        Timber.d("getChunkedUploadProtocol: protocol=%s", protocol?.javaClass?.simpleName)
+
+        uploadProtocol = Pair(serverUrl, protocol)
+
+        return protocol
+    }
+
+    private fun isPartialUpdateSupported(serverUrl: String): Boolean {
+        val request = Request.Builder()
+            .url(serverUrl)
+            .method(METHOD_OPTIONS, null)
+            .build()
+
+        val getAcceptPatch = webDavClient.executeRequest(request) { response ->
+            response.headers(HEADER_ACCEPT_PATCH)
+        }
+        if (getAcceptPatch.isFailed) {
+            return false
+        }
+
+        return getAcceptPatch.obj.any { value ->
+            value.contains(PartialUpdateUploadProtocol.PARTIAL_UPDATE_MEDIA_TYPE)
+        }
+    }
+
     private fun checkCredentials(): OperationResult<Unit> {
         val authenticatorCreds = authenticator.getFsAuthority().credentials
         val currentCreds = fsAuthority.credentials
@@ -357,7 +480,43 @@ class WebDavClient(
         )
     }
 
+    private fun Response.toRemoteFileMetadata(
+        uid: String,
+        path: String
+    ): RemoteFileMetadata? {
+        val etag = header(HEADER_ETAG)
+        val modified = headers.getDate(HEADER_LAST_MODIFIED)
+        val revision = etag ?: modified?.time?.toString() ?: return null
+
+        return RemoteFileMetadata(
+            uid = uid,
+            path = path,
+            serverModified = modified ?: Date(),
+            clientModified = modified ?: Date(),
+            revision = revision
+        )
+    }
+
+    private fun isEntityTag(revision: String): Boolean {
+        return revision.startsWith(QUOTE) || revision.startsWith(WEAK_ENTITY_TAG_PREFIX)
+    }
+
+    private sealed interface ConditionalDownload {
+        object NotModified : ConditionalDownload
+        data class Downloaded(val metadata: RemoteFileMetadata?) : ConditionalDownload
+    }
+
     companion object {
         private const val CONTENT_TYPE = "application/octet-stream"
+
+        private const val HEADER_IF_NONE_MATCH = "If-None-Match"
+        private const val HEADER_ETAG = "ETag"
+        private const val HEADER_LAST_MODIFIED = "Last-Modified"
+        private const val HTTP_NOT_MODIFIED = 304
+        private const val METHOD_OPTIONS = "OPTIONS"
+        private const val HEADER_ACCEPT_PATCH = "Accept-Patch"
+
+        private const val QUOTE = "\""
+        private const val WEAK_ENTITY_TAG_PREFIX = "W/\""
     }
 }
\ No newline at end of file
@@ -10,18 +10,91 @@ import com.thegrizzlylabs.sardineandroid.impl.OkHttpSardine
 import com.thegrizzlylabs.sardineandroid.impl.SardineException
 import java.io.IOException
 import java.util.concurrent.ConcurrentHashMap
+import okhttp3.Credentials
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
 import timber.log.Timber
 
 class WebDavNetworkLayer {
 
     private val clients: MutableMap<HttpClientType, OkHttpSardine> = ConcurrentHashMap()
 
+    private val httpClients: MutableMap<HttpClientType, OkHttpClient> = ConcurrentHashMap()
+
     @Volatile
     private var webDavClient: OkHttpSardine? = null
 
+    @Volatile
+    private var httpClient: OkHttpClient? = null
+
+    @Volatile
+    private var credentials: FSCredentials.BasicCredentials? = null
+
     fun setCredentials(credentials: FSCredentials.BasicCredentials) {
         setupClient(isIgnoreSslValidation = credentials.isIgnoreSslValidation)
         webDavClient?.setCredentials(credentials.username, credentials.password)
+        this.credentials = credentials
+    }
+
+    /**
+     * Executes plain HTTP request, for cases when response headers are required.
+     * Credentials are sent preemptively to avoid additional round trip.
+     * Responses with 2xx and 3xx codes are passed to [handler], other codes are handled in
+     * the same way as in [execute].
+     */
+    fun <T> executeRequest(
+        request: Request,
+        handler: (response: Response) -> T
+    ): OperationResult<T> {
+        val client = httpClient
+        requireNotNull(client)
+
+        val credentials = this.credentials
+        val authorizedRequest = if (credentials != null) {
+            request.newBuilder()
+                .header(
+                    HEADER_AUTHORIZATION,
+                    Credentials.basic(credentials.username, credentials.password)
+                )
+                .build()
+        } else {
+            request
+        }
+
+        return execute {
+            client.newCall(authorizedRequest).execute().use { response ->
+                if (response.code >= HTTP_BAD_REQUEST) {
+                    throw SardineException(
+                        "Unexpected response (${response.code} ${response.message})",
+                        response.code,
+                        response.message
+                    )
+                }
+
+                handler.invoke(response)
+            }
+        }
+    }
+
+    fun move(
+        sourceUrl: String,
+        destinationUrl: String,
+        headers: Map<String, String> = emptyMap()
+    ): OperationResult<Unit> {
+        val request = Request.Builder()
+            .url(sourceUrl)
+            .method(METHOD_MOVE, null)
+            .header(HEADER_DESTINATION, destinationUrl)
+            .header(HEADER_OVERWRITE, OVERWRITE_TRUE)
+            .apply {
+                for ((name, value) in headers) {
+                    header(name, value)
+                }
+            }
+            .build()
+
+        return executeRequest(request) { }
     }
 
     fun <T> execute(call: (webDavClient: OkHttpSardine) -> T): OperationResult<T> {
@@ -39,6 +112,11 @@ class WebDavNetworkLayer {
                 )
                 else -> OperationResult.error(newRemoteApiError(exception.message, Stacktrace()))
             }
+        } catch (exception: DownloadVerificationException) {
+            Timber.d(exception)
+            return OperationResult.error(
+                OperationError.newGenericIOError(exception.message, exception)
+            )
         } catch (exception: IOException) {
             Timber.d(exception)
             return OperationResult.error(OperationError.newNetworkIOError(exception))
@@ -57,14 +135,27 @@ class WebDavNetworkLayer {
             HttpClientType.SECURE
         }
 
+        val client = httpClients[clientType]
+            ?: HttpClientFactory.createHttpClient(clientType)
+                .apply {
+                    httpClients[clientType] = this
+                }
+
+        httpClient = client
         webDavClient = clients[clientType]
-            ?: OkHttpSardine(HttpClientFactory.createHttpClient(clientType))
+            ?: OkHttpSardine(client)
                 .apply {
                     clients[clientType] = this
                 }
     }
 
     companion object {
+        private const val METHOD_MOVE = "MOVE"
+        private const val HEADER_AUTHORIZATION = "Authorization"
+        private const val HEADER_DESTINATION = "Destination"
+        private const val HEADER_OVERWRITE = "Overwrite"
+        private const val OVERWRITE_TRUE = "T"
+        private const val HTTP_BAD_REQUEST = 400
         private const val HTTP_UNAUTHORIZED = 401
         private const val HTTP_NOT_FOUND = 404
     }
@@ -3,11 +3,33 @@ package com.ivanovsky.passnotes.data.repository.keepass
 import com.ivanovsky.passnotes.data.entity.PropertyType
 import com.ivanovsky.passnotes.domain.otp.OtpUriFactory
 
+/**
+ * Types of properties that are required to display note in a list
+ */
+val SUMMARY_PROPERTY_TYPES = setOf(
+    PropertyType.TITLE,
+    PropertyType.USER_NAME,
+    PropertyType.URL,
+    PropertyType.NOTES,
+    PropertyType.OTP
+)
+
+fun isSummaryProperty(name: String): Boolean {
+    return PropertyType.getByName(name) in SUMMARY_PROPERTY_TYPES
+}
+
 fun determinePropertyType(name: String, value: String): PropertyType? {
+    return determinePropertyType(name) { value }
+}
+
+/**
+ * [getValue] is invoked only if the value is required to determine the type
+ */
+inline fun determinePropertyType(name: String, getValue: () -> String): PropertyType? {
     val type = PropertyType.getByName(name) ?: return null
 
     return if (type == PropertyType.OTP) {
-        if (OtpUriFactory.parseUri(value) != null) {
+        if (OtpUriFactory.parseUri(getValue()) != null) {
             PropertyType.OTP
         } else {
             null
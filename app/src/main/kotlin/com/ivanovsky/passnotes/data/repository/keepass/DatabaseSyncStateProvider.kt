@@ -38,6 +38,13 @@ class DatabaseSyncStateProvider(
         database: EncryptedDatabase,
         result: OperationResult<*>
     ) {
+        // Changes are not written to the file, status is updated after the next commit
+        if (result.isFailed) {
+            val newState = setupNewState(status = SyncStatus.ERROR)
+            setSyncState(newState, isNotify = true)
+            return
+        }
+
         val currentState = syncStateRef.get()
         if (currentState?.status == SyncStatus.NO_CHANGES && result.isDeferred) {
             val newState = setupNewState(status = SyncStatus.LOCAL_CHANGES)
@@ -25,6 +25,7 @@ import java.io.InputStream
 import java.util.concurrent.atomic.AtomicReference
 import java.util.concurrent.locks.ReentrantLock
 import kotlin.concurrent.withLock
+import timber.log.Timber
 
 class KeepassDatabaseRepository(
     private val fileSystemResolver: FileSystemResolver,
@@ -50,7 +51,10 @@ class KeepassDatabaseRepository(
 
         val openDbResult = lock.withLock {
             if (isOpened()) {
-                close()
+                val closeResult = close()
+                if (closeResult.isFailed) {
+                    return@withLock closeResult.takeError()
+                }
             }
 
             val openFileResult = fsProvider.openFileForRead(
@@ -133,6 +137,13 @@ class KeepassDatabaseRepository(
 
             val oldDb = databaseRef.get().database
             val type = databaseRef.get().type
+
+            // Changes that are not written yet would be lost after reload
+            val flushError = oldDb.commitScheduler.flush().leftOrNull()
+            if (flushError != null) {
+                return@withLock OperationResult.error(flushError)
+            }
+
             val fsProvider = fileSystemResolver.resolveProvider(oldDb.getFile().fsAuthority)
             val fsOptions = oldDb.getFSOptions()
             val file = oldDb.getFile()
@@ -161,6 +172,7 @@ class KeepassDatabaseRepository(
 
             val db = openResult.obj
             databaseRef.set(DatabaseReference(type, db))
+            oldDb.close()
             openResult.takeStatusWith(db)
         }
 
@@ -203,15 +215,29 @@ class KeepassDatabaseRepository(
     }
 
     override fun close(): OperationResult<Boolean> {
-        lock.withLock {
-            if (isOpened()) {
-                databaseRef.get().database
-                    .apply {
-                        this.watcher.unsubscribe(syncStatusProvider)
-                    }
+        val result = lock.withLock {
+            if (!isOpened()) {
+                return@withLock OperationResult.success(true)
+            }
 
-                databaseRef.set(null)
+            val db = databaseRef.get().database
+
+            // Database is kept opened if pending changes can't be written
+            val flushError = db.commitScheduler.flush().leftOrNull()
+            if (flushError != null) {
+                Timber.d("Failed to flush pending commits: %s", flushError)
+                return@withLock OperationResult.error(flushError)
             }
+
+            db.watcher.unsubscribe(syncStatusProvider)
+            db.close()
+
+            databaseRef.set(null)
+            OperationResult.success(true)
+        }
+
+        if (result.isFailed) {
+            return result
         }
 
         onDatabaseClosed()
@@ -0,0 +1,21 @@
+package com.ivanovsky.passnotes.data.repository.keepass.keepassrs
+
+import com.google.protobuf.ByteString
+import com.ivanovsky.passnotes.data.entity.AttachmentContent
+import java.io.InputStream
+
+/**
+ * Refers to attachment [data] stored in the database, protobuf [ByteString] is immutable
+ * so it can be shared without copying.
+ */
+class ByteStringAttachmentContent(
+    val data: ByteString
+) : AttachmentContent {
+
+    override val size: Long
+        get() = data.size().toLong()
+
+    override fun openStream(): InputStream = data.newInput()
+
+    override fun readBytes(): ByteArray = data.toByteArray()
+}
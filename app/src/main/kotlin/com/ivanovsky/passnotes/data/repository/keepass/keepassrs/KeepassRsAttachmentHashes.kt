@@ -0,0 +1,38 @@
+package com.ivanovsky.passnotes.data.repository.keepass.keepassrs
+
+import com.google.protobuf.ByteString
+import com.ivanovsky.passnotes.data.entity.Hash
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Attachment as RawAttachment
+import com.ivanovsky.passnotes.util.ShaUtils
+
+/**
+ * Hashes of attachment binaries, each binary is hashed once instead of on every conversion.
+ * Binary data is an immutable [ByteString] that is shared between versions of the database,
+ * so cached hash is valid while the same instance is stored under the attachment id.
+ * Not thread safe, access should be guarded by [KeepassRsDatabase.lock].
+ */
+class KeepassRsAttachmentHashes {
+
+    private val attachmentIdToHashMap = HashMap<Int, CachedHash>()
+
+    fun getHash(attachment: RawAttachment): Hash {
+        val cached = attachmentIdToHashMap[attachment.id]
+        if (cached != null && cached.data === attachment.data) {
+            return cached.hash
+        }
+
+        val hash = ShaUtils.sha256(attachment.data.newInput())
+        attachmentIdToHashMap[attachment.id] = CachedHash(attachment.data, hash)
+
+        return hash
+    }
+
+    fun onAttachmentRemoved(attachmentId: Int) {
+        attachmentIdToHashMap.remove(attachmentId)
+    }
+
+    private class CachedHash(
+        val data: ByteString,
+        val hash: Hash
+    )
+}
@@ -18,6 +18,7 @@ import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_FAILED_TO_OPEN
 import com.ivanovsky.passnotes.data.entity.OperationError.newAuthError
 import com.ivanovsky.passnotes.data.entity.OperationError.newDbError
 import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.repository.encdb.DatabaseCommitScheduler
 import com.ivanovsky.passnotes.data.repository.encdb.DatabaseWatcher
 import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
 import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabaseConfig
@@ -35,14 +36,17 @@ import com.ivanovsky.passnotes.extensions.toEither
 import com.ivanovsky.passnotes.keepassrs.InvalidKeyException
 import com.ivanovsky.passnotes.keepassrs.KeepassRs
 import com.ivanovsky.passnotes.keepassrs.KeepassRsException
+import com.ivanovsky.passnotes.keepassrs.KeepassRsHandle
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Database as RawDatabase
 import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseKey as RawKey
+import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseMutation
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Entry as RawEntry
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Group as RawGroup
 import com.ivanovsky.passnotes.util.InputOutputUtils
 import com.ivanovsky.passnotes.util.toOperationResult
-import java.io.ByteArrayInputStream
+import java.io.IOException
 import java.io.InputStream
+import java.io.OutputStream
 import java.util.LinkedList
 import java.util.UUID
 import java.util.concurrent.atomic.AtomicReference
@@ -62,15 +66,30 @@ class KeepassRsDatabase(
     private val fileRef = AtomicReference(file)
     private val keyRef = AtomicReference(key)
     private val databaseRef = AtomicReference(protoDatabase)
+    private val index = KeepassRsIndex.build(protoDatabase.rootGroup)
     private val inheritableOptionsMap = AtomicReference(createInheritableOptionsMap())
-    private val groupUidToParentMap = AtomicReference(createGroupUidToParentMap())
+
+    // Native copy of the database, it is created on the first change.
+    // Only writes are incremental: mutations are applied to the native copy instead of
+    // encoding the whole database on every commit. Reads are still served from the JVM copy
+    // in databaseRef, so after the first change the database (including attachments) is kept
+    // in memory twice, and every change rebuilds groups on the path to the changed node.
+    private var handle: KeepassRsHandle? = null
 
     override val lock = ReentrantLock()
     override val groupDao = KeepassRsGroupDao(this)
     override val noteDao = KeepassRsNoteDao(this)
     override val watcher = DatabaseWatcher<EncryptedDatabase>()
+    override val commitScheduler = DatabaseCommitScheduler(
+        commitAction = ::commit,
+        onCommitFailed = { error ->
+            watcher.notifyOnCommit(this, OperationResult.error<Boolean>(error))
+        }
+    )
     override val templateDao = TemplateDaoImpl(groupDao, noteDao)
 
+    val attachmentHashes = KeepassRsAttachmentHashes()
+
     override fun getFile(): FileDescriptor = fileRef.get()
 
     override fun getKey(): EncryptedDatabaseKey = keyRef.get()
@@ -108,11 +127,11 @@ class KeepassRsDatabase(
                     .setRecycleBinUuid(config.recycleBinUid?.toByteString())
                     .setHistoryMaxItems(config.maxHistoryItems).build()
 
-            swapDatabase { db ->
-                db.toBuilder().setMeta(updatedMeta).build()
-            }
+            either {
+                mutate(listOf(setMetaMutation(updatedMeta))).bind()
 
-            commit()
+                commit().bind()
+            }
         }
     }
 
@@ -157,25 +176,39 @@ class KeepassRsDatabase(
         val commitResult = lock.withLock {
             either {
                 val key = createKey(fsResolver, keyRef.get()).toEither().bind()
+                val handle = getOrOpenHandle().bind()
+
+                // Output is opened only when the native side starts to write already encoded
+                // file, so a failed encoding doesn't truncate the target file
+                val deferredOutput = DeferredOutputStream {
+                    fsProvider.openFileForWrite(
+                        output,
+                        OnConflictStrategy.CANCEL,
+                        fsOptions
+                    ).toEither()
+                }
+
+                // Encoded file is streamed to the output, it is never fully copied to the Java heap
+                try {
+                    val encodeResult = deferredOutput.use { stream ->
+                        handle.encode(
+                            key = key,
+                            output = stream
+                        )
+                    }
 
-                val databaseBytes = KeepassRs.encode(
-                    database = databaseRef.get(),
-                    key = key
-                ).mapLeft { error ->
-                    newDbError(OperationError.MESSAGE_FAILED_TO_ENCODE_DATA, error)
-                }.bind()
-
-                val output = fsProvider.openFileForWrite(
-                    output,
-                    OnConflictStrategy.CANCEL,
-                    fsOptions
-                ).toEither().bind()
-
-                InputOutputUtils.copy(
-                    from = ByteArrayInputStream(databaseBytes),
-                    to = output,
-                    isClose = true
-                ).takeStatusWith(true).toEither().bind()
+                    deferredOutput.openError?.let { error -> raise(error) }
+
+                    encodeResult.mapLeft { error ->
+                        newDbError(OperationError.MESSAGE_FAILED_TO_ENCODE_DATA, error)
+                    }.bind()
+                } catch (exception: IOException) {
+                    Timber.d(exception)
+                    deferredOutput.openError?.let { error -> raise(error) }
+                    raise(OperationError.newGenericIOError(exception))
+                }
+
+                true
             }
         }
 
@@ -188,27 +221,103 @@ class KeepassRsDatabase(
 
     fun getRawDatabase(): RawDatabase = databaseRef.get()
 
-    fun swapDatabase(transform: (source: RawDatabase) -> RawDatabase) {
+    /**
+     * Applies [mutations] to the native copy of the database and to [getRawDatabase].
+     * Only the changed nodes are transferred to the native side.
+     * The whole batch is checked before it is applied, so either all [mutations] are
+     * applied to both copies or none of them.
+     */
+    fun mutate(mutations: List<DatabaseMutation>): Either<OperationError, Unit> =
         lock.withLock {
-            databaseRef.set(transform.invoke(databaseRef.get()))
-            inheritableOptionsMap.set(createInheritableOptionsMap())
-            groupUidToParentMap.set(createGroupUidToParentMap())
+            either {
+                index.validateMutations(mutations).bind()
+
+                val handle = getOrOpenHandle().bind()
+                val oldDatabase = databaseRef.get()
+                val newDatabase = applyMutations(oldDatabase, mutations)
+                    .onLeft { index.rebuild(oldDatabase.rootGroup) }
+                    .bind()
+
+                handle.apply(mutations)
+                    .mapLeft { error ->
+                        newDbError(OperationError.MESSAGE_FAILED_TO_ENCODE_DATA, error)
+                    }
+                    .onLeft {
+                        // Native copy is created again from the unchanged JVM copy
+                        index.rebuild(oldDatabase.rootGroup)
+                        closeHandle()
+                    }
+                    .bind()
+
+                databaseRef.set(newDatabase)
+
+                for (mutation in mutations) {
+                    if (mutation.hasRemoveAttachment()) {
+                        attachmentHashes.onAttachmentRemoved(mutation.removeAttachment.id)
+                    }
+                }
+
+                val isGroupsChanged = mutations.any { mutation ->
+                    mutation.hasPutGroup() || mutation.hasRemoveGroup()
+                }
+                if (isGroupsChanged) {
+                    inheritableOptionsMap.set(createInheritableOptionsMap())
+                }
+            }
         }
+
+    private fun applyMutations(
+        database: RawDatabase,
+        mutations: List<DatabaseMutation>
+    ): Either<OperationError, RawDatabase> =
+        either {
+            var result = database
+            for (mutation in mutations) {
+                result = result.applyMutation(mutation, index).bind()
+            }
+
+            result
+        }
+
+    override fun close() {
+        commitScheduler.close()
+
+        lock.withLock {
+            closeHandle()
+        }
+    }
+
+    private fun closeHandle() {
+        handle?.close()
+        handle = null
     }
 
+    private fun getOrOpenHandle(): Either<OperationError, KeepassRsHandle> =
+        either {
+            val currentHandle = handle
+            if (currentHandle != null && !currentHandle.isClosed) {
+                return@either currentHandle
+            }
+
+            val newHandle = KeepassRs.openHandle(databaseRef.get())
+                .mapLeft { error -> newDbError(MESSAGE_FAILED_TO_DECODE_DB_FILE, error) }
+                .bind()
+
+            handle = newHandle
+            newHandle
+        }
+
     fun getRawGroupByUid(uid: UUID): Either<OperationError, RawGroup> = either {
-        val group = getRawDatabase().rootGroup.getGroup(
-            predicate = { group -> group.uuid.toUuidOrNull() == uid }
-        ) ?: raise(failedToFindEntityByUid(uid, Group::class))
+        val group = index.getGroupPath(uid)
+            ?.let { path -> getRawDatabase().rootGroup.getGroupAt(path) }
+            ?: raise(failedToFindEntityByUid(uid, Group::class))
 
         group
     }
 
     fun getRawEntryByUid(uid: UUID): Either<OperationError, RawEntry> =
         either {
-            val (_, entry) = getRawDatabase().rootGroup
-                .getEntryAndGroup { entry -> entry.uuid.toUuidOrNull() == uid }
-                ?: raise(failedToFindEntityByUid(uid, Note::class))
+            val (_, entry) = getRawEntryWithGroupByUid(uid).bind()
 
             entry
         }
@@ -217,8 +326,12 @@ class KeepassRsDatabase(
         uid: UUID
     ): Either<OperationError, Pair<RawGroup, RawEntry>> =
         either {
-            val (group, entry) = getRawDatabase().rootGroup
-                .getEntryAndGroup { entry -> entry.uuid.toUuidOrNull() == uid }
+            val groupUid = index.getEntryGroupUid(uid)
+                ?: raise(failedToFindEntityByUid(uid, Note::class))
+
+            val uuid = uid.toByteString()
+            val group = getRawGroupByUid(groupUid).bind()
+            val entry = group.entriesList.firstOrNull { entry -> entry.uuid == uuid }
                 ?: raise(failedToFindEntityByUid(uid, Note::class))
 
             group to entry
@@ -248,24 +361,24 @@ class KeepassRsDatabase(
         return Either.Right(options)
     }
 
-    fun getRawParentGroup(childUid: UUID): Either<OperationError, Option<RawGroup>> = either {
-        val rootUid = getRawDatabase().rootGroup.uuid.toUuid().bind()
-        if (childUid != rootUid) {
-            val parentGroup = groupUidToParentMap.get()[childUid]
+    fun getParentGroupUid(childUid: UUID): Either<OperationError, Option<UUID>> = either {
+        if (childUid != index.rootUid) {
+            val parentUid = index.getParentUid(childUid)
                 ?: raise(failedToFindEntityByUid(childUid, Group::class))
 
-            Some(parentGroup)
+            Some(parentUid)
         } else {
             None
         }
     }
 
-    fun getParentGroupUid(childUid: UUID): Either<OperationError, Option<UUID>> = either {
-        val parentGroup = getRawParentGroup(childUid).bind()
-
-        val parentUid = parentGroup.flatMap { group -> group.uuid.toUuid().getOrNone() }
+    fun isGroupInsideGroupTree(
+        groupUid: UUID,
+        groupTreeRootUid: UUID
+    ): Boolean {
+        val path = index.getGroupPath(groupUid) ?: return false
 
-        parentUid
+        return groupTreeRootUid == index.rootUid || groupTreeRootUid in path
     }
 
     fun getRecycleBindGroup(): Either<OperationError, Option<RawGroup>> = either {
@@ -350,24 +463,49 @@ class KeepassRsDatabase(
         }.toMap()
     }
 
-    private fun createGroupUidToParentMap(): Map<UUID, RawGroup> {
-        val result = hashMapOf<UUID, RawGroup>()
+    /**
+     * Opens the underlying stream with [openOutput] on the first write
+     */
+    private class DeferredOutputStream(
+        private val openOutput: () -> Either<OperationError, OutputStream>
+    ) : OutputStream() {
+
+        private var output: OutputStream? = null
+
+        var openError: OperationError? = null
+            private set
 
-        val nextGroups = LinkedList<RawGroup>().apply {
-            add(getRawDatabase().rootGroup)
+        override fun write(b: Int) {
+            getOutput().write(b)
         }
 
-        while (nextGroups.isNotEmpty()) {
-            val group = nextGroups.removeFirst()
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            getOutput().write(b, off, len)
+        }
 
-            for (child in group.groupsList) {
-                val childUid = child.uuid.toUuidOrNull() ?: continue
-                result[childUid] = group
-                nextGroups.add(child)
-            }
+        override fun flush() {
+            output?.flush()
         }
 
-        return result
+        override fun close() {
+            output?.close()
+        }
+
+        private fun getOutput(): OutputStream {
+            output?.let { return it }
+            openError?.let { error -> throw IOException(error.message) }
+
+            return openOutput().fold(
+                ifLeft = { error ->
+                    openError = error
+                    throw IOException(error.message)
+                },
+                ifRight = { stream ->
+                    output = stream
+                    stream
+                }
+            )
+        }
     }
 
     companion object {
@@ -379,7 +517,7 @@ class KeepassRsDatabase(
             content: OperationResult<InputStream>,
             key: EncryptedDatabaseKey
         ): Either<OperationError, EncryptedDatabase> = either {
-            val databaseBytes = InputOutputUtils.readAllBytes(
+            val databaseBuffer = InputOutputUtils.readAllBytesToDirectBuffer(
                 source = content.toEither().bind(),
                 isCloseOnFinish = true
             ).mapLeft { error ->
@@ -387,7 +525,7 @@ class KeepassRsDatabase(
             }.bind()
 
             val database = KeepassRs.decode(
-                data = databaseBytes,
+                data = databaseBuffer,
                 key = createKey(fsResolver, key).toEither().bind()
             ).mapLeft { error -> error.toOperationError() }.bind()
 
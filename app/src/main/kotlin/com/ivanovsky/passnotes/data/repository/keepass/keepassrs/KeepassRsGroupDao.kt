@@ -97,20 +97,10 @@ class KeepassRsGroupDao(
                 db.getRawGroupByUid(parentUid).bind()
 
                 val rawGroup = group.copy(uid = uid).toProtoGroup(uid)
-                db.swapDatabase { db ->
-                    db.toBuilder()
-                        .setRootGroup(
-                            db.rootGroup.updateGroup(parentUid) { parent ->
-                                parent.toBuilder()
-                                    .addGroups(rawGroup)
-                                    .build()
-                            }
-                        )
-                        .build()
-                }
+                db.mutate(listOf(putGroupMutation(parentUid, rawGroup))).bind()
 
                 if (doCommit) {
-                    db.commit()
+                    db.commitScheduler.requestCommit()
                         .map { uid }
                         .bind()
                 } else {
@@ -147,22 +137,21 @@ class KeepassRsGroupDao(
                     false
                 }
 
-                db.swapDatabase { db ->
-                    val newRootGroup = if (recycleBinUid != null && !isInsideRecycleBin) {
-                        db.rootGroup.moveGroup(
-                            targetUid = groupUid,
-                            newParentUid = recycleBinUid
-                        )
-                    } else {
-                        db.rootGroup.removeGroup(groupUid)
-                    }
-
-                    db.toBuilder()
-                        .setRootGroup(newRootGroup)
+                val mutation = if (recycleBinUid != null && !isInsideRecycleBin) {
+                    val rawGroup = db.getRawGroupByUid(groupUid).bind()
+                        .toBuilder()
+                        .clearGroups()
+                        .clearEntries()
                         .build()
+
+                    putGroupMutation(recycleBinUid, rawGroup)
+                } else {
+                    removeGroupMutation(groupUid)
                 }
 
-                db.commit().bind()
+                db.mutate(listOf(mutation)).bind()
+
+                db.commitScheduler.requestCommit().bind()
             }
         }.toOperationResult()
         if (result.isSucceededOrDeferred) {
@@ -216,31 +205,17 @@ class KeepassRsGroupDao(
 
                 val oldParentUid = db.getParentGroupUid(uid).bind().getOrNull()
 
-                db.swapDatabase { db ->
-                    val rootGroup =
-                        if (group.parentUid != null && oldParentUid != group.parentUid) {
-                            db.rootGroup.moveGroup(
-                                targetUid = uid,
-                                newParentUid = group.parentUid
-                            )
-                        } else {
-                            db.rootGroup
-                        }
-
-                    db.toBuilder()
-                        .setRootGroup(
-                            rootGroup.updateGroup(uid) { oldGroup ->
-                                group.toProtoGroup(uid).toBuilder()
-                                    .addAllGroups(oldGroup.groupsList)
-                                    .addAllEntries(oldGroup.entriesList)
-                                    .build()
-                            }
+                db.mutate(
+                    listOf(
+                        putGroupMutation(
+                            parentUid = group.parentUid ?: oldParentUid,
+                            group = group.toProtoGroup(uid)
                         )
-                        .build()
-                }
+                    )
+                ).bind()
 
                 if (doCommit) {
-                    db.commit().bind()
+                    db.commitScheduler.requestCommit().bind()
                 } else {
                     true
                 }
@@ -278,9 +253,11 @@ class KeepassRsGroupDao(
         groupUid: UUID,
         groupTreeRootUid: UUID
     ) = either {
-        val treeRootGroup = db.getRawGroupByUid(groupTreeRootUid).bind()
+        db.getRawGroupByUid(groupTreeRootUid).bind()
 
-        groupUid == groupTreeRootUid ||
-            treeRootGroup.getGroup { group -> group.uuid.toUuidOrNull() == groupUid } != null
+        groupUid == groupTreeRootUid || db.isGroupInsideGroupTree(
+            groupUid = groupUid,
+            groupTreeRootUid = groupTreeRootUid
+        )
     }
 }
\ No newline at end of file
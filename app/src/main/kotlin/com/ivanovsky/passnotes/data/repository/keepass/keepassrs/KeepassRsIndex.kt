@@ -0,0 +1,127 @@
+package com.ivanovsky.passnotes.data.repository.keepass.keepassrs
+
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Group as RawGroup
+import java.util.LinkedList
+import java.util.UUID
+
+/**
+ * Parent links of groups and entries, allows to locate any node without walking the whole tree.
+ * Not thread safe, access should be guarded by [KeepassRsDatabase.lock].
+ */
+class KeepassRsIndex private constructor(
+    val rootUid: UUID,
+    private val groupUidToParentUidMap: MutableMap<UUID, UUID>,
+    private val entryUidToGroupUidMap: MutableMap<UUID, UUID>
+) {
+
+    fun isGroupExist(groupUid: UUID): Boolean {
+        return groupUid == rootUid || groupUid in groupUidToParentUidMap
+    }
+
+    fun getParentUid(groupUid: UUID): UUID? = groupUidToParentUidMap[groupUid]
+
+    fun getEntryGroupUid(entryUid: UUID): UUID? = entryUidToGroupUidMap[entryUid]
+
+    /**
+     * @return uids of groups from the root (exclusive) to the group with [groupUid] (inclusive)
+     */
+    fun getGroupPath(groupUid: UUID): List<UUID>? {
+        val path = LinkedList<UUID>()
+
+        var currentUid = groupUid
+        while (currentUid != rootUid) {
+            path.addFirst(currentUid)
+            currentUid = groupUidToParentUidMap[currentUid] ?: return null
+        }
+
+        return path
+    }
+
+    fun onEntryPut(entryUid: UUID, groupUid: UUID) {
+        entryUidToGroupUidMap[entryUid] = groupUid
+    }
+
+    fun onEntryRemoved(entryUid: UUID) {
+        entryUidToGroupUidMap.remove(entryUid)
+    }
+
+    fun onGroupMoved(groupUid: UUID, parentUid: UUID) {
+        groupUidToParentUidMap[groupUid] = parentUid
+    }
+
+    fun onGroupInserted(group: RawGroup, parentUid: UUID) {
+        val groupUid = group.uuid.toUuidOrNull() ?: return
+
+        groupUidToParentUidMap[groupUid] = parentUid
+        indexGroupTree(group)
+    }
+
+    /**
+     * Drops all changes and indexes the tree of [root] again
+     */
+    fun rebuild(root: RawGroup) {
+        groupUidToParentUidMap.clear()
+        entryUidToGroupUidMap.clear()
+        indexGroupTree(root)
+    }
+
+    fun onGroupRemoved(group: RawGroup) {
+        val groupUid = group.uuid.toUuidOrNull() ?: return
+
+        groupUidToParentUidMap.remove(groupUid)
+        group.visitTree(
+            onGroup = { childUid, _ -> groupUidToParentUidMap.remove(childUid) },
+            onEntry = { entryUid, _ -> entryUidToGroupUidMap.remove(entryUid) }
+        )
+    }
+
+    private fun indexGroupTree(root: RawGroup) {
+        root.visitTree(
+            onGroup = { childUid, parentUid -> groupUidToParentUidMap[childUid] = parentUid },
+            onEntry = { entryUid, groupUid -> entryUidToGroupUidMap[entryUid] = groupUid }
+        )
+    }
+
+    companion object {
+
+        fun build(root: RawGroup): KeepassRsIndex {
+            val index = KeepassRsIndex(
+                rootUid = root.uuid.toUuidOrThrow(),
+                groupUidToParentUidMap = hashMapOf(),
+                entryUidToGroupUidMap = hashMapOf()
+            )
+
+            index.indexGroupTree(root)
+
+            return index
+        }
+    }
+}
+
+/**
+ * Visits all entries and child groups of the group tree together with uids of their parents
+ */
+inline fun RawGroup.visitTree(
+    onGroup: (childUid: UUID, parentUid: UUID) -> Unit,
+    onEntry: (entryUid: UUID, groupUid: UUID) -> Unit
+) {
+    val nextGroups = LinkedList<RawGroup>().apply {
+        add(this@visitTree)
+    }
+
+    while (nextGroups.isNotEmpty()) {
+        val group = nextGroups.removeFirst()
+        val groupUid = group.uuid.toUuidOrNull() ?: continue
+
+        for (entry in group.entriesList) {
+            val entryUid = entry.uuid.toUuidOrNull() ?: continue
+            onEntry.invoke(entryUid, groupUid)
+        }
+
+        for (child in group.groupsList) {
+            val childUid = child.uuid.toUuidOrNull() ?: continue
+            onGroup.invoke(childUid, groupUid)
+            nextGroups.add(child)
+        }
+    }
+}
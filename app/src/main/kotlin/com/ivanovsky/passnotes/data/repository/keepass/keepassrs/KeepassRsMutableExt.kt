@@ -71,9 +71,16 @@ fun Note.toProtoEntry(
 }
 
 fun Attachment.toProtoAttachment(id: Int): ProtoAttachment {
+    val content = content
+    val data = if (content is ByteStringAttachmentContent) {
+        content.data
+    } else {
+        ByteString.copyFrom(content.readBytes())
+    }
+
     return ProtoAttachment.newBuilder()
         .setId(id)
-        .setData(ByteString.copyFrom(data))
+        .setData(data)
         .build()
 }
 
@@ -5,7 +5,6 @@ import arrow.core.raise.either
 import com.ivanovsky.passnotes.BuildConfig
 import com.ivanovsky.passnotes.data.entity.Attachment
 import com.ivanovsky.passnotes.data.entity.Hash
-import com.ivanovsky.passnotes.data.entity.HashType
 import com.ivanovsky.passnotes.data.entity.Note
 import com.ivanovsky.passnotes.data.entity.OperationError
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_UID_IS_NULL
@@ -21,7 +20,6 @@ import com.ivanovsky.passnotes.keepassrs.proto.v1.Entry as ProtoEntry
 import com.ivanovsky.passnotes.keepassrs.proto.v1.EntryAttachment
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Group as ProtoGroup
 import com.ivanovsky.passnotes.keepassrs.proto.v1.timesOrNull
-import com.ivanovsky.passnotes.util.ShaUtils
 import com.ivanovsky.passnotes.util.format
 import com.ivanovsky.passnotes.util.toOperationResult
 import java.util.LinkedList
@@ -38,6 +36,8 @@ class KeepassRsNoteDao(
 
     override fun getAll(): OperationResult<List<Note>> {
         return db.lock.withLock {
+            val attachmentsMap = db.getRawDatabase().getAllAttachmentsMap()
+
             OperationResult.success(
                 db.getRawDatabase()
                     .rootGroup
@@ -45,7 +45,8 @@ class KeepassRsNoteDao(
                     .map { (groupUid, entry) ->
                         entry.convertToNote(
                             groupUid = groupUid,
-                            allAttachments = db.getRawDatabase().getAllAttachmentsMap()
+                            allAttachments = attachmentsMap,
+                            attachmentHashes = db.attachmentHashes
                         )
                     }
             )
@@ -53,6 +54,17 @@ class KeepassRsNoteDao(
     }
 
     override fun getNotesByGroupUid(groupUid: UUID): OperationResult<List<Note>> {
+        return getNotesByGroupUid(groupUid, isSummary = false)
+    }
+
+    override fun getNoteSummariesByGroupUid(groupUid: UUID): OperationResult<List<Note>> {
+        return getNotesByGroupUid(groupUid, isSummary = true)
+    }
+
+    private fun getNotesByGroupUid(
+        groupUid: UUID,
+        isSummary: Boolean
+    ): OperationResult<List<Note>> {
         return db.lock.withLock {
             either {
                 val group = db.getRawGroupByUid(groupUid).bind()
@@ -61,7 +73,9 @@ class KeepassRsNoteDao(
                 group.entriesList.map { entry ->
                     entry.convertToNote(
                         groupUid = groupUid,
-                        allAttachments = attachmentsMap
+                        allAttachments = attachmentsMap,
+                        attachmentHashes = db.attachmentHashes,
+                        isSummary = isSummary
                     )
                 }
             }.toOperationResult()
@@ -69,6 +83,15 @@ class KeepassRsNoteDao(
     }
 
     override fun getNoteByUid(noteUid: UUID): OperationResult<Note> =
+        getNoteByUid(noteUid, isSummary = false)
+
+    override fun getNoteSummaryByUid(noteUid: UUID): OperationResult<Note> =
+        getNoteByUid(noteUid, isSummary = true)
+
+    private fun getNoteByUid(
+        noteUid: UUID,
+        isSummary: Boolean
+    ): OperationResult<Note> =
         db.lock.withLock {
             either {
                 val (group, entry) = db.getRawEntryWithGroupByUid(noteUid).bind()
@@ -77,7 +100,9 @@ class KeepassRsNoteDao(
 
                 entry.convertToNote(
                     groupUid = groupUid,
-                    allAttachments = db.getRawDatabase().getAllAttachmentsMap()
+                    allAttachments = db.getRawDatabase().getAllAttachmentsMap(),
+                    attachmentHashes = db.attachmentHashes,
+                    isSummary = isSummary
                 )
             }.toOperationResult()
         }
@@ -103,22 +128,15 @@ class KeepassRsNoteDao(
                     attachmentHashToIdMap = attachmentHashToIdMap
                 )
 
-                db.swapDatabase { db ->
-                    db.toBuilder()
-                        .clearAttachments()
-                        .addAllAttachments(newAttachments)
-                        .setRootGroup(
-                            db.rootGroup.updateGroup(note.groupUid) { protoGroup ->
-                                protoGroup.toBuilder()
-                                    .addEntries(protoEntry)
-                                    .build()
-                            }
-                        )
-                        .build()
-                }
+                db.mutate(
+                    attachmentMutations(
+                        oldAttachments = db.getRawDatabase().attachmentsList,
+                        newAttachments = newAttachments
+                    ) + putEntryMutation(note.groupUid, protoEntry)
+                ).bind()
 
                 if (doCommit) {
-                    db.commit()
+                    db.commitScheduler.requestCommit()
                         .map { uid }
                         .bind()
                 } else {
@@ -147,8 +165,11 @@ class KeepassRsNoteDao(
             inserted.add(note.copy(uid = result.obj))
         }
 
-        val commitResult =
-            if (doCommit) db.commit().toOperationResult() else OperationResult.success(true)
+        val commitResult = if (doCommit) {
+            db.commitScheduler.requestCommit().toOperationResult()
+        } else {
+            OperationResult.success(true)
+        }
         if (commitResult.isSucceededOrDeferred) {
             watcher.notifyEntriesInserted(inserted)
         }
@@ -190,24 +211,15 @@ class KeepassRsNoteDao(
                     history = newHistory
                 )
 
-                db.swapDatabase { db ->
-                    db.toBuilder()
-                        .clearAttachments()
-                        .addAllAttachments(newAttachments)
-                        .setRootGroup(
-                            db.rootGroup
-                                .removeEntry(noteUid)
-                                .updateGroup(newNote.groupUid) { group ->
-                                    group.toBuilder()
-                                        .addEntries(newEntry)
-                                        .build()
-                                }
-                        )
-                        .build()
-                }
+                db.mutate(
+                    attachmentMutations(
+                        oldAttachments = db.getRawDatabase().attachmentsList,
+                        newAttachments = newAttachments
+                    ) + putEntryMutation(newNote.groupUid, newEntry)
+                ).bind()
 
                 if (doCommit) {
-                    db.commit()
+                    db.commitScheduler.requestCommit()
                         .map { noteUid }
                         .bind()
                 } else {
@@ -248,14 +260,10 @@ class KeepassRsNoteDao(
                         targetGroupUid = recycleBinUid
                     ).bind()
                 } else {
-                    db.swapDatabase { db ->
-                        db.toBuilder()
-                            .setRootGroup(db.rootGroup.removeEntry(noteUid))
-                            .build()
-                    }
+                    db.mutate(listOf(removeEntryMutation(noteUid))).bind()
                 }
 
-                db.commit().bind()
+                db.commitScheduler.requestCommit().bind()
             }
         }.toOperationResult()
         if (result.isSucceededOrDeferred) {
@@ -288,7 +296,8 @@ class KeepassRsNoteDao(
 
                 entry.historyList.convertToNotes(
                     groupUid = groupUid,
-                    allAttachments = db.getRawDatabase().getAllAttachmentsMap()
+                    allAttachments = db.getRawDatabase().getAllAttachmentsMap(),
+                    attachmentHashes = db.attachmentHashes
                 ).sortedBy { note -> note.modified }
             }.toOperationResult()
         }
@@ -308,19 +317,7 @@ class KeepassRsNoteDao(
                 .addAllHistory(newHistory)
                 .build()
 
-            db.swapDatabase { db ->
-                db.toBuilder()
-                    .setRootGroup(
-                        db.rootGroup
-                            .removeEntry(noteUid)
-                            .updateGroup(targetGroupUid) { group ->
-                                group.toBuilder()
-                                    .addEntries(newEntry)
-                                    .build()
-                            }
-                    )
-                    .build()
-            }
+            db.mutate(listOf(putEntryMutation(targetGroupUid, newEntry))).bind()
         }
 
     private fun isEntryInsideGroupTree(
@@ -328,9 +325,17 @@ class KeepassRsNoteDao(
         groupTreeRootUid: UUID
     ): Either<OperationError, Boolean> =
         either {
-            val treeRootGroup = db.getRawGroupByUid(groupTreeRootUid).bind()
-
-            treeRootGroup.getEntry { _, entry -> entry.uuid.toUuidOrNull() == entryUid } != null
+            val groupUid = db.getRawEntryWithGroupByUid(entryUid)
+                .bind()
+                .first
+                .uuid
+                .toUuid()
+                .bind()
+
+            groupUid == groupTreeRootUid || db.isGroupInsideGroupTree(
+                groupUid = groupUid,
+                groupTreeRootUid = groupTreeRootUid
+            )
         }
 
     private fun ProtoGroup.flattenEntries(): List<Pair<UUID, ProtoEntry>> {
@@ -443,7 +448,7 @@ class KeepassRsNoteDao(
 
             Timber.d("Removing ${toRemove.size} attachments:")
             for (attachment in toRemove) {
-                val hash = ShaUtils.sha256(attachment.data.toByteArray()).format()
+                val hash = db.attachmentHashes.getHash(attachment).format()
                 Timber.d("    - id=${attachment.id}, hash=$hash")
             }
         }
@@ -458,7 +463,7 @@ class KeepassRsNoteDao(
     ): Pair<List<ProtoAttachment>, Map<Hash, Int>> {
         val attachmentHashToIdMap = db.getRawDatabase()
             .attachmentsList
-            .associate { attachment -> attachment.toHash() to attachment.id }
+            .associate { attachment -> db.attachmentHashes.getHash(attachment) to attachment.id }
             .toMutableMap()
 
         if (toInsert.isEmpty() && toRemove.isEmpty()) {
@@ -537,11 +542,4 @@ class KeepassRsNoteDao(
     private fun ProtoEntry.getAllAttachments(): List<EntryAttachment> {
         return attachmentsList + historyList.flatMap { entry -> entry.attachmentsList }
     }
-
-    private fun ProtoAttachment.toHash(): Hash {
-        return Hash(
-            data = ShaUtils.sha256(data.toByteArray()).data,
-            type = HashType.SHA_256
-        )
-    }
-}
\ No newline at end of file
+}
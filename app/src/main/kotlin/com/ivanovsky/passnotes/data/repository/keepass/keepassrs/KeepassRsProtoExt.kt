@@ -10,7 +10,9 @@ import com.ivanovsky.passnotes.data.entity.OperationError
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_FAILED_TO_PARSE_UUID
 import com.ivanovsky.passnotes.data.entity.OperationError.newGenericIOError
 import com.ivanovsky.passnotes.data.entity.Property
+import com.ivanovsky.passnotes.data.repository.keepass.SUMMARY_PROPERTY_TYPES
 import com.ivanovsky.passnotes.data.repository.keepass.determinePropertyType
+import com.ivanovsky.passnotes.data.repository.keepass.isSummaryProperty
 import com.ivanovsky.passnotes.data.repository.keepass.kotpass.model.InheritableOptions
 import com.ivanovsky.passnotes.domain.entity.PropertyFilter
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Attachment as RawAttachment
@@ -21,7 +23,6 @@ import com.ivanovsky.passnotes.keepassrs.proto.v1.Group as RawGroup
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Times as RawTimes
 import com.ivanovsky.passnotes.keepassrs.proto.v1.group
 import com.ivanovsky.passnotes.util.Base64Utils
-import com.ivanovsky.passnotes.util.ShaUtils
 import com.ivanovsky.passnotes.util.StringUtils.EMPTY
 import java.nio.ByteBuffer
 import java.util.Date
@@ -156,21 +157,32 @@ fun RawGroup.convertToGroup(
 
 fun List<RawEntry>.convertToNotes(
     groupUid: UUID,
-    allAttachments: Map<Int, RawAttachment>
+    allAttachments: Map<Int, RawAttachment>,
+    attachmentHashes: KeepassRsAttachmentHashes,
+    isSummary: Boolean = false
 ): List<Note> {
     return this.map { entry ->
         entry.convertToNote(
             groupUid = groupUid,
-            allAttachments = allAttachments
+            allAttachments = allAttachments,
+            attachmentHashes = attachmentHashes,
+            isSummary = isSummary
         )
     }
 }
 
+/**
+ * @param isSummary if true, only properties from [SUMMARY_PROPERTY_TYPES] are converted
+ * and default properties are not added
+ */
 fun RawEntry.convertToNote(
     groupUid: UUID,
-    allAttachments: Map<Int, RawAttachment>
+    allAttachments: Map<Int, RawAttachment>,
+    attachmentHashes: KeepassRsAttachmentHashes,
+    isSummary: Boolean = false
 ): Note {
     val properties = fieldsList
+        .filter { field -> !isSummary || isSummaryProperty(field.name.orEmpty()) }
         .map { field ->
             val type = determinePropertyType(field.name.orEmpty(), field.value.orEmpty())
 
@@ -183,15 +195,18 @@ fun RawEntry.convertToNote(
         }
         .toMutableList()
 
-    val propertyTypes = properties.map { property -> property.type }
-    for (property in Property.DEFAULT_PROPERTIES) {
-        if (property.type !in propertyTypes) {
-            properties.add(property)
+    if (!isSummary) {
+        val propertyTypes = properties.map { property -> property.type }
+        for (property in Property.DEFAULT_PROPERTIES) {
+            if (property.type !in propertyTypes) {
+                properties.add(property)
+            }
         }
     }
 
     val entryAttachments = attachmentsList.toAttachments(
-        allAttachments = allAttachments
+        allAttachments = allAttachments,
+        attachmentHashes = attachmentHashes
     )
 
     val title = PropertyFilter.filterTitle(properties)?.value ?: EMPTY
@@ -210,13 +225,13 @@ fun RawEntry.convertToNote(
 }
 
 fun List<EntryAttachment>.toAttachments(
-    allAttachments: Map<Int, RawAttachment>
+    allAttachments: Map<Int, RawAttachment>,
+    attachmentHashes: KeepassRsAttachmentHashes
 ): List<Attachment> {
     return this.mapNotNull { entryAttachment ->
         val attachment = allAttachments[entryAttachment.attachmentId] ?: return@mapNotNull null
 
-        val data = attachment.data.toByteArray()
-        val hash = ShaUtils.sha256(data)
+        val hash = attachmentHashes.getHash(attachment)
 
         val attachmentId = entryAttachment.attachmentId
         val hashBase64 = Base64Utils.toBase64String(hash.data)
@@ -226,7 +241,7 @@ fun List<EntryAttachment>.toAttachments(
             uid = uid,
             name = entryAttachment.name,
             hash = hash,
-            data = data
+            content = ByteStringAttachmentContent(attachment.data)
         )
     }
 }
@@ -1,81 +1,583 @@
 package com.ivanovsky.passnotes.data.repository.keepass.keepassrs
 
+import arrow.core.Either
+import arrow.core.raise.either
+import com.google.protobuf.ByteString
+import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.entity.OperationError
+import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_INVALID_DATABASE_ENTRY
+import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_MESSAGE_FAILED_TO_FIND_ENTITY_BY_UID
+import com.ivanovsky.passnotes.data.entity.OperationError.newDbError
+import com.ivanovsky.passnotes.domain.entity.exception.Stacktrace
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Attachment as ProtoAttachment
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Database as ProtoDatabase
+import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseMeta as ProtoMeta
+import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseMutation
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Entry as ProtoEntry
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Group as ProtoGroup
+import com.ivanovsky.passnotes.keepassrs.proto.v1.PutEntry
+import com.ivanovsky.passnotes.keepassrs.proto.v1.PutGroup
+import com.ivanovsky.passnotes.keepassrs.proto.v1.RemoveAttachment
+import com.ivanovsky.passnotes.keepassrs.proto.v1.RemoveEntry
+import com.ivanovsky.passnotes.keepassrs.proto.v1.RemoveGroup
 import java.util.UUID
+import kotlin.reflect.KClass
 
-// TODO: all functions should return Either
+// Mutations are applied to the JVM copy of the database in the same way as keepass-rs
+// applies them to the native copy (see keepass-rs/src/handle.rs).
+// Only groups on the path from the root to the changed node are rebuilt.
 
-fun ProtoGroup.replaceGroup(targetUid: UUID, replacement: ProtoGroup): ProtoGroup {
-    if (uuid.toUuidOrNull() == targetUid) {
-        return replacement
-    }
+fun putEntryMutation(groupUid: UUID, entry: ProtoEntry): DatabaseMutation {
+    return DatabaseMutation.newBuilder()
+        .setPutEntry(
+            PutEntry.newBuilder()
+                .setGroupUuid(groupUid.toByteString())
+                .setEntry(entry)
+        )
+        .build()
+}
 
-    return toBuilder()
-        .clearGroups()
-        .addAllGroups(groupsList.map { group -> group.replaceGroup(targetUid, replacement) })
+fun removeEntryMutation(entryUid: UUID): DatabaseMutation {
+    return DatabaseMutation.newBuilder()
+        .setRemoveEntry(RemoveEntry.newBuilder().setUuid(entryUid.toByteString()))
         .build()
 }
 
-fun ProtoGroup.updateGroup(targetUid: UUID, transform: (ProtoGroup) -> ProtoGroup): ProtoGroup {
-    if (uuid.toUuidOrNull() == targetUid) {
-        return transform(this)
-    }
+/**
+ * Children of [group] are ignored if group already exists in the database.
+ */
+fun putGroupMutation(parentUid: UUID?, group: ProtoGroup): DatabaseMutation {
+    return DatabaseMutation.newBuilder()
+        .setPutGroup(
+            PutGroup.newBuilder()
+                .setParentUuid(parentUid?.toByteString() ?: ByteString.EMPTY)
+                .setGroup(group)
+        )
+        .build()
+}
 
-    return toBuilder()
-        .clearGroups()
-        .addAllGroups(groupsList.map { group -> group.updateGroup(targetUid, transform) })
+fun removeGroupMutation(groupUid: UUID): DatabaseMutation {
+    return DatabaseMutation.newBuilder()
+        .setRemoveGroup(RemoveGroup.newBuilder().setUuid(groupUid.toByteString()))
         .build()
 }
 
-fun ProtoGroup.removeGroup(targetUid: UUID): ProtoGroup {
-    return toBuilder()
-        .clearGroups()
-        .addAllGroups(
-            groupsList
-                .filterNot { group -> group.uuid.toUuidOrNull() == targetUid }
-                .map { group -> group.removeGroup(targetUid) }
-        )
+fun setMetaMutation(meta: ProtoMeta): DatabaseMutation {
+    return DatabaseMutation.newBuilder()
+        .setSetMeta(meta)
         .build()
 }
 
-fun ProtoGroup.moveGroup(
-    targetUid: UUID,
-    newParentUid: UUID
+fun attachmentMutations(
+    oldAttachments: List<ProtoAttachment>,
+    newAttachments: List<ProtoAttachment>
+): List<DatabaseMutation> {
+    val oldAttachmentsMap = oldAttachments.associateBy { attachment -> attachment.id }
+    val newIds = newAttachments.map { attachment -> attachment.id }.toSet()
+
+    val result = mutableListOf<DatabaseMutation>()
+
+    for (attachment in oldAttachments) {
+        if (attachment.id !in newIds) {
+            result.add(
+                DatabaseMutation.newBuilder()
+                    .setRemoveAttachment(RemoveAttachment.newBuilder().setId(attachment.id))
+                    .build()
+            )
+        }
+    }
+
+    for (attachment in newAttachments) {
+        val oldAttachment = oldAttachmentsMap[attachment.id]
+        if (oldAttachment !== attachment && oldAttachment != attachment) {
+            result.add(
+                DatabaseMutation.newBuilder()
+                    .setPutAttachment(attachment)
+                    .build()
+            )
+        }
+    }
+
+    return result
+}
+
+/**
+ * Checks that every mutation of the batch refers to existing nodes, taking into account
+ * changes made by the previous mutations of the batch. The same rules are checked by
+ * keepass-rs before the batch is applied to the native copy, so a batch that fails
+ * the check is not applied to any of the copies.
+ */
+fun KeepassRsIndex.validateMutations(
+    mutations: List<DatabaseMutation>
+): Either<OperationError, Unit> =
+    either {
+        val batchIndex = BatchIndex(this@validateMutations)
+
+        for (mutation in mutations) {
+            when (mutation.valueCase) {
+                DatabaseMutation.ValueCase.PUT_ENTRY -> {
+                    val put = mutation.putEntry
+                    val entryUid = put.entry.uuid.toUuidOrNull()
+                        ?: raise(invalidMutationError(mutation))
+                    val groupUid = put.groupUuid.toUuidOrNull()
+                        ?: raise(invalidMutationError(mutation))
+
+                    if (!batchIndex.isGroupExist(groupUid)) {
+                        raise(entityNotFoundError(groupUid, Group::class))
+                    }
+
+                    batchIndex.putEntry(entryUid, groupUid)
+                }
+
+                DatabaseMutation.ValueCase.REMOVE_ENTRY -> {
+                    val entryUid = mutation.removeEntry.uuid.toUuidOrNull()
+                        ?: raise(invalidMutationError(mutation))
+
+                    if (batchIndex.getEntryGroupUid(entryUid) == null) {
+                        raise(entityNotFoundError(entryUid, Note::class))
+                    }
+
+                    batchIndex.removeEntry(entryUid)
+                }
+
+                DatabaseMutation.ValueCase.PUT_GROUP -> {
+                    val put = mutation.putGroup
+                    val groupUid = put.group.uuid.toUuidOrNull()
+                        ?: raise(invalidMutationError(mutation))
+
+                    if (groupUid != rootUid) {
+                        val parentUid = put.parentUuid.toUuidOrNull()
+                            ?: raise(invalidMutationError(mutation))
+
+                        if (!batchIndex.isGroupExist(parentUid)) {
+                            raise(entityNotFoundError(parentUid, Group::class))
+                        }
+
+                        batchIndex.putGroup(put.group, groupUid, parentUid).bind()
+                    }
+                }
+
+                DatabaseMutation.ValueCase.REMOVE_GROUP -> {
+                    val groupUid = mutation.removeGroup.uuid.toUuidOrNull()
+                        ?: raise(invalidMutationError(mutation))
+
+                    if (groupUid == rootUid || !batchIndex.isGroupExist(groupUid)) {
+                        raise(entityNotFoundError(groupUid, Group::class))
+                    }
+
+                    batchIndex.removeGroup(groupUid)
+                }
+
+                else -> {}
+            }
+        }
+    }
+
+/**
+ * Applies [mutation] that was checked by [validateMutations], [index] is updated in place.
+ * Missing nodes are reported in the same way as keepass-rs reports them.
+ */
+fun ProtoDatabase.applyMutation(
+    mutation: DatabaseMutation,
+    index: KeepassRsIndex
+): Either<OperationError, ProtoDatabase> {
+    return when (mutation.valueCase) {
+        DatabaseMutation.ValueCase.PUT_ENTRY -> putEntry(mutation.putEntry, index)
+        DatabaseMutation.ValueCase.REMOVE_ENTRY -> removeEntry(mutation.removeEntry, index)
+        DatabaseMutation.ValueCase.PUT_GROUP -> putGroup(mutation.putGroup, index)
+        DatabaseMutation.ValueCase.REMOVE_GROUP -> removeGroup(mutation.removeGroup, index)
+        DatabaseMutation.ValueCase.PUT_ATTACHMENT -> Either.Right(
+            putAttachment(mutation.putAttachment)
+        )
+        DatabaseMutation.ValueCase.REMOVE_ATTACHMENT -> Either.Right(
+            removeAttachment(mutation.removeAttachment)
+        )
+        DatabaseMutation.ValueCase.SET_META -> Either.Right(
+            toBuilder().setMeta(mutation.setMeta).build()
+        )
+        else -> Either.Right(this)
+    }
+}
+
+fun ProtoGroup.getGroupAt(path: List<UUID>): ProtoGroup? {
+    var group = this
+
+    for (uid in path) {
+        val uuid = uid.toByteString()
+        group = group.groupsList.firstOrNull { child -> child.uuid == uuid } ?: return null
+    }
+
+    return group
+}
+
+fun ProtoGroup.updateGroupAt(
+    path: List<UUID>,
+    transform: (ProtoGroup) -> ProtoGroup
 ): ProtoGroup {
-    val targetGroup = getGroup { group -> group.uuid.toUuidOrNull() == targetUid }
-        ?: return this
+    if (path.isEmpty()) {
+        return transform.invoke(this)
+    }
+
+    val uuid = path.first().toByteString()
+    val index = groupsList.indexOfFirst { child -> child.uuid == uuid }
+    if (index == -1) {
+        return this
+    }
+
+    return toBuilder()
+        .setGroups(index, groupsList[index].updateGroupAt(path.drop(1), transform))
+        .build()
+}
+
+private fun ProtoDatabase.putEntry(
+    put: PutEntry,
+    index: KeepassRsIndex
+): Either<OperationError, ProtoDatabase> =
+    either {
+        val entryUid = put.entry.uuid.toUuidOrNull()
+            ?: raise(invalidEntryError(put.entry.uuid))
+        val groupUid = put.groupUuid.toUuidOrNull()
+            ?: raise(invalidEntryError(put.groupUuid))
+        val groupPath = index.getGroupPath(groupUid)
+            ?: raise(entityNotFoundError(groupUid, Group::class))
+
+        val entry = put.entry.toBuilder()
+            .setParentGroupUuid(put.groupUuid)
+            .build()
+
+        val oldGroupUid = index.getEntryGroupUid(entryUid)
+        val newRoot = if (oldGroupUid == groupUid) {
+            rootGroup.updateGroupAt(groupPath) { group ->
+                val entryIndex = group.entriesList.indexOfFirst { e -> e.uuid == entry.uuid }
+                if (entryIndex != -1) {
+                    group.toBuilder()
+                        .setEntries(entryIndex, entry)
+                        .build()
+                } else {
+                    group.toBuilder()
+                        .addEntries(entry)
+                        .build()
+                }
+            }
+        } else {
+            val root = if (oldGroupUid != null) {
+                val oldGroupPath = index.getGroupPath(oldGroupUid)
+                    ?: raise(entityNotFoundError(oldGroupUid, Group::class))
+
+                rootGroup.removeEntryAt(oldGroupPath, entry.uuid)
+            } else {
+                rootGroup
+            }
+
+            root.updateGroupAt(groupPath) { group ->
+                group.toBuilder()
+                    .addEntries(entry)
+                    .build()
+            }
+        }
+
+        index.onEntryPut(entryUid, groupUid)
+
+        toBuilder()
+            .setRootGroup(newRoot)
+            .build()
+    }
+
+private fun ProtoDatabase.removeEntry(
+    remove: RemoveEntry,
+    index: KeepassRsIndex
+): Either<OperationError, ProtoDatabase> =
+    either {
+        val entryUid = remove.uuid.toUuidOrNull()
+            ?: raise(invalidEntryError(remove.uuid))
+        val groupUid = index.getEntryGroupUid(entryUid)
+            ?: raise(entityNotFoundError(entryUid, Note::class))
+        val groupPath = index.getGroupPath(groupUid)
+            ?: raise(entityNotFoundError(groupUid, Group::class))
+
+        index.onEntryRemoved(entryUid)
+
+        toBuilder()
+            .setRootGroup(rootGroup.removeEntryAt(groupPath, remove.uuid))
+            .build()
+    }
+
+private fun ProtoDatabase.putGroup(
+    put: PutGroup,
+    index: KeepassRsIndex
+): Either<OperationError, ProtoDatabase> =
+    either {
+        val groupUid = put.group.uuid.toUuidOrNull()
+            ?: raise(invalidEntryError(put.group.uuid))
 
-    val movedGroup = targetGroup.toBuilder()
-        .setParentUuid(newParentUid.toByteString())
+        if (groupUid == index.rootUid) {
+            return@either toBuilder()
+                .setRootGroup(put.group.withChildrenOf(rootGroup))
+                .build()
+        }
+
+        val parentUid = put.parentUuid.toUuidOrNull()
+            ?: raise(invalidEntryError(put.parentUuid))
+        val parentPath = index.getGroupPath(parentUid)
+            ?: raise(entityNotFoundError(parentUid, Group::class))
+
+        val group = put.group.toBuilder()
+            .setParentUuid(put.parentUuid)
+            .build()
+
+        var root = rootGroup
+        val groupPath = index.getGroupPath(groupUid)
+        if (groupPath != null) {
+            val oldParentUid = index.getParentUid(groupUid)
+            if (oldParentUid != null && oldParentUid != parentUid) {
+                if (groupUid in parentPath) {
+                    raise(
+                        newDbError(
+                            OperationError.MESSAGE_FAILED_TO_MOVE_GROUP_INSIDE_ITS_OWN_TREE,
+                            Stacktrace()
+                        )
+                    )
+                }
+
+                val oldParentPath = index.getGroupPath(oldParentUid)
+                    ?: raise(entityNotFoundError(oldParentUid, Group::class))
+                val movedGroup = root.getGroupAt(groupPath)
+                    ?: raise(entityNotFoundError(groupUid, Group::class))
+
+                root = root.updateGroupAt(oldParentPath) { oldParent ->
+                    oldParent.withoutChildGroup(group.uuid)
+                }
+
+                index.onGroupMoved(groupUid, parentUid)
+
+                root = root.updateGroupAt(parentPath) { newParent ->
+                    newParent.toBuilder()
+                        .addGroups(movedGroup)
+                        .build()
+                }
+            }
+
+            root = root.updateGroupAt(index.getGroupPath(groupUid).orEmpty()) { oldGroup ->
+                group.withChildrenOf(oldGroup)
+            }
+        } else {
+            root = root.updateGroupAt(parentPath) { parent ->
+                parent.toBuilder()
+                    .addGroups(group)
+                    .build()
+            }
+
+            index.onGroupInserted(group, parentUid)
+        }
+
+        toBuilder()
+            .setRootGroup(root)
+            .build()
+    }
+
+private fun ProtoDatabase.removeGroup(
+    remove: RemoveGroup,
+    index: KeepassRsIndex
+): Either<OperationError, ProtoDatabase> =
+    either {
+        val groupUid = remove.uuid.toUuidOrNull()
+            ?: raise(invalidEntryError(remove.uuid))
+        val parentUid = index.getParentUid(groupUid)
+            ?: raise(entityNotFoundError(groupUid, Group::class))
+        val parentPath = index.getGroupPath(parentUid)
+            ?: raise(entityNotFoundError(parentUid, Group::class))
+        val group = index.getGroupPath(groupUid)
+            ?.let { path -> rootGroup.getGroupAt(path) }
+            ?: raise(entityNotFoundError(groupUid, Group::class))
+
+        index.onGroupRemoved(group)
+
+        toBuilder()
+            .setRootGroup(
+                rootGroup.updateGroupAt(parentPath) { parent ->
+                    parent.withoutChildGroup(remove.uuid)
+                }
+            )
+            .build()
+    }
+
+private fun ProtoDatabase.putAttachment(attachment: ProtoAttachment): ProtoDatabase {
+    val attachmentIndex = attachmentsList.indexOfFirst { a -> a.id == attachment.id }
+
+    return if (attachmentIndex != -1) {
+        toBuilder()
+            .setAttachments(attachmentIndex, attachment)
+            .build()
+    } else {
+        toBuilder()
+            .addAttachments(attachment)
+            .build()
+    }
+}
+
+private fun ProtoDatabase.removeAttachment(remove: RemoveAttachment): ProtoDatabase {
+    val attachmentIndex = attachmentsList.indexOfFirst { a -> a.id == remove.id }
+    if (attachmentIndex == -1) {
+        return this
+    }
+
+    return toBuilder()
+        .removeAttachments(attachmentIndex)
         .build()
+}
 
-    return removeGroup(targetUid)
-        .updateGroup(newParentUid) { group ->
+private fun ProtoGroup.removeEntryAt(path: List<UUID>, entryUuid: ByteString): ProtoGroup {
+    return updateGroupAt(path) { group ->
+        val entryIndex = group.entriesList.indexOfFirst { entry -> entry.uuid == entryUuid }
+        if (entryIndex != -1) {
             group.toBuilder()
-                .addGroups(movedGroup)
+                .removeEntries(entryIndex)
                 .build()
+        } else {
+            group
         }
+    }
 }
 
-fun ProtoGroup.updateEntry(targetUid: UUID, transform: (ProtoEntry) -> ProtoEntry): ProtoGroup {
+private fun ProtoGroup.withoutChildGroup(groupUuid: ByteString): ProtoGroup {
+    val groupIndex = groupsList.indexOfFirst { group -> group.uuid == groupUuid }
+    if (groupIndex == -1) {
+        return this
+    }
+
     return toBuilder()
-        .clearEntries()
-        .addAllEntries(
-            entriesList.map { entry ->
-                if (entry.uuid.toUuidOrNull() == targetUid) transform(entry) else entry
-            }
-        )
-        .clearGroups()
-        .addAllGroups(groupsList.map { group -> group.updateEntry(targetUid, transform) })
+        .removeGroups(groupIndex)
         .build()
 }
 
-fun ProtoGroup.removeEntry(targetUid: UUID): ProtoGroup {
+private fun ProtoGroup.withChildrenOf(source: ProtoGroup): ProtoGroup {
     return toBuilder()
-        .clearEntries()
-        .addAllEntries(entriesList.filterNot { entry -> entry.uuid.toUuidOrNull() == targetUid })
         .clearGroups()
-        .addAllGroups(groupsList.map { group -> group.removeEntry(targetUid) })
+        .addAllGroups(source.groupsList)
+        .clearEntries()
+        .addAllEntries(source.entriesList)
         .build()
-}
\ No newline at end of file
+}
+
+private fun entityNotFoundError(uid: UUID, type: KClass<*>): OperationError {
+    return newDbError(
+        String.format(GENERIC_MESSAGE_FAILED_TO_FIND_ENTITY_BY_UID, type.java.simpleName, uid),
+        Stacktrace()
+    )
+}
+
+private fun invalidEntryError(uuid: ByteString): OperationError {
+    return newDbError(
+        String.format(GENERIC_INVALID_DATABASE_ENTRY, uuid.toByteArray().contentToString()),
+        Stacktrace()
+    )
+}
+
+private fun invalidMutationError(mutation: DatabaseMutation): OperationError {
+    return newDbError(
+        String.format(GENERIC_INVALID_DATABASE_ENTRY, mutation.valueCase),
+        Stacktrace()
+    )
+}
+
+/**
+ * Changes of the batch on top of [KeepassRsIndex], the index itself is not modified.
+ * Node exists if all groups on the path from it to the root exist.
+ */
+private class BatchIndex(
+    private val index: KeepassRsIndex
+) {
+
+    // Null value means that node is removed by the batch
+    private val groupUidToParentUidMap = HashMap<UUID, UUID?>()
+    private val entryUidToGroupUidMap = HashMap<UUID, UUID?>()
+
+    fun isGroupExist(groupUid: UUID): Boolean {
+        var currentUid = groupUid
+        while (currentUid != index.rootUid) {
+            currentUid = getParentUid(currentUid) ?: return false
+        }
+
+        return true
+    }
+
+    fun getEntryGroupUid(entryUid: UUID): UUID? {
+        val groupUid = if (entryUid in entryUidToGroupUidMap) {
+            entryUidToGroupUidMap[entryUid]
+        } else {
+            index.getEntryGroupUid(entryUid)
+        }
+
+        return groupUid?.takeIf { isGroupExist(it) }
+    }
+
+    fun putEntry(entryUid: UUID, groupUid: UUID) {
+        entryUidToGroupUidMap[entryUid] = groupUid
+    }
+
+    fun removeEntry(entryUid: UUID) {
+        entryUidToGroupUidMap[entryUid] = null
+    }
+
+    fun putGroup(
+        group: ProtoGroup,
+        groupUid: UUID,
+        parentUid: UUID
+    ): Either<OperationError, Unit> =
+        either {
+            if (isGroupExist(groupUid)) {
+                if (isInsideGroupTree(parentUid, groupUid)) {
+                    raise(
+                        newDbError(
+                            OperationError.MESSAGE_FAILED_TO_MOVE_GROUP_INSIDE_ITS_OWN_TREE,
+                            Stacktrace()
+                        )
+                    )
+                }
+
+                groupUidToParentUidMap[groupUid] = parentUid
+                return@either
+            }
+
+            // Removed nodes can't be inserted back in the same batch, their descendants
+            // that are still referenced by the index would be resurrected
+            if (index.getGroupPath(groupUid) != null) {
+                raise(entityNotFoundError(groupUid, Group::class))
+            }
+
+            groupUidToParentUidMap[groupUid] = parentUid
+            group.visitTree(
+                onGroup = { childUid, childParentUid ->
+                    groupUidToParentUidMap[childUid] = childParentUid
+                },
+                onEntry = { entryUid, entryGroupUid ->
+                    entryUidToGroupUidMap[entryUid] = entryGroupUid
+                }
+            )
+        }
+
+    fun removeGroup(groupUid: UUID) {
+        groupUidToParentUidMap[groupUid] = null
+    }
+
+    private fun getParentUid(groupUid: UUID): UUID? {
+        return if (groupUid in groupUidToParentUidMap) {
+            groupUidToParentUidMap[groupUid]
+        } else {
+            index.getParentUid(groupUid)
+        }
+    }
+
+    private fun isInsideGroupTree(groupUid: UUID, groupTreeRootUid: UUID): Boolean {
+        var currentUid: UUID? = groupUid
+        while (currentUid != null) {
+            if (currentUid == groupTreeRootUid) {
+                return true
+            }
+            currentUid = getParentUid(currentUid)
+        }
+
+        return false
+    }
+}
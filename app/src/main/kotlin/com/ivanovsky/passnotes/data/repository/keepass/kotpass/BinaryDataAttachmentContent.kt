@@ -0,0 +1,46 @@
+package com.ivanovsky.passnotes.data.repository.keepass.kotpass
+
+import app.keemobile.kotpass.models.BinaryData
+import com.ivanovsky.passnotes.data.entity.AttachmentContent
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+
+/**
+ * Refers to [binary] stored in the database, compressed data is inflated while it's read.
+ */
+class BinaryDataAttachmentContent(
+    val binary: BinaryData
+) : AttachmentContent {
+
+    override val size: Long by lazy {
+        when (binary) {
+            is BinaryData.Compressed -> openStream().use { input -> input.skipAll() }
+            is BinaryData.Uncompressed -> binary.rawContent.size.toLong()
+        }
+    }
+
+    override fun openStream(): InputStream {
+        return when (binary) {
+            is BinaryData.Compressed -> GZIPInputStream(ByteArrayInputStream(binary.rawContent))
+            is BinaryData.Uncompressed -> ByteArrayInputStream(binary.rawContent)
+        }
+    }
+
+    private fun InputStream.skipAll(): Long {
+        val buffer = ByteArray(BUFFER_SIZE)
+        var total = 0L
+
+        var read = read(buffer)
+        while (read != -1) {
+            total += read
+            read = read(buffer)
+        }
+
+        return total
+    }
+
+    companion object {
+        private const val BUFFER_SIZE = 8 * 1024
+    }
+}
@@ -23,6 +23,7 @@ import com.ivanovsky.passnotes.data.entity.OperationError.newAuthError
 import com.ivanovsky.passnotes.data.entity.OperationError.newDbError
 import com.ivanovsky.passnotes.data.entity.OperationError.newGenericIOError
 import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.repository.encdb.DatabaseCommitScheduler
 import com.ivanovsky.passnotes.data.repository.encdb.DatabaseWatcher
 import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
 import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabaseConfig
@@ -63,11 +64,17 @@ class KotpassDatabase(
     private val keyRef = AtomicReference(key)
     private val fileRef = AtomicReference(file)
     private val inheritableOptionsMap = AtomicReference(createInheritableOptionsMap())
-    private val groupUidToParentMap = AtomicReference(createGroupUidToParentMap())
+    private val uidIndex = AtomicReference(createUidIndex())
     override val groupDao = KotpassGroupDao(this)
     override val noteDao = KotpassNoteDao(this)
     override val templateDao = TemplateDaoImpl(groupDao, noteDao)
     override val watcher = DatabaseWatcher<EncryptedDatabase>()
+    override val commitScheduler = DatabaseCommitScheduler(
+        commitAction = ::commit,
+        onCommitFailed = { error ->
+            watcher.notifyOnCommit(this, OperationResult.error<Boolean>(error))
+        }
+    )
 
     override fun getKey(): EncryptedDatabaseKey = keyRef.get()
 
@@ -157,7 +164,8 @@ class KotpassDatabase(
         return result
     }
 
-    fun commitLegacy(): OperationResult<Boolean> = commit().toOperationResult()
+    fun requestCommitLegacy(): OperationResult<Boolean> =
+        commitScheduler.requestCommit().toOperationResult()
 
     override fun commitTo(
         output: FileDescriptor,
@@ -191,11 +199,15 @@ class KotpassDatabase(
         return commitResult
     }
 
+    override fun close() {
+        commitScheduler.close()
+    }
+
     fun swapDatabase(db: KeePassDatabase) {
         lock.withLock {
             database.set(db)
             inheritableOptionsMap.set(createInheritableOptionsMap())
-            groupUidToParentMap.set(createGroupUidToParentMap())
+            uidIndex.set(createUidIndex())
         }
     }
 
@@ -217,28 +229,21 @@ class KotpassDatabase(
     }
 
     fun getRawParentGroup(childUid: UUID): OperationResult<RawGroup> {
-        val parentGroup = groupUidToParentMap.get()[childUid]
+        val parentGroup = uidIndex.get().groupUidToParentMap[childUid]
             ?: return OperationResult.error(failedToFindEntityByUid(childUid, Group::class))
 
         return OperationResult.success(parentGroup)
     }
 
     fun getRawGroupByUid(uid: UUID): OperationResult<RawGroup> {
-        val rootGroup = database.get().content.group
-        if (rootGroup.uuid == uid) {
-            return OperationResult.success(rootGroup)
-        }
-
-        val (_, parentGroup) = rootGroup.findChildGroup { it.uuid == uid }
+        val group = uidIndex.get().groupUidToGroupMap[uid]
             ?: return OperationResult.error(failedToFindEntityByUid(uid, Group::class))
 
-        return OperationResult.success(parentGroup)
+        return OperationResult.success(group)
     }
 
     fun getRawEntryAndGroupByUid(noteUid: UUID): OperationResult<Pair<RawGroup, Entry>> {
-        val result = database.get().content.group.findChildEntry { entry ->
-            entry.uuid == noteUid
-        }
+        val result = uidIndex.get().entryUidToEntryMap[noteUid]
             ?: return OperationResult.error(
                 newDbError(
                     String.format(
@@ -349,24 +354,38 @@ class KotpassDatabase(
         return result
     }
 
-    private fun createGroupUidToParentMap(): Map<UUID, RawGroup> {
-        val result = hashMapOf<UUID, RawGroup>()
+    private fun createUidIndex(): UidIndex {
+        val groupUidToParentMap = hashMapOf<UUID, RawGroup>()
+        val groupUidToGroupMap = hashMapOf<UUID, RawGroup>()
+        val entryUidToEntryMap = hashMapOf<UUID, Pair<RawGroup, Entry>>()
+
+        val root = getRawRootGroup()
+        groupUidToGroupMap[root.uuid] = root
 
         val nextGroups = LinkedList<RawGroup>()
             .apply {
-                add(getRawRootGroup())
+                add(root)
             }
 
         while (nextGroups.isNotEmpty()) {
             val group = nextGroups.removeFirst()
 
+            for (entry in group.entries) {
+                entryUidToEntryMap[entry.uuid] = Pair(group, entry)
+            }
+
             for (child in group.groups) {
-                result[child.uuid] = group
+                groupUidToParentMap[child.uuid] = group
+                groupUidToGroupMap[child.uuid] = child
                 nextGroups.add(child)
             }
         }
 
-        return result
+        return UidIndex(
+            groupUidToParentMap = groupUidToParentMap,
+            groupUidToGroupMap = groupUidToGroupMap,
+            entryUidToEntryMap = entryUidToEntryMap
+        )
     }
 
     private fun setupRecycleBin(): OperationResult<Unit> {
@@ -413,7 +432,7 @@ class KotpassDatabase(
         )
 
         return if (doCommit) {
-            commitLegacy().takeStatusWith(Unit)
+            requestCommitLegacy().takeStatusWith(Unit)
         } else {
             OperationResult.success(Unit)
         }
@@ -428,12 +447,17 @@ class KotpassDatabase(
             return getTreeRootResult.mapError()
         }
 
-        val rawTreeRoot = getTreeRootResult.obj
-        val tree = getRawChildEntries(rawTreeRoot)
+        val index = uidIndex.get()
+        var group = index.entryUidToEntryMap[entryUid]?.first
 
-        val isEntryInsideTree = tree.any { entry -> entry.uuid == entryUid }
+        while (group != null) {
+            if (group.uuid == groupTreeRootUid) {
+                return OperationResult.success(true)
+            }
+            group = index.groupUidToParentMap[group.uuid]
+        }
 
-        return OperationResult.success(isEntryInsideTree)
+        return OperationResult.success(false)
     }
 
     fun getRecycleBinGroup(): OperationResult<RawGroup?> {
@@ -463,6 +487,16 @@ class KotpassDatabase(
         Stacktrace()
     )
 
+    /**
+     * Lookup tables from uid to the nodes of the current [KeePassDatabase] tree,
+     * rebuilt in [swapDatabase] in a single tree traversal.
+     */
+    private class UidIndex(
+        val groupUidToParentMap: Map<UUID, RawGroup>,
+        val groupUidToGroupMap: Map<UUID, RawGroup>,
+        val entryUidToEntryMap: Map<UUID, Pair<RawGroup, Entry>>
+    )
+
     companion object {
 
         const val DEFAULT_ROOT_INHERITABLE_VALUE = true
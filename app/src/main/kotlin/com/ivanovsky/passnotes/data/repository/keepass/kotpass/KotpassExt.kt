@@ -17,7 +17,9 @@ import com.ivanovsky.passnotes.data.entity.HashType
 import com.ivanovsky.passnotes.data.entity.InheritableBooleanOption
 import com.ivanovsky.passnotes.data.entity.Note
 import com.ivanovsky.passnotes.data.entity.Property
+import com.ivanovsky.passnotes.data.repository.keepass.SUMMARY_PROPERTY_TYPES
 import com.ivanovsky.passnotes.data.repository.keepass.determinePropertyType
+import com.ivanovsky.passnotes.data.repository.keepass.isSummaryProperty
 import com.ivanovsky.passnotes.data.repository.keepass.kotpass.model.InheritableOptions
 import com.ivanovsky.passnotes.domain.entity.PropertyFilter
 import com.ivanovsky.passnotes.extensions.toByteString
@@ -82,23 +84,43 @@ fun RawGroup.convertToGroup(
     )
 }
 
+/**
+ * @param isSummary if true, only properties from [SUMMARY_PROPERTY_TYPES] are converted
+ */
 fun RawEntry.convertToNote(
     groupUid: UUID,
-    allBinaries: Map<ByteString, BinaryData>
+    allBinaries: Map<ByteString, BinaryData>,
+    isSummary: Boolean = false
 ): Note {
     val properties = mutableListOf<Property>()
 
     for (field in fields.entries) {
-        val type = determinePropertyType(field.key, field.value.content)
+        if (isSummary && !isSummaryProperty(field.key)) {
+            continue
+        }
+
+        val value = field.value
+        val type = determinePropertyType(field.key) { value.content }
+        val name = type?.propertyName ?: field.key
 
-        properties.add(
+        // Protected values stay encrypted until they are accessed
+        val property = if (value is EntryValue.Encrypted) {
+            Property.createLazy(
+                type = type,
+                name = name,
+                isProtected = true,
+                valueProvider = { value.content }
+            )
+        } else {
             Property(
                 type = type,
-                name = type?.propertyName ?: field.key,
-                value = field.value.content,
-                isProtected = field.value is EntryValue.Encrypted
+                name = name,
+                value = value.content,
+                isProtected = false
             )
-        )
+        }
+
+        properties.add(property)
     }
 
     val attachments = binaries.mapNotNull { binary ->
@@ -129,7 +151,7 @@ fun BinaryReference.toAttachment(
         uid = h.format(),
         name = name,
         hash = h,
-        data = data.getContent()
+        content = BinaryDataAttachmentContent(data)
     )
 }
 
@@ -163,9 +185,10 @@ private fun RawEntry.getExpirationTime(): Long? {
 
 fun List<RawEntry>.convertToNotes(
     groupUid: UUID,
-    allBinaries: Map<ByteString, BinaryData>
+    allBinaries: Map<ByteString, BinaryData>,
+    isSummary: Boolean = false
 ): List<Note> {
-    return map { it.convertToNote(groupUid, allBinaries) }
+    return map { it.convertToNote(groupUid, allBinaries, isSummary) }
 }
 
 fun Property.convertToEntryValue(): EntryValue {
@@ -229,8 +252,13 @@ fun Attachment.convertToBinaryReference(): BinaryReference {
 }
 
 fun Attachment.convertToBinaryData(): BinaryData {
+    val content = content
+    if (content is BinaryDataAttachmentContent) {
+        return content.binary
+    }
+
     return BinaryData.Uncompressed(
         memoryProtection = false,
-        rawContent = data
+        rawContent = content.readBytes()
     )
 }
\ No newline at end of file
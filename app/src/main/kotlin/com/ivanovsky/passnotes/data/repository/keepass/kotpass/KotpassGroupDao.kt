@@ -156,7 +156,7 @@ class KotpassGroupDao(
             )
 
             if (doCommit) {
-                db.commitLegacy().mapWithObject(newGroup)
+                db.requestCommitLegacy().mapWithObject(newGroup)
             } else {
                 OperationResult.success(newGroup)
             }
@@ -216,7 +216,7 @@ class KotpassGroupDao(
                 }
             }
 
-            db.commitLegacy().mapWithObject(group)
+            db.requestCommitLegacy().mapWithObject(group)
         }
 
         if (result.isSucceededOrDeferred) {
@@ -297,7 +297,7 @@ class KotpassGroupDao(
 
                 db.swapDatabase(newDb)
 
-                return@withLock db.commitLegacy().mapWithObject(newGroup)
+                return@withLock db.requestCommitLegacy().mapWithObject(newGroup)
             }
 
             val isInsideItself = isGroupInsideGroupTree(entity.parentUid, entity.uid)
@@ -354,7 +354,7 @@ class KotpassGroupDao(
 
             db.swapDatabase(newDb)
 
-            db.commitLegacy().mapWithObject(newGroup)
+            db.requestCommitLegacy().mapWithObject(newGroup)
         }
 
         if (result.isSucceededOrDeferred) {
@@ -1,7 +1,6 @@
 package com.ivanovsky.passnotes.data.repository.keepass.kotpass
 
 import app.keemobile.kotpass.database.KeePassDatabase
-import app.keemobile.kotpass.database.getEntry
 import app.keemobile.kotpass.database.modifiers.binaries
 import app.keemobile.kotpass.database.modifiers.modifyBinaries
 import app.keemobile.kotpass.database.modifiers.modifyGroup
@@ -14,7 +13,6 @@ import com.ivanovsky.passnotes.data.entity.Attachment
 import com.ivanovsky.passnotes.data.entity.Hash
 import com.ivanovsky.passnotes.data.entity.HashType
 import com.ivanovsky.passnotes.data.entity.Note
-import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_MESSAGE_FAILED_TO_FIND_ENTITY_BY_UID
 import com.ivanovsky.passnotes.data.entity.OperationError.GENERIC_MESSAGE_NOT_FOUND
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_FAILED_TO_FIND_NOTE
 import com.ivanovsky.passnotes.data.entity.OperationError.MESSAGE_UID_IS_NULL
@@ -63,6 +61,17 @@ class KotpassNoteDao(
     }
 
     override fun getNotesByGroupUid(groupUid: UUID): OperationResult<List<Note>> {
+        return getNotesByGroupUid(groupUid, isSummary = false)
+    }
+
+    override fun getNoteSummariesByGroupUid(groupUid: UUID): OperationResult<List<Note>> {
+        return getNotesByGroupUid(groupUid, isSummary = true)
+    }
+
+    private fun getNotesByGroupUid(
+        groupUid: UUID,
+        isSummary: Boolean
+    ): OperationResult<List<Note>> {
         return db.lock.withLock {
             val getGroupResult = db.getRawGroupByUid(groupUid)
             if (getGroupResult.isFailed) {
@@ -73,32 +82,38 @@ class KotpassNoteDao(
             return@withLock OperationResult.success(
                 rawGroup.entries.convertToNotes(
                     groupUid = rawGroup.uuid,
-                    allBinaries = db.getRawDatabase().binaries
+                    allBinaries = db.getRawDatabase().binaries,
+                    isSummary = isSummary
                 )
             )
         }
     }
 
     override fun getNoteByUid(noteUid: UUID): OperationResult<Note> {
+        return getNoteByUid(noteUid, isSummary = false)
+    }
+
+    override fun getNoteSummaryByUid(noteUid: UUID): OperationResult<Note> {
+        return getNoteByUid(noteUid, isSummary = true)
+    }
+
+    private fun getNoteByUid(
+        noteUid: UUID,
+        isSummary: Boolean
+    ): OperationResult<Note> {
         return db.lock.withLock {
-            val result = db.getRawDatabase().getEntry { rawEntry -> rawEntry.uuid == noteUid }
-                ?: return@withLock OperationResult.error(
-                    newDbError(
-                        String.format(
-                            GENERIC_MESSAGE_FAILED_TO_FIND_ENTITY_BY_UID,
-                            Note::class.simpleName,
-                            noteUid
-                        ),
-                        Stacktrace()
-                    )
-                )
+            val getEntryAndGroupResult = db.getRawEntryAndGroupByUid(noteUid)
+            if (getEntryAndGroupResult.isFailed) {
+                return@withLock getEntryAndGroupResult.mapError()
+            }
 
-            val (rawGroup, rawEntry) = result
+            val (rawGroup, rawEntry) = getEntryAndGroupResult.getOrThrow()
 
             OperationResult.success(
                 rawEntry.convertToNote(
                     groupUid = rawGroup.uuid,
-                    allBinaries = db.getRawDatabase().binaries
+                    allBinaries = db.getRawDatabase().binaries,
+                    isSummary = isSummary
                 )
             )
         }
@@ -132,7 +147,7 @@ class KotpassNoteDao(
 
         return if (isSuccess) {
             val commitResult = if (doCommit) {
-                val commit = db.commitLegacy()
+                val commit = db.requestCommitLegacy()
                 if (commit.isFailed) {
                     return commit.mapError()
                 }
@@ -261,7 +276,7 @@ class KotpassNoteDao(
             db.swapDatabase(newDb)
 
             if (doCommit) {
-                db.commitLegacy().mapWithObject(noteUid)
+                db.requestCommitLegacy().mapWithObject(noteUid)
             } else {
                 OperationResult.success(noteUid)
             }
@@ -419,7 +434,7 @@ class KotpassNoteDao(
                 }
             }
 
-            db.commitLegacy().mapWithObject(note)
+            db.requestCommitLegacy().mapWithObject(note)
         }
 
         if (result.isSucceededOrDeferred) {
@@ -482,7 +497,7 @@ class KotpassNoteDao(
             db.swapDatabase(newDb)
 
             if (doCommit) {
-                db.commitLegacy().mapWithObject(newUid)
+                db.requestCommitLegacy().mapWithObject(newUid)
             } else {
                 OperationResult.success(newUid)
             }
@@ -0,0 +1,207 @@
+package com.ivanovsky.passnotes.domain
+
+import android.content.Context
+import android.net.ConnectivityManager
+import android.net.Network
+import androidx.annotation.VisibleForTesting
+import com.ivanovsky.passnotes.data.ObserverBus
+import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.repository.RemoteFileRepository
+import com.ivanovsky.passnotes.domain.usecases.SyncUseCases
+import com.ivanovsky.passnotes.extensions.toFileDescriptor
+import com.ivanovsky.passnotes.injection.GlobalInjector.inject
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.coroutines.coroutineContext
+import kotlin.random.Random
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.job
+import kotlinx.coroutines.launch
+import timber.log.Timber
+
+/**
+ * Retries upload of remote files that were modified while the server was unreachable.
+ * Retries are started shortly after network becomes available and are repeated with
+ * jittered exponential backoff while they fail due to network errors. Only one retry is
+ * pending per file and it uploads the latest local content, so several offline commits
+ * are uploaded at once.
+ */
+class UploadRetryScheduler(
+    private val context: Context,
+    private val remoteFileRepository: RemoteFileRepository,
+    private val observerBus: ObserverBus,
+    dispatchers: DispatcherProvider
+) : ObserverBus.RemoteFileUploadObserver {
+
+    // Injected lazily, scheduler is started with the app and shouldn't create sync
+    // dependencies until there is something to upload
+    private val syncUseCases: SyncUseCases by inject()
+    private val scope = CoroutineScope(SupervisorJob() + dispatchers.IO)
+    private val lock = Any()
+    private val retries = HashMap<FileKey, Retry>()
+    private val isStarted = AtomicBoolean(false)
+
+    private val networkCallback = object : ConnectivityManager.NetworkCallback() {
+        override fun onAvailable(network: Network) {
+            Timber.d("Network is available")
+            scheduleAllLocallyModified()
+        }
+    }
+
+    fun start() {
+        if (!isStarted.compareAndSet(false, true)) {
+            return
+        }
+
+        observerBus.register(this)
+
+        // Callback is invoked immediately if network is connected, so files modified
+        // before the app was restarted are also scheduled
+        context.getSystemService(ConnectivityManager::class.java)
+            ?.registerDefaultNetworkCallback(networkCallback)
+    }
+
+    override fun onRemoteFileUploadDeferred(fsAuthority: FSAuthority, uid: String) {
+        scope.launch {
+            val file = remoteFileRepository.findByUid(uid, fsAuthority) ?: return@launch
+
+            schedule(
+                key = FileKey(fsAuthority, uid),
+                delayInMillis = getBackoffDelay(file.retryCount),
+                isReplaceWaiting = false
+            )
+        }
+    }
+
+    private fun scheduleAllLocallyModified() {
+        scope.launch {
+            val files = remoteFileRepository.getLocallyModified()
+            Timber.d("Scheduling upload of locally modified files: count=%s", files.size)
+
+            for (file in files) {
+                // Backoff is reset, because the previous attempts failed without network
+                schedule(
+                    key = FileKey(file.fsAuthority, file.uid),
+                    delayInMillis = RECONNECT_DELAY_IN_MILLIS,
+                    isReplaceWaiting = true
+                )
+            }
+        }
+    }
+
+    private fun schedule(
+        key: FileKey,
+        delayInMillis: Long,
+        isReplaceWaiting: Boolean
+    ) {
+        synchronized(lock) {
+            val existing = retries[key]
+            if (existing != null) {
+                // Running upload will take the latest changes
+                if (existing.isUploading.get() || !isReplaceWaiting) {
+                    return
+                }
+
+                existing.job.cancel()
+            }
+
+            Timber.d("Scheduling upload: uid=%s, delay=%sms", key.uid, delayInMillis)
+
+            val isUploading = AtomicBoolean(false)
+            val job = scope.launch {
+                delay(delayInMillis)
+                isUploading.set(true)
+                retry(key)
+            }
+
+            retries[key] = Retry(job, isUploading)
+        }
+    }
+
+    private suspend fun retry(key: FileKey) {
+        val file = remoteFileRepository.findByUid(key.uid, key.fsAuthority)
+        if (file == null || !file.isLocallyModified) {
+            removeRetry(key)
+            return
+        }
+
+        Timber.d("Retrying upload: uid=%s, retryCount=%s", key.uid, file.retryCount)
+        val result = syncUseCases.processSync(file.toFileDescriptor())
+
+        removeRetry(key)
+
+        // File is read again, because it was updated by sync
+        val updatedFile = remoteFileRepository.findByUid(key.uid, key.fsAuthority) ?: return
+        if (result.isSucceeded) {
+            Timber.d("Upload retry succeeded: uid=%s", key.uid)
+            if (updatedFile.retryCount != 0) {
+                updatedFile.retryCount = 0
+                updatedFile.lastRetryTimestamp = null
+                remoteFileRepository.update(updatedFile)
+            }
+            return
+        }
+
+        if (!result.isFailedDueToNetwork) {
+            // Conflicts and other errors require user action
+            Timber.d("Upload retry failed: uid=%s, error=%s", key.uid, result.error)
+            return
+        }
+
+        updatedFile.retryCount += 1
+        updatedFile.lastRetryTimestamp = System.currentTimeMillis()
+        remoteFileRepository.update(updatedFile)
+
+        if (updatedFile.retryCount < MAX_RETRY_COUNT) {
+            schedule(
+                key = key,
+                delayInMillis = getBackoffDelay(updatedFile.retryCount),
+                isReplaceWaiting = false
+            )
+        } else {
+            Timber.d("Upload retries are exhausted until reconnection: uid=%s", key.uid)
+        }
+    }
+
+    private suspend fun removeRetry(key: FileKey) {
+        val job = coroutineContext.job
+        synchronized(lock) {
+            if (retries[key]?.job == job) {
+                retries.remove(key)
+            }
+        }
+    }
+
+    private data class FileKey(
+        val fsAuthority: FSAuthority,
+        val uid: String
+    )
+
+    private class Retry(
+        val job: Job,
+        val isUploading: AtomicBoolean
+    )
+
+    companion object {
+        private const val RECONNECT_DELAY_IN_MILLIS = 2_000L
+        private const val BASE_DELAY_IN_MILLIS = 5_000L
+        private const val MAX_DELAY_IN_MILLIS = 30 * 60 * 1000L
+        private const val MAX_BACKOFF_EXPONENT = 16
+        private const val MAX_RETRY_COUNT = 10
+
+        /**
+         * @return delay which grows exponentially with [retryCount], half of the delay is
+         * random, so retries of different files are spread over time
+         */
+        @VisibleForTesting
+        internal fun getBackoffDelay(retryCount: Int, random: Random = Random.Default): Long {
+            val exponent = retryCount.coerceIn(0, MAX_BACKOFF_EXPONENT)
+            val delay = minOf(BASE_DELAY_IN_MILLIS shl exponent, MAX_DELAY_IN_MILLIS)
+            val half = delay / 2
+
+            return half + random.nextLong(half + 1)
+        }
+    }
+}
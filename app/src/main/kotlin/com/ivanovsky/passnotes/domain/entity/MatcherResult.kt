@@ -3,5 +3,6 @@ package com.ivanovsky.passnotes.domain.entity
 data class MatcherResult<T>(
     val entry: T,
     val title: String,
-    val highlights: List<Int>
+    val highlights: List<Int>,
+    val score: Int
 )
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.ivanovsky.passnotes.domain.entity
+
+import com.ivanovsky.passnotes.data.entity.EncryptedDatabaseEntry
+
+/**
+ * Search result that can be merged with results of other parts of the entry list,
+ * entries matched by title go first, then entries with higher score.
+ */
+data class ScoredEntry(
+    val entry: EncryptedDatabaseEntry,
+    val isTitleMatch: Boolean,
+    val score: Int
+)
@@ -5,6 +5,7 @@ import com.ivanovsky.passnotes.data.ObserverBus
 import com.ivanovsky.passnotes.data.crypto.biometric.BiometricEncoder
 import com.ivanovsky.passnotes.data.entity.EncryptedDatabaseEntry
 import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.Note
 import com.ivanovsky.passnotes.data.entity.OperationResult
 import com.ivanovsky.passnotes.data.entity.Template
 import com.ivanovsky.passnotes.data.entity.UsedFile
@@ -33,6 +34,7 @@ import com.ivanovsky.passnotes.extensions.getOrThrow
 import com.ivanovsky.passnotes.extensions.mapError
 import com.ivanovsky.passnotes.extensions.mapWithObject
 import java.util.UUID
+import kotlinx.coroutines.flow.Flow
 import kotlinx.coroutines.withContext
 
 class GroupsInteractor(
@@ -118,9 +120,10 @@ class GroupsInteractor(
                 return@withContext groupsResult.mapError()
             }
 
-            val notesResult = db.noteDao.getNotesByGroupUid(groupUid)
+            // Only data displayed in the list is loaded, note screen loads full note by uid
+            val notesResult = db.noteDao.getNoteSummariesByGroupUid(groupUid)
             if (notesResult.isFailed) {
-                return@withContext groupsResult.mapError()
+                return@withContext notesResult.mapError()
             }
 
             val groups = groupsResult.obj
@@ -129,6 +132,84 @@ class GroupsInteractor(
             OperationResult.success(groups + notes)
         }
 
+    /**
+     * @return notes from [noteUids] that are located in the group, removed notes and notes
+     * from other groups are skipped
+     */
+    private suspend fun getGroupNotes(
+        groupUid: UUID,
+        noteUids: Set<UUID>
+    ): OperationResult<List<Note>> =
+        withContext(dispatchers.IO) {
+            val getDbResult = getDbUseCase.getDatabaseSynchronously()
+            if (getDbResult.isFailed) {
+                return@withContext getDbResult.mapError()
+            }
+
+            val db = getDbResult.obj
+            val notes = noteUids
+                .mapNotNull { noteUid ->
+                    val getNoteResult = db.noteDao.getNoteSummaryByUid(noteUid)
+                    if (getNoteResult.isSucceeded) {
+                        getNoteResult.obj
+                    } else {
+                        null
+                    }
+                }
+                .filter { note -> note.groupUid == groupUid }
+
+            OperationResult.success(notes)
+        }
+
+    /**
+     * Reloads notes from [noteUids] in [entries] of the group. Child groups are also
+     * reloaded if [isReloadGroups] is set or if some of the notes left the group, because
+     * their note counts might be changed, e.g. when a note is moved to a child group or
+     * to the recycle bin.
+     *
+     * @return updated and sorted entries of the group
+     */
+    suspend fun updateGroupEntries(
+        groupUid: UUID,
+        entries: List<EncryptedDatabaseEntry>,
+        noteUids: Set<UUID>,
+        isReloadGroups: Boolean
+    ): OperationResult<List<EncryptedDatabaseEntry>> =
+        withContext(dispatchers.IO) {
+            val getNotesResult = getGroupNotes(groupUid, noteUids)
+            if (getNotesResult.isFailed) {
+                return@withContext getNotesResult.mapError()
+            }
+
+            val notes = getNotesResult.obj
+            val notesInGroup = notes.map { note -> note.uid }.toSet()
+            val isNoteLeftGroup = entries.any { entry ->
+                entry is Note && entry.uid in noteUids && entry.uid !in notesInGroup
+            }
+
+            val groups = if (isReloadGroups || isNoteLeftGroup) {
+                val getDbResult = getDbUseCase.getDatabaseSynchronously()
+                if (getDbResult.isFailed) {
+                    return@withContext getDbResult.mapError()
+                }
+
+                val groupsResult = getDbResult.obj.groupDao.getChildGroups(groupUid)
+                if (groupsResult.isFailed) {
+                    return@withContext groupsResult.mapError()
+                }
+
+                groupsResult.obj
+            } else {
+                entries.filterIsInstance<Group>()
+            }
+
+            val unchangedNotes = entries.filter { entry ->
+                entry is Note && entry.uid !in noteUids
+            }
+
+            OperationResult.success(sortData(groups + unchangedNotes + notes))
+        }
+
     suspend fun sortData(
         data: List<EncryptedDatabaseEntry>
     ): List<EncryptedDatabaseEntry> =
@@ -157,7 +238,7 @@ class GroupsInteractor(
         val db = getDbResult.obj
         val removeResult = db.noteDao.remove(noteUid)
 
-        observerBus.notifyNoteDataSetChanged(groupUid)
+        observerBus.notifyNoteDataSetChanged(groupUid, setOf(noteUid))
 
         return removeResult.takeStatusWith(Unit)
     }
@@ -267,10 +348,10 @@ class GroupsInteractor(
     ): OperationResult<List<EncryptedDatabaseEntry>> =
         searchUseCases.getAllSearchableEntries(options, isRespectAutotypeProperty)
 
-    suspend fun filterEntries(
+    fun filterEntries(
         options: SearchOptions,
         entries: List<EncryptedDatabaseEntry>,
         query: String
-    ): List<EncryptedDatabaseEntry> =
+    ): Flow<List<EncryptedDatabaseEntry>> =
         searchUseCases.filterEntries(options, entries, query)
 }
\ No newline at end of file
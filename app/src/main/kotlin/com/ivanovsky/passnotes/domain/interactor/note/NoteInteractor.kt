@@ -18,7 +18,6 @@ import com.ivanovsky.passnotes.extensions.getOrThrow
 import com.ivanovsky.passnotes.extensions.mapError
 import com.ivanovsky.passnotes.presentation.autofill.model.AutofillStructure
 import com.ivanovsky.passnotes.util.InputOutputUtils
-import java.io.ByteArrayInputStream
 import java.io.File
 import java.util.UUID
 import kotlinx.coroutines.withContext
@@ -46,7 +45,7 @@ class NoteInteractor(
             val outDir = generateDirResult.getOrThrow()
             val outFile = File(outDir, attachment.name)
 
-            val source = ByteArrayInputStream(attachment.data)
+            val source = attachment.content.openStream()
             val copyResult = InputOutputUtils.copy(source, outFile)
             if (copyResult.isFailed) {
                 return@withContext copyResult.mapError()
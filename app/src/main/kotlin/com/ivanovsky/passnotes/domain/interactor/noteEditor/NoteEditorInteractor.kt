@@ -3,6 +3,7 @@ package com.ivanovsky.passnotes.domain.interactor.noteEditor
 import com.ivanovsky.passnotes.R
 import com.ivanovsky.passnotes.data.ObserverBus
 import com.ivanovsky.passnotes.data.entity.Attachment
+import com.ivanovsky.passnotes.data.entity.ByteArrayAttachmentContent
 import com.ivanovsky.passnotes.data.entity.FileDescriptor
 import com.ivanovsky.passnotes.data.entity.Hash
 import com.ivanovsky.passnotes.data.entity.Note
@@ -46,7 +47,7 @@ class NoteEditorInteractor(
             return insertResult.mapError()
         }
 
-        observerBus.notifyNoteDataSetChanged(note.groupUid)
+        observerBus.notifyNoteDataSetChanged(note.groupUid, setOf(insertResult.obj))
 
         return insertResult.takeStatusWith(Unit)
     }
@@ -136,7 +137,7 @@ class NoteEditorInteractor(
                     uid = hash.format(),
                     name = file.name,
                     hash = hash,
-                    data = content
+                    content = ByteArrayAttachmentContent(content)
                 )
             )
         }
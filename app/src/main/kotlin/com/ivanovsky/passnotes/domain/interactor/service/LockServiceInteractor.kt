@@ -25,6 +25,7 @@ class LockServiceInteractor(
 
     suspend fun syncAndLockIfNeed(file: FileDescriptor): OperationResult<Unit> =
         withContext(dispatchers.IO) {
+            // Pending commits are written by isSyncNeeded(), before sync status is checked
             val isSyncNeededResult = syncUseCases.isSyncNeeded(file)
             if (isSyncNeededResult.isFailed) {
                 return@withContext isSyncNeededResult.takeError()
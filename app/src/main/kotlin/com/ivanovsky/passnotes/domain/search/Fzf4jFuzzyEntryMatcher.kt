@@ -6,49 +6,88 @@ import com.ivanovsky.passnotes.data.entity.Note
 import com.ivanovsky.passnotes.data.entity.Property
 import com.ivanovsky.passnotes.data.entity.PropertyType
 import com.ivanovsky.passnotes.domain.entity.MatcherResult
+import com.ivanovsky.passnotes.domain.entity.ScoredEntry
 import com.ivanovsky.passnotes.domain.entity.SearchOptions
 import com.ivanovsky.passnotes.util.StringUtils
 import com.ivanovsky.passnotes.util.isPropertySearchable
 import de.gesundkrank.fzf4j.matchers.FuzzyMatcherV1
 import de.gesundkrank.fzf4j.models.OrderBy
 import java.util.UUID
-
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Keeps formatted content of the last matched entries, so typing a query doesn't format
+ * the whole list on every keystroke. If a query extends the previous one, only entries
+ * matched by the previous query are matched again, since fuzzy match of the longer query
+ * implies match of its prefix.
+ */
 class Fzf4jFuzzyEntryMatcher : EntryMatcher {
 
+    private val lastStateRef = AtomicReference<MatchState?>()
+
     override fun match(
         options: SearchOptions,
         query: String,
         entries: List<EncryptedDatabaseEntry>
     ): List<EncryptedDatabaseEntry> {
-        val resultUids = mutableSetOf<UUID>()
-        val result = mutableListOf<EncryptedDatabaseEntry>()
+        return matchScored(options, query, entries)
+            .map { it.entry }
+    }
 
-        val matchedEntriesByTitle = match(
-            titles = entries.map { it.formatTitle(options) },
-            entries = entries,
+    fun matchScored(
+        options: SearchOptions,
+        query: String,
+        entries: List<EncryptedDatabaseEntry>
+    ): List<ScoredEntry> {
+        val lastState = lastStateRef.get()
+        val corpus = if (lastState != null && lastState.corpus.isCreatedFor(options, entries)) {
+            lastState.corpus
+        } else {
+            Corpus.create(options, entries)
+        }
+
+        val isRefinement = lastState != null &&
+            lastState.corpus === corpus &&
+            query.startsWith(lastState.query)
+
+        val titleMatches = match(
+            titles = corpus.titles,
+            candidates = if (isRefinement) lastState?.titleIndices else null,
             query = query,
             isCaseSensitive = options.isCaseSensitive
         )
-            .map { it.entry }
 
-        for (entry in matchedEntriesByTitle) {
-            val uid = entry.getUid() ?: continue
-            result.add(entry)
-            resultUids.add(uid)
-        }
-
-        val matchedEntriesByAllContent = match(
-            titles = entries.map { it.formatAllContent(options) },
-            entries = entries,
+        val allContentMatches = match(
+            titles = corpus.allContents,
+            candidates = if (isRefinement) lastState?.allContentIndices else null,
             query = query,
             isCaseSensitive = options.isCaseSensitive
         )
-            .map { it.entry }
 
-        for (entry in matchedEntriesByAllContent) {
+        lastStateRef.set(
+            MatchState(
+                corpus = corpus,
+                query = query,
+                titleIndices = titleMatches.map { it.entry }.sorted(),
+                allContentIndices = allContentMatches.map { it.entry }.sorted()
+            )
+        )
+
+        val resultUids = mutableSetOf<UUID>()
+        val result = mutableListOf<ScoredEntry>()
+
+        for (match in titleMatches) {
+            val entry = entries[match.entry]
+            val uid = entry.getUid() ?: continue
+            result.add(ScoredEntry(entry, isTitleMatch = true, score = match.score))
+            resultUids.add(uid)
+        }
+
+        for (match in allContentMatches) {
+            val entry = entries[match.entry]
             val uid = entry.getUid() ?: continue
             if (uid !in resultUids) {
-                result.add(entry)
+                result.add(ScoredEntry(entry, isTitleMatch = false, score = match.score))
                 resultUids.add(uid)
             }
         }
@@ -56,6 +95,28 @@ class Fzf4jFuzzyEntryMatcher : EntryMatcher {
         return result
     }
 
+    /**
+     * @return matched indices of [titles] ordered by score
+     */
+    private fun match(
+        titles: List<String>,
+        candidates: List<Int>?,
+        query: String,
+        isCaseSensitive: Boolean
+    ): List<MatcherResult<Int>> {
+        val candidateIndices = candidates ?: titles.indices.toList()
+        if (candidateIndices.isEmpty()) {
+            return emptyList()
+        }
+
+        return match(
+            titles = candidateIndices.map { index -> titles[index] },
+            entries = candidateIndices,
+            query = query,
+            isCaseSensitive = isCaseSensitive
+        )
+    }
+
     private fun <T> match(
         titles: List<String>,
         entries: List<T>,
@@ -68,61 +129,98 @@ class Fzf4jFuzzyEntryMatcher : EntryMatcher {
                 MatcherResult(
                     entry = entries[result.itemIndex],
                     title = titles[result.itemIndex],
-                    highlights = result.positions?.toList() ?: emptyList()
+                    highlights = result.positions?.toList() ?: emptyList(),
+                    score = result.score
                 )
             }
     }
 
-    private fun EncryptedDatabaseEntry.getUid(): UUID? {
-        return when (this) {
-            is Note -> uid
-            is Group -> uid
+    private class MatchState(
+        val corpus: Corpus,
+        val query: String,
+        val titleIndices: List<Int>,
+        val allContentIndices: List<Int>
+    )
+
+    private class Corpus(
+        private val options: SearchOptions,
+        private val entries: List<EncryptedDatabaseEntry>,
+        val titles: List<String>,
+        val allContents: List<String>
+    ) {
+
+        fun isCreatedFor(
+            options: SearchOptions,
+            entries: List<EncryptedDatabaseEntry>
+        ): Boolean {
+            return this.entries === entries && this.options == options
         }
-    }
 
-    private fun EncryptedDatabaseEntry.formatTitle(options: SearchOptions): String {
-        return when (this) {
-            is Note -> if (options.isTitleEnabled) title else StringUtils.EMPTY
-            is Group -> title
+        companion object {
+
+            fun create(
+                options: SearchOptions,
+                entries: List<EncryptedDatabaseEntry>
+            ): Corpus =
+                Corpus(
+                    options = options,
+                    entries = entries,
+                    titles = entries.map { it.formatTitle(options) },
+                    allContents = entries.map { it.formatAllContent(options) }
+                )
         }
     }
+}
 
-    private fun EncryptedDatabaseEntry.formatAllContent(options: SearchOptions): String {
-        return when (this) {
-            is Note -> formatAllContent(options)
-            is Group -> title
-        }
+private fun EncryptedDatabaseEntry.getUid(): UUID? {
+    return when (this) {
+        is Note -> uid
+        is Group -> uid
     }
+}
 
-    private fun Note.formatAllContent(options: SearchOptions): String {
-        val words = mutableListOf<String>()
+private fun EncryptedDatabaseEntry.formatTitle(options: SearchOptions): String {
+    return when (this) {
+        is Note -> if (options.isTitleEnabled) title else StringUtils.EMPTY
+        is Group -> title
+    }
+}
 
-        for (property in properties) {
-            if (options.isPropertySearchable(property)) {
-                property.appendSearchableContentTo(words)
-            }
-        }
+private fun EncryptedDatabaseEntry.formatAllContent(options: SearchOptions): String {
+    return when (this) {
+        is Note -> formatAllContent(options)
+        is Group -> title
+    }
+}
 
-        if (options.isOtherFieldsEnabled) {
-            for (attachment in attachments) {
-                words.add(attachment.name)
-            }
+private fun Note.formatAllContent(options: SearchOptions): String {
+    val words = mutableListOf<String>()
+
+    for (property in properties) {
+        if (options.isPropertySearchable(property)) {
+            property.appendSearchableContentTo(words)
         }
+    }
 
-        return words.joinToString(separator = " ")
+    if (options.isOtherFieldsEnabled) {
+        for (attachment in attachments) {
+            words.add(attachment.name)
+        }
     }
 
-    private fun Property.appendSearchableContentTo(words: MutableList<String>) {
-        val name = this.name
-        val value = this.value
-        val isDefaultProperty = PropertyType.DEFAULT_TYPES.contains(this.type)
+    return words.joinToString(separator = " ")
+}
 
-        if (!isDefaultProperty && !name.isNullOrEmpty()) {
-            words.add(name)
-        }
+private fun Property.appendSearchableContentTo(words: MutableList<String>) {
+    val name = this.name
+    val value = this.value
+    val isDefaultProperty = PropertyType.DEFAULT_TYPES.contains(this.type)
 
-        if (!value.isNullOrEmpty()) {
-            words.add(value)
-        }
+    if (!isDefaultProperty && !name.isNullOrEmpty()) {
+        words.add(name)
+    }
+
+    if (!value.isNullOrEmpty()) {
+        words.add(value)
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,261 @@
+package com.ivanovsky.passnotes.domain.search
+
+import com.ivanovsky.passnotes.data.entity.EncryptedDatabaseEntry
+import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.entity.PropertyType
+import com.ivanovsky.passnotes.domain.entity.SearchOptions
+import java.util.UUID
+
+/**
+ * In-memory index of groups and notes, that maps every trigram of a searchable text to
+ * entries containing it. Text is normalized to lower case, each property is indexed separately,
+ * so a query matches an entry only if all its trigrams are present in the same entry.
+ *
+ * Only uids and trigrams are kept, entries themselves are not referenced by the index.
+ * Passwords are not indexed, searches that include them should fall back to a full scan.
+ * Not thread safe.
+ */
+class SearchIndex {
+
+    private val uidToDocumentId = HashMap<UUID, Int>()
+    private val documentIdToUid = ArrayList<UUID?>()
+    private val trigramToDocumentIds = HashMap<Long, IntList>()
+    private var removedDocumentCount = 0
+
+    fun put(entry: EncryptedDatabaseEntry) {
+        val uid = entry.getUid() ?: return
+
+        removeDocument(uid)
+        addDocument(uid, entry)
+
+        compactIfNeed()
+    }
+
+    fun remove(uid: UUID) {
+        removeDocument(uid)
+
+        compactIfNeed()
+    }
+
+    /**
+     * @return entries from [entries] that might match [query] with [StrictEntryMatcher] or
+     * null if the index can't be used for [options] and [query]. Entries that are unknown
+     * to the index are always returned.
+     */
+    fun filterCandidates(
+        options: SearchOptions,
+        query: String,
+        entries: List<EncryptedDatabaseEntry>
+    ): List<EncryptedDatabaseEntry>? {
+        if (options.isPasswordEnabled || query.length < TRIGRAM_LENGTH) {
+            return null
+        }
+
+        val documentIds = findDocumentIds(query)
+
+        return entries.filter { entry ->
+            val uid = entry.getUid() ?: return@filter true
+            val documentId = uidToDocumentId[uid] ?: return@filter true
+
+            documentIds.contains(documentId)
+        }
+    }
+
+    private fun findDocumentIds(query: String): Set<Int> {
+        val lists = mutableListOf<IntList>()
+        forEachTrigram(query) { trigram ->
+            lists.add(trigramToDocumentIds[trigram] ?: return emptySet())
+        }
+
+        // Document ids are assigned in ascending order, so all lists are sorted
+        lists.sortBy { list -> list.size }
+
+        var result = lists.first().toArray()
+        for (list in lists.drop(1)) {
+            result = intersect(result, list)
+            if (result.isEmpty()) {
+                return emptySet()
+            }
+        }
+
+        return result.toHashSet()
+    }
+
+    private fun addDocument(uid: UUID, entry: EncryptedDatabaseEntry) {
+        val documentId = documentIdToUid.size
+        documentIdToUid.add(uid)
+        uidToDocumentId[uid] = documentId
+
+        val trigrams = HashSet<Long>()
+        for (text in entry.getSearchableTexts()) {
+            forEachTrigram(text) { trigram -> trigrams.add(trigram) }
+        }
+
+        for (trigram in trigrams) {
+            trigramToDocumentIds.getOrPut(trigram) { IntList() }.add(documentId)
+        }
+    }
+
+    private fun removeDocument(uid: UUID) {
+        val documentId = uidToDocumentId.remove(uid) ?: return
+
+        // Posting lists are cleaned up lazily, see [compactIfNeed]
+        documentIdToUid[documentId] = null
+        removedDocumentCount++
+    }
+
+    private fun compactIfNeed() {
+        if (removedDocumentCount < MIN_REMOVED_DOCUMENTS_TO_COMPACT ||
+            removedDocumentCount < uidToDocumentId.size
+        ) {
+            return
+        }
+
+        // Live documents get new ids in the same order, so posting lists stay sorted
+        val newDocumentIds = IntArray(documentIdToUid.size)
+        val newDocumentIdToUid = ArrayList<UUID?>(uidToDocumentId.size)
+        for ((documentId, uid) in documentIdToUid.withIndex()) {
+            if (uid != null) {
+                newDocumentIds[documentId] = newDocumentIdToUid.size
+                uidToDocumentId[uid] = newDocumentIdToUid.size
+                newDocumentIdToUid.add(uid)
+            } else {
+                newDocumentIds[documentId] = REMOVED_DOCUMENT_ID
+            }
+        }
+
+        val iterator = trigramToDocumentIds.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            val newList = entry.value.remap(newDocumentIds)
+            if (newList.size > 0) {
+                entry.setValue(newList)
+            } else {
+                iterator.remove()
+            }
+        }
+
+        documentIdToUid.clear()
+        documentIdToUid.addAll(newDocumentIdToUid)
+        removedDocumentCount = 0
+    }
+
+    private class IntList {
+
+        var size = 0
+            private set
+
+        private var values = IntArray(INITIAL_CAPACITY)
+
+        fun add(value: Int) {
+            if (size == values.size) {
+                values = values.copyOf(size * 2)
+            }
+            values[size++] = value
+        }
+
+        operator fun get(index: Int): Int = values[index]
+
+        fun toArray(): IntArray = values.copyOf(size)
+
+        /**
+         * @return list with values replaced by [newValues], removed values are skipped
+         */
+        fun remap(newValues: IntArray): IntList {
+            val result = IntList()
+            for (index in 0 until size) {
+                val newValue = newValues[values[index]]
+                if (newValue != REMOVED_DOCUMENT_ID) {
+                    result.add(newValue)
+                }
+            }
+
+            return result
+        }
+
+        companion object {
+            private const val INITIAL_CAPACITY = 4
+        }
+    }
+
+    companion object {
+
+        private const val TRIGRAM_LENGTH = 3
+        private const val MIN_REMOVED_DOCUMENTS_TO_COMPACT = 64
+        private const val REMOVED_DOCUMENT_ID = -1
+
+        private fun EncryptedDatabaseEntry.getUid(): UUID? {
+            return when (this) {
+                is Note -> uid
+                is Group -> uid
+            }
+        }
+
+        private fun EncryptedDatabaseEntry.getSearchableTexts(): List<String> {
+            return when (this) {
+                is Group -> listOf(title)
+                is Note -> {
+                    val result = mutableListOf<String>()
+
+                    for (property in properties) {
+                        if (property.type == PropertyType.PASSWORD) {
+                            continue
+                        }
+
+                        property.value?.let { value -> result.add(value) }
+                        if (!PropertyType.DEFAULT_TYPES.contains(property.type)) {
+                            property.name?.let { name -> result.add(name) }
+                        }
+                    }
+
+                    for (attachment in attachments) {
+                        result.add(attachment.name)
+                    }
+
+                    result
+                }
+            }
+        }
+
+        private inline fun forEachTrigram(text: String, action: (Long) -> Unit) {
+            if (text.length < TRIGRAM_LENGTH) {
+                return
+            }
+
+            for (index in 0..text.length - TRIGRAM_LENGTH) {
+                val trigram = (text[index].normalize().code.toLong() shl 32) or
+                    (text[index + 1].normalize().code.toLong() shl 16) or
+                    text[index + 2].normalize().code.toLong()
+
+                action.invoke(trigram)
+            }
+        }
+
+        /**
+         * The same chars are equal for [String.contains] with ignoreCase = true.
+         */
+        private fun Char.normalize(): Char = uppercaseChar().lowercaseChar()
+
+        private fun intersect(sorted: IntArray, list: IntList): IntArray {
+            val result = IntArray(minOf(sorted.size, list.size))
+            var resultSize = 0
+            var i = 0
+            var j = 0
+
+            while (i < sorted.size && j < list.size) {
+                when {
+                    sorted[i] < list[j] -> i++
+                    sorted[i] > list[j] -> j++
+                    else -> {
+                        result[resultSize++] = sorted[i]
+                        i++
+                        j++
+                    }
+                }
+            }
+
+            return result.copyOf(resultSize)
+        }
+    }
+}
@@ -26,7 +26,11 @@ class LockDatabaseUseCase {
         val syncState = syncStateProvider.syncState
         Timber.d("syncState=%s", syncState)
 
-        if (syncState == null || syncState.status.isNeedToSync()) {
+        // Pending commits are written by LockService, so they don't block the caller
+        if (syncState == null ||
+            syncState.status.isNeedToSync() ||
+            db.commitScheduler.hasPendingCommits()
+        ) {
             LockService.runCommand(context, LockServiceCommand.SyncAndLock(db.getFile()))
             observerBus.notifyDatabaseClosed()
             return OperationResult.success(Unit)
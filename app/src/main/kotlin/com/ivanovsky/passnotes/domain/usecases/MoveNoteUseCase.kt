@@ -34,8 +34,8 @@ class MoveNoteUseCase(
                 return@withContext updateNoteResult.takeError()
             }
 
-            observerBus.notifyNoteDataSetChanged(note.groupUid)
-            observerBus.notifyNoteDataSetChanged(newGroupUid)
+            observerBus.notifyNoteDataSetChanged(note.groupUid, setOf(noteUid))
+            observerBus.notifyNoteDataSetChanged(newGroupUid, setOf(noteUid))
 
             OperationResult.success(true)
         }
@@ -1,30 +1,137 @@
 package com.ivanovsky.passnotes.domain.usecases
 
+import arrow.core.Either
 import arrow.core.raise.either
+import com.ivanovsky.passnotes.data.ObserverBus
 import com.ivanovsky.passnotes.data.entity.EncryptedDatabaseEntry
 import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.entity.OperationError
 import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.repository.encdb.ContentWatcher
+import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
 import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabaseConfig
 import com.ivanovsky.passnotes.domain.DispatcherProvider
+import com.ivanovsky.passnotes.domain.entity.ScoredEntry
 import com.ivanovsky.passnotes.domain.entity.SearchOptions
 import com.ivanovsky.passnotes.domain.entity.SearchScope
 import com.ivanovsky.passnotes.domain.entity.SearchType
 import com.ivanovsky.passnotes.domain.search.Fzf4jFuzzyEntryMatcher
+import com.ivanovsky.passnotes.domain.search.SearchIndex
 import com.ivanovsky.passnotes.domain.search.StrictEntryMatcher
 import com.ivanovsky.passnotes.extensions.toEither
 import com.ivanovsky.passnotes.util.toOperationResult
 import java.util.LinkedList
 import java.util.UUID
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.channelFlow
+import kotlinx.coroutines.flow.flowOf
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import kotlinx.coroutines.withContext
+import timber.log.Timber
 
+/**
+ * Keeps [SearchIndex] of the opened database. The index is built on the first strict search and
+ * then updated from [ContentWatcher] events, so subsequent searches verify only the index
+ * candidates instead of all entries.
+ */
 class SearchUseCases(
     private val dispatchers: DispatcherProvider,
     private val getDbUseCase: GetDatabaseUseCase,
-    private val sortUseCase: SortGroupsAndNotesUseCase
-) {
+    private val sortUseCase: SortGroupsAndNotesUseCase,
+    observerBus: ObserverBus
+) : ObserverBus.GroupDataSetObserver,
+    ObserverBus.DatabaseDataSetObserver,
+    ObserverBus.DatabaseCloseObserver {
 
     private val strictMatcher = StrictEntryMatcher()
-    private val fuzzyMatcher = Fzf4jFuzzyEntryMatcher()
+    private val fuzzyPartitionRef = AtomicReference<FuzzyPartition?>()
+
+    // Serializes index updates, [index] is guarded by this lock.
+    // Database is accessed only while this lock is held, never while [stateLock] is held
+    private val indexLock = ReentrantLock()
+    private var index: SearchIndex? = null
+
+    // Guards fields that are changed by listeners, which might be called under database lock
+    private val stateLock = ReentrantLock()
+    private var indexedDb: EncryptedDatabase? = null
+    private var isIndexStale = true
+    private val changedNoteUids = HashSet<UUID>()
+
+    private val noteListener = object :
+        ContentWatcher.OnEntryCreateListener<Note>,
+        ContentWatcher.OnEntryChangeListener<Note>,
+        ContentWatcher.OnEntryRemoveListener<Note> {
+
+        override fun onEntryCreated(entry: Note) {
+            onNoteChanged(entry.uid)
+        }
+
+        override fun onEntryChanged(oldEntry: Note, newEntry: Note) {
+            onNoteChanged(oldEntry.uid)
+            onNoteChanged(newEntry.uid)
+        }
+
+        override fun onEntryRemoved(entry: Note) {
+            onNoteChanged(entry.uid)
+        }
+    }
+
+    // Group changes might affect the whole subtree, the index is rebuilt
+    private val groupListener = object :
+        ContentWatcher.OnEntryCreateListener<Group>,
+        ContentWatcher.OnEntryChangeListener<Group>,
+        ContentWatcher.OnEntryRemoveListener<Group> {
+
+        override fun onEntryCreated(entry: Group) {
+            invalidateIndex()
+        }
+
+        override fun onEntryChanged(oldEntry: Group, newEntry: Group) {
+            invalidateIndex()
+        }
+
+        override fun onEntryRemoved(entry: Group) {
+            invalidateIndex()
+        }
+    }
+
+    init {
+        observerBus.register(this)
+    }
+
+    override fun onGroupDataSetChanged() {
+        invalidateIndex()
+    }
+
+    override fun onDatabaseDataSetChanged() {
+        invalidateIndex()
+    }
+
+    override fun onDatabaseClosed() {
+        stateLock.withLock {
+            indexedDb?.let { db -> unsubscribe(db) }
+            indexedDb = null
+            isIndexStale = true
+            changedNoteUids.clear()
+        }
+
+        // Index holds trigrams of decrypted data, it is released right away unless it is
+        // in use, otherwise it is released by the holder of [indexLock], see [withIndex]
+        if (indexLock.tryLock()) {
+            try {
+                index = null
+            } finally {
+                indexLock.unlock()
+            }
+        }
+    }
 
     suspend fun getAllSearchableEntries(
         options: SearchOptions,
@@ -149,20 +256,236 @@ class SearchUseCases(
         return result
     }
 
-    suspend fun filterEntries(
+    /**
+     * Matches parts of [entries] in parallel and emits merged results each time a part is
+     * matched, the last emitted list contains all matched entries.
+     * Parts that are not started yet are skipped if collector is cancelled.
+     */
+    fun filterEntries(
         options: SearchOptions,
         entries: List<EncryptedDatabaseEntry>,
         query: String
-    ): List<EncryptedDatabaseEntry> {
+    ): Flow<List<EncryptedDatabaseEntry>> {
         if (query.isEmpty()) {
-            return entries
+            return flowOf(entries)
+        }
+
+        return channelFlow {
+            val chunkMatchers = when (options.searchType) {
+                SearchType.FUZZY -> {
+                    getFuzzyPartition(entries).chunks
+                        .map { (chunk, matcher) ->
+                            { matcher.matchScored(options, query, chunk) }
+                        }
+                }
+
+                SearchType.STRICT -> {
+                    val candidates = filterCandidates(options, query, entries) ?: entries
+                    splitIntoChunks(candidates)
+                        .map { chunk ->
+                            {
+                                strictMatcher.match(options, query, chunk)
+                                    .map { entry ->
+                                        ScoredEntry(entry, isTitleMatch = true, score = 0)
+                                    }
+                            }
+                        }
+                }
+            }
+
+            if (chunkMatchers.isEmpty()) {
+                send(emptyList())
+                return@channelFlow
+            }
+
+            val mutex = Mutex()
+            val chunkResults = arrayOfNulls<List<ScoredEntry>>(chunkMatchers.size)
+
+            for ((chunkIndex, matchChunk) in chunkMatchers.withIndex()) {
+                launch(dispatchers.Default) {
+                    val chunkResult = matchChunk.invoke()
+
+                    mutex.withLock {
+                        chunkResults[chunkIndex] = chunkResult
+                        send(mergeResults(chunkResults))
+                    }
+                }
+            }
+        }
+            .flowOn(dispatchers.IO)
+    }
+
+    private fun getFuzzyPartition(entries: List<EncryptedDatabaseEntry>): FuzzyPartition {
+        val lastPartition = fuzzyPartitionRef.get()
+        if (lastPartition != null && lastPartition.entries === entries) {
+            return lastPartition
+        }
+
+        // Each part has its own matcher, that keeps formatted content of the part
+        val partition = FuzzyPartition(
+            entries = entries,
+            chunks = splitIntoChunks(entries)
+                .map { chunk -> chunk to Fzf4jFuzzyEntryMatcher() }
+        )
+        fuzzyPartitionRef.set(partition)
+
+        return partition
+    }
+
+    private fun splitIntoChunks(
+        entries: List<EncryptedDatabaseEntry>
+    ): List<List<EncryptedDatabaseEntry>> {
+        val chunkCount = Runtime.getRuntime().availableProcessors() * CHUNKS_PER_PROCESSOR
+        val chunkSize = (entries.size / chunkCount + 1).coerceAtLeast(MIN_CHUNK_SIZE)
+
+        return entries.chunked(chunkSize)
+    }
+
+    private fun mergeResults(
+        chunkResults: Array<List<ScoredEntry>?>
+    ): List<EncryptedDatabaseEntry> {
+        return chunkResults
+            .filterNotNull()
+            .flatten()
+            .sortedWith(
+                compareBy<ScoredEntry> { !it.isTitleMatch }
+                    .thenByDescending { it.score }
+            )
+            .map { it.entry }
+    }
+
+    private fun filterCandidates(
+        options: SearchOptions,
+        query: String,
+        entries: List<EncryptedDatabaseEntry>
+    ): List<EncryptedDatabaseEntry>? {
+        val db = getDbUseCase.getDatabase().obj ?: return null
+
+        return withIndex(db) { index -> index.filterCandidates(options, query, entries) }
+            .fold(
+                ifLeft = { error ->
+                    Timber.d("Unable to use search index: %s", error)
+                    null
+                },
+                ifRight = { candidates -> candidates }
+            )
+    }
+
+    private fun <T> withIndex(
+        db: EncryptedDatabase,
+        action: (SearchIndex) -> T
+    ): Either<OperationError, T> =
+        indexLock.withLock {
+            val result = updateIndex(db).map { index -> action.invoke(index) }
+
+            // Database might be closed while the index was in use
+            val isDbClosed = getDbUseCase.getDatabaseSynchronously().obj !== db
+            if (isDbClosed) {
+                stateLock.withLock {
+                    if (indexedDb === db) {
+                        unsubscribe(db)
+                        indexedDb = null
+                        isIndexStale = true
+                        changedNoteUids.clear()
+                    }
+                }
+                index = null
+            }
+
+            result
+        }
+
+    private fun updateIndex(db: EncryptedDatabase): Either<OperationError, SearchIndex> {
+        val (isRebuildNeeded, noteUids) = stateLock.withLock {
+            if (indexedDb !== db) {
+                indexedDb?.let { oldDb -> unsubscribe(oldDb) }
+                indexedDb = db
+                db.noteDao.contentWatcher.subscribe(noteListener)
+                db.groupDao.contentWatcher.subscribe(groupListener)
+                isIndexStale = true
+            }
+
+            val isRebuildNeeded = isIndexStale || index == null
+            val noteUids = changedNoteUids.toList()
+
+            isIndexStale = false
+            changedNoteUids.clear()
+
+            isRebuildNeeded to noteUids
         }
 
-        return withContext(dispatchers.IO) {
-            when (options.searchType) {
-                SearchType.FUZZY -> fuzzyMatcher.match(options, query, entries)
-                SearchType.STRICT -> strictMatcher.match(options, query, entries)
+        val currentIndex = index
+        val result = if (isRebuildNeeded || currentIndex == null) {
+            buildIndex(db)
+        } else {
+            for (noteUid in noteUids) {
+                val note = db.noteDao.getNoteByUid(noteUid).obj
+                if (note != null) {
+                    currentIndex.put(note)
+                } else {
+                    currentIndex.remove(noteUid)
+                }
+            }
+            Either.Right(currentIndex)
+        }
+
+        result.fold(
+            ifLeft = {
+                index = null
+                invalidateIndex()
+            },
+            ifRight = { newIndex ->
+                index = newIndex
+            }
+        )
+
+        return result
+    }
+
+    private fun buildIndex(db: EncryptedDatabase): Either<OperationError, SearchIndex> =
+        either {
+            val allNotes = db.noteDao.all.toEither().bind()
+            val allGroups = db.groupDao.all.toEither().bind()
+
+            SearchIndex().apply {
+                for (group in allGroups) {
+                    put(group)
+                }
+                for (note in allNotes) {
+                    put(note)
+                }
             }
         }
+
+    private fun unsubscribe(db: EncryptedDatabase) {
+        db.noteDao.contentWatcher.unsubscribe(noteListener)
+        db.groupDao.contentWatcher.unsubscribe(groupListener)
+    }
+
+    private fun onNoteChanged(noteUid: UUID?) {
+        if (noteUid == null) {
+            invalidateIndex()
+            return
+        }
+
+        stateLock.withLock {
+            changedNoteUids.add(noteUid)
+        }
+    }
+
+    private fun invalidateIndex() {
+        stateLock.withLock {
+            isIndexStale = true
+        }
+    }
+
+    private class FuzzyPartition(
+        val entries: List<EncryptedDatabaseEntry>,
+        val chunks: List<Pair<List<EncryptedDatabaseEntry>, Fzf4jFuzzyEntryMatcher>>
+    )
+
+    companion object {
+        private const val CHUNKS_PER_PROCESSOR = 2
+        private const val MIN_CHUNK_SIZE = 256
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,11 @@
 package com.ivanovsky.passnotes.domain.usecases
 
+import com.ivanovsky.passnotes.data.ObserverBus
 import com.ivanovsky.passnotes.data.entity.EncryptedDatabaseEntry
+import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.repository.encdb.ContentWatcher
+import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
 import com.ivanovsky.passnotes.data.repository.settings.Settings
 import com.ivanovsky.passnotes.domain.DispatcherProvider
 import com.ivanovsky.passnotes.domain.entity.SortDirection
@@ -8,12 +13,91 @@ import com.ivanovsky.passnotes.domain.entity.SortType
 import com.ivanovsky.passnotes.domain.usecases.sorrting.SortByDateStrategy
 import com.ivanovsky.passnotes.domain.usecases.sorrting.SortByDefaultOrderStrategy
 import com.ivanovsky.passnotes.domain.usecases.sorrting.SortByTitleStrategy
+import com.ivanovsky.passnotes.domain.usecases.sorrting.TitleSortKeys
+import java.util.UUID
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 import kotlinx.coroutines.withContext
 
+/**
+ * Sorted orders of group contents are cached per group, sort type and direction, so
+ * navigation between groups doesn't sort the same entries again. Cached orders are
+ * invalidated by [ContentWatcher] events of the opened database. A cached order is also
+ * checked against sort values of the entries, so entries that were read before an
+ * invalidation are never returned in a stale order.
+ */
 class SortGroupsAndNotesUseCase(
     private val settings: Settings,
-    private val dispatchers: DispatcherProvider
-) {
+    private val dispatchers: DispatcherProvider,
+    private val getDbUseCase: GetDatabaseUseCase,
+    observerBus: ObserverBus
+) : ObserverBus.DatabaseDataSetObserver,
+    ObserverBus.DatabaseCloseObserver {
+
+    private val titleKeys = TitleSortKeys()
+
+    // Guards fields below, might be used by listeners that are called under database lock
+    private val lock = ReentrantLock()
+    private var watchedDb: EncryptedDatabase? = null
+    private val orders = HashMap<OrderKey, CachedOrder>()
+
+    private val noteListener = object :
+        ContentWatcher.OnEntryCreateListener<Note>,
+        ContentWatcher.OnEntryChangeListener<Note>,
+        ContentWatcher.OnEntryRemoveListener<Note> {
+
+        override fun onEntryCreated(entry: Note) {
+            invalidateOrders(entry.groupUid)
+        }
+
+        override fun onEntryChanged(oldEntry: Note, newEntry: Note) {
+            invalidateOrders(oldEntry.groupUid)
+            invalidateOrders(newEntry.groupUid)
+        }
+
+        override fun onEntryRemoved(entry: Note) {
+            invalidateOrders(entry.groupUid)
+        }
+    }
+
+    private val groupListener = object :
+        ContentWatcher.OnEntryCreateListener<Group>,
+        ContentWatcher.OnEntryChangeListener<Group>,
+        ContentWatcher.OnEntryRemoveListener<Group> {
+
+        override fun onEntryCreated(entry: Group) {
+            invalidateOrders(entry.parentUid)
+        }
+
+        override fun onEntryChanged(oldEntry: Group, newEntry: Group) {
+            invalidateOrders(oldEntry.parentUid)
+            invalidateOrders(newEntry.parentUid)
+        }
+
+        override fun onEntryRemoved(entry: Group) {
+            invalidateOrders(entry.parentUid)
+        }
+    }
+
+    init {
+        observerBus.register(this)
+    }
+
+    override fun onDatabaseDataSetChanged() {
+        lock.withLock {
+            orders.clear()
+        }
+    }
+
+    override fun onDatabaseClosed() {
+        lock.withLock {
+            watchedDb?.let { db -> unsubscribe(db) }
+            watchedDb = null
+            orders.clear()
+        }
+
+        titleKeys.clear()
+    }
 
     suspend fun sortGroupsAndNotesAccordingToSettings(
         items: List<EncryptedDatabaseEntry>
@@ -32,30 +116,192 @@ class SortGroupsAndNotesUseCase(
         isGroupsAtStart: Boolean
     ): List<EncryptedDatabaseEntry> =
         withContext(dispatchers.IO) {
-            when (sortType) {
-                SortType.DEFAULT -> SortByDefaultOrderStrategy().sort(
-                    items,
-                    direction,
-                    isGroupsAtStart = isGroupsAtStart
-                )
-                SortType.TITLE -> SortByTitleStrategy().sort(
-                    items,
-                    direction,
-                    isGroupsAtStart = isGroupsAtStart
-                )
-                SortType.CREATION_DATE -> SortByDateStrategy(SortByDateStrategy.Type.CREATION_DATE)
-                    .sort(
-                        items,
-                        direction,
-                        isGroupsAtStart = isGroupsAtStart
-                    )
-                SortType.MODIFICATION_DATE -> SortByDateStrategy(
-                    SortByDateStrategy.Type.MODIFICATION_DATE
-                ).sort(
+            val orderKey = createOrderKey(items, sortType, direction, isGroupsAtStart)
+                ?: return@withContext sort(items, sortType, direction, isGroupsAtStart)
+
+            val cachedOrder = lock.withLock {
+                orders[orderKey]
+            }
+
+            val cachedItems = cachedOrder?.let { order -> applyOrder(order, items, sortType) }
+            if (cachedItems != null) {
+                return@withContext cachedItems
+            }
+
+            val sortedItems = sort(items, sortType, direction, isGroupsAtStart)
+            val order = CachedOrder(
+                uids = sortedItems.mapNotNull { item -> item.getUid() },
+                sortValues = items.associate { item ->
+                    item.getUid() to item.getSortValue(sortType)
+                }
+            )
+
+            lock.withLock {
+                orders[orderKey] = order
+            }
+
+            sortedItems
+        }
+
+    private fun sort(
+        items: List<EncryptedDatabaseEntry>,
+        sortType: SortType,
+        direction: SortDirection,
+        isGroupsAtStart: Boolean
+    ): List<EncryptedDatabaseEntry> {
+        return when (sortType) {
+            SortType.DEFAULT -> SortByDefaultOrderStrategy().sort(
+                items,
+                direction,
+                isGroupsAtStart = isGroupsAtStart
+            )
+            SortType.TITLE -> SortByTitleStrategy(titleKeys).sort(
+                items,
+                direction,
+                isGroupsAtStart = isGroupsAtStart
+            )
+            SortType.CREATION_DATE -> SortByDateStrategy(SortByDateStrategy.Type.CREATION_DATE)
+                .sort(
                     items,
                     direction,
                     isGroupsAtStart = isGroupsAtStart
                 )
+            SortType.MODIFICATION_DATE -> SortByDateStrategy(
+                SortByDateStrategy.Type.MODIFICATION_DATE
+            ).sort(
+                items,
+                direction,
+                isGroupsAtStart = isGroupsAtStart
+            )
+        }
+    }
+
+    /**
+     * @return key of the cached order if [items] are contents of a single group of the
+     * opened database, otherwise null
+     */
+    private fun createOrderKey(
+        items: List<EncryptedDatabaseEntry>,
+        sortType: SortType,
+        direction: SortDirection,
+        isGroupsAtStart: Boolean
+    ): OrderKey? {
+        // Default order doesn't compare entries, there is nothing to cache
+        if (sortType == SortType.DEFAULT || items.isEmpty()) {
+            return null
+        }
+
+        val parentUid = items.first().getParentUid() ?: return null
+        if (items.any { item -> item.getParentUid() != parentUid || item.getUid() == null }) {
+            return null
+        }
+
+        if (!watchOpenedDatabase()) {
+            return null
+        }
+
+        return OrderKey(
+            parentUid = parentUid,
+            sortType = sortType,
+            direction = direction,
+            isGroupsAtStart = isGroupsAtStart
+        )
+    }
+
+    private fun watchOpenedDatabase(): Boolean {
+        val db = getDbUseCase.getDatabaseSynchronously().obj ?: return false
+
+        lock.withLock {
+            if (watchedDb !== db) {
+                watchedDb?.let { oldDb -> unsubscribe(oldDb) }
+                watchedDb = db
+                db.noteDao.contentWatcher.subscribe(noteListener)
+                db.groupDao.contentWatcher.subscribe(groupListener)
+                orders.clear()
             }
         }
-}
\ No newline at end of file
+
+        return true
+    }
+
+    /**
+     * @return [items] in the cached [order] or null if [items] are not the same entries or
+     * their sort values are changed
+     */
+    private fun applyOrder(
+        order: CachedOrder,
+        items: List<EncryptedDatabaseEntry>,
+        sortType: SortType
+    ): List<EncryptedDatabaseEntry>? {
+        if (order.uids.size != items.size) {
+            return null
+        }
+
+        val itemsByUid = HashMap<UUID, EncryptedDatabaseEntry>(items.size)
+        for (item in items) {
+            val uid = item.getUid() ?: return null
+            if (order.sortValues[uid] != item.getSortValue(sortType)) {
+                return null
+            }
+
+            itemsByUid[uid] = item
+        }
+
+        return order.uids.map { uid -> itemsByUid[uid] ?: return null }
+    }
+
+    private fun invalidateOrders(parentUid: UUID?) {
+        if (parentUid == null) {
+            return
+        }
+
+        lock.withLock {
+            orders.keys.removeAll { key -> key.parentUid == parentUid }
+        }
+    }
+
+    private fun unsubscribe(db: EncryptedDatabase) {
+        db.noteDao.contentWatcher.unsubscribe(noteListener)
+        db.groupDao.contentWatcher.unsubscribe(groupListener)
+    }
+
+    private fun EncryptedDatabaseEntry.getUid(): UUID? {
+        return when (this) {
+            is Note -> uid
+            is Group -> uid
+        }
+    }
+
+    private fun EncryptedDatabaseEntry.getParentUid(): UUID? {
+        return when (this) {
+            is Note -> groupUid
+            is Group -> parentUid
+        }
+    }
+
+    /**
+     * @return value that defines position of the entry, groups are sorted only by title
+     */
+    private fun EncryptedDatabaseEntry.getSortValue(sortType: SortType): Any {
+        return when (this) {
+            is Group -> title
+            is Note -> when (sortType) {
+                SortType.DEFAULT, SortType.TITLE -> title
+                SortType.CREATION_DATE -> created.time
+                SortType.MODIFICATION_DATE -> modified.time
+            }
+        }
+    }
+
+    private class CachedOrder(
+        val uids: List<UUID>,
+        val sortValues: Map<UUID?, Any>
+    )
+
+    private data class OrderKey(
+        val parentUid: UUID,
+        val sortType: SortType,
+        val direction: SortDirection,
+        val isGroupsAtStart: Boolean
+    )
+}
@@ -2,6 +2,8 @@ package com.ivanovsky.passnotes.domain.usecases
 
 import arrow.core.Either
 import arrow.core.raise.either
+import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.entity.FSType
 import com.ivanovsky.passnotes.data.entity.FileDescriptor
 import com.ivanovsky.passnotes.data.entity.MergeFiles
 import com.ivanovsky.passnotes.data.entity.OperationError
@@ -22,6 +24,11 @@ import com.ivanovsky.passnotes.extensions.getFileDescriptor
 import com.ivanovsky.passnotes.extensions.isSameFile
 import com.ivanovsky.passnotes.extensions.isSyncable
 import com.ivanovsky.passnotes.extensions.toEither
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
 import timber.log.Timber
 
@@ -32,53 +39,99 @@ class SyncUseCases(
     private val usedFileRepository: UsedFileRepository
 ) {
 
+    /**
+     * Synchronizes all syncable files. Files are processed in parallel, the number of
+     * simultaneous syncs is limited per [FSAuthority] and globally, so a slow server
+     * doesn't block files of other servers. All files are processed even if some of them
+     * failed, in this case the first error is returned.
+     */
     suspend fun syncChanges(): Either<OperationError, Unit> =
         withContext(dispatchers.IO) {
-            either {
-                val syncableFiles = usedFileRepository.getAll()
-                    .map { file -> file.getFileDescriptor() }
-                    .filter { file -> file.fsAuthority.isSyncable() }
-
-                for (file in syncableFiles) {
-                    val provider = fileSystemResolver.resolveProvider(file.fsAuthority)
-                    val cachedFile = provider.syncProcessor.getCachedFile(file.uid)
-
-                    if (cachedFile == null) {
-                        // The file isn't downloaded, it should be downloaded first
-                        Timber.d(
-                            "Syncing file: file=%s, fsType=%s".format(
-                                file.path,
-                                file.fsAuthority.type
-                            )
-                        )
-
-                        val content = provider.openFileForRead(
-                            file,
-                            OnConflictStrategy.CANCEL,
-                            FSOptions.READ_ONLY
-                        ).toEither().bind()
-
-                        Either.catch { content.close() }
-                            .mapLeft { error -> newGenericError(error) }
-                            .bind()
-                    } else {
-                        val syncState = getSyncState(file)
-
-                        val hasRemoteChanges = (syncState.status == SyncStatus.REMOTE_CHANGES)
-                        val hasLocalChanges = (syncState.status == SyncStatus.LOCAL_CHANGES)
-
-                        Timber.d(
-                            "Syncing file: syncState=%s, file=%s, fsType=%s".format(
-                                syncState,
-                                file.path,
-                                file.fsAuthority.type
-                            )
-                        )
-
-                        if (hasRemoteChanges || hasLocalChanges) {
-                            processSync(file).toEither().bind()
+            flushPendingCommits(file = null)
+
+            val syncableFiles = usedFileRepository.getAll()
+                .map { file -> file.getFileDescriptor() }
+                .filter { file -> file.fsAuthority.isSyncable() }
+
+            val globalLimit = Semaphore(MAX_PARALLEL_SYNCS)
+            val authorityLimits = syncableFiles
+                .map { file -> file.fsAuthority }
+                .distinct()
+                .associateWith { fsAuthority -> Semaphore(getMaxParallelSyncs(fsAuthority)) }
+
+            val results = coroutineScope {
+                syncableFiles
+                    .map { file ->
+                        async {
+                            authorityLimits.getValue(file.fsAuthority).withPermit {
+                                globalLimit.withPermit {
+                                    syncFileAndMeasure(file)
+                                }
+                            }
                         }
                     }
+                    .awaitAll()
+            }
+
+            results.firstOrNull { result -> result.isLeft() } ?: Either.Right(Unit)
+        }
+
+    private suspend fun syncFileAndMeasure(file: FileDescriptor): Either<OperationError, Unit> {
+        val start = System.currentTimeMillis()
+        val result = syncFile(file)
+        val duration = System.currentTimeMillis() - start
+
+        Timber.d(
+            "File synced: file=%s, fsType=%s, duration=%sms, isSuccessful=%s".format(
+                file.path,
+                file.fsAuthority.type,
+                duration,
+                result.isRight()
+            )
+        )
+
+        return result
+    }
+
+    private suspend fun syncFile(file: FileDescriptor): Either<OperationError, Unit> =
+        either {
+            val provider = fileSystemResolver.resolveProvider(file.fsAuthority)
+            val cachedFile = provider.syncProcessor.getCachedFile(file.uid)
+
+            if (cachedFile == null) {
+                // The file isn't downloaded, it should be downloaded first
+                Timber.d(
+                    "Syncing file: file=%s, fsType=%s".format(
+                        file.path,
+                        file.fsAuthority.type
+                    )
+                )
+
+                val content = provider.openFileForRead(
+                    file,
+                    OnConflictStrategy.CANCEL,
+                    FSOptions.READ_ONLY
+                ).toEither().bind()
+
+                Either.catch { content.close() }
+                    .mapLeft { error -> newGenericError(error) }
+                    .bind()
+            } else {
+                val syncState = getSyncState(file)
+
+                val hasRemoteChanges = (syncState.status == SyncStatus.REMOTE_CHANGES)
+                val hasLocalChanges = (syncState.status == SyncStatus.LOCAL_CHANGES)
+
+                Timber.d(
+                    "Syncing file: syncState=%s, file=%s, fsType=%s".format(
+                        syncState,
+                        file.path,
+                        file.fsAuthority.type
+                    )
+                )
+
+                if (hasRemoteChanges || hasLocalChanges) {
+                    processSync(file).toEither().bind()
                 }
             }
         }
@@ -118,6 +171,8 @@ class SyncUseCases(
         requestedResolution: RequestedSyncResolution
     ): OperationResult<FileDescriptor> =
         withContext(dispatchers.IO) {
+            flushPendingCommits(file)
+
             fileSystemResolver
                 .resolveSyncProcessor(file.fsAuthority)
                 .process(file, requestedResolution)
@@ -125,6 +180,8 @@ class SyncUseCases(
 
     suspend fun isSyncNeeded(file: FileDescriptor): OperationResult<Boolean> =
         withContext(dispatchers.IO) {
+            flushPendingCommits(file)
+
             val syncState = getSyncState(file)
 
             val isNeeded = (
@@ -137,6 +194,8 @@ class SyncUseCases(
 
     suspend fun processSync(file: FileDescriptor): OperationResult<FileDescriptor> =
         withContext(dispatchers.IO) {
+            flushPendingCommits(file)
+
             val syncProcessor = fileSystemResolver.resolveSyncProcessor(file.fsAuthority)
             val processResult = syncProcessor.process(file, RequestedSyncResolution.NOT_SPECIFIED)
 
@@ -151,4 +210,31 @@ class SyncUseCases(
 
             processResult
         }
-}
\ No newline at end of file
+
+    /**
+     * Writes changes scheduled for commit, otherwise they wouldn't be synchronized.
+     * If [file] is null, changes of any opened database are written.
+     */
+    private fun flushPendingCommits(file: FileDescriptor?) {
+        val db = dbRepo.getDatabase() ?: return
+        if (file != null && !db.getFile().isSameFile(file)) {
+            return
+        }
+
+        db.commitScheduler.flush()
+            .onLeft { error -> Timber.d("Failed to flush pending commits: %s", error) }
+    }
+
+    private fun getMaxParallelSyncs(fsAuthority: FSAuthority): Int {
+        return when (fsAuthority.type) {
+            // Files of the same Git authority share one local repository
+            FSType.GIT -> 1
+            else -> MAX_PARALLEL_SYNCS_PER_AUTHORITY
+        }
+    }
+
+    companion object {
+        private const val MAX_PARALLEL_SYNCS = 4
+        private const val MAX_PARALLEL_SYNCS_PER_AUTHORITY = 2
+    }
+}
@@ -18,11 +18,11 @@ class SortByDateStrategy(
 
         val notes = items.filterIsInstance(Note::class.java)
             .map { item ->
-                val date = when (type) {
-                    Type.CREATION_DATE -> item.created
-                    Type.MODIFICATION_DATE -> item.modified
+                val time = when (type) {
+                    Type.CREATION_DATE -> item.created.time
+                    Type.MODIFICATION_DATE -> item.modified.time
                 }
-                Pair(date, item)
+                Pair(time, item)
             }
             .sortedByWithDirection(direction) { it.first }
             .map { it.second }
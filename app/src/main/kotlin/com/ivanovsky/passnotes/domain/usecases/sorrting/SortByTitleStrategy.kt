@@ -5,7 +5,9 @@ import com.ivanovsky.passnotes.data.entity.Group
 import com.ivanovsky.passnotes.data.entity.Note
 import com.ivanovsky.passnotes.domain.entity.SortDirection
 
-class SortByTitleStrategy : SortStrategy {
+class SortByTitleStrategy(
+    private val titleKeys: TitleSortKeys
+) : SortStrategy {
 
     override fun sort(
         items: List<EncryptedDatabaseEntry>,
@@ -15,13 +17,13 @@ class SortByTitleStrategy : SortStrategy {
         return if (isGroupsAtStart) {
             val groups = items
                 .filterGroups()
-                .map { item -> Pair(item.title, item) }
+                .map { item -> Pair(titleKeys.getKey(item.title), item) }
                 .sortedByWithDirection(direction) { it.first }
                 .map { it.second }
 
             val notes = items
                 .filterNotes()
-                .map { item -> Pair(item.title, item) }
+                .map { item -> Pair(titleKeys.getKey(item.title), item) }
                 .sortedByWithDirection(direction) { it.first }
                 .map { it.second }
 
@@ -31,10 +33,10 @@ class SortByTitleStrategy : SortStrategy {
                 .map { item ->
                     when (item) {
                         is Group -> {
-                            Pair(item.title, item)
+                            Pair(titleKeys.getKey(item.title), item)
                         }
                         is Note -> {
-                            Pair(item.title, item)
+                            Pair(titleKeys.getKey(item.title), item)
                         }
                         else -> throw IllegalStateException()
                     }
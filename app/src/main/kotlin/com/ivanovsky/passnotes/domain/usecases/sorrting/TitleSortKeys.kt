@@ -0,0 +1,34 @@
+package com.ivanovsky.passnotes.domain.usecases.sorrting
+
+import java.text.CollationKey
+import java.text.Collator
+
+/**
+ * Collation keys of titles. Keys are cached by title, because creating a key is much more
+ * expensive than comparing keys.
+ */
+class TitleSortKeys {
+
+    private val collator = Collator.getInstance()
+    private val keys = HashMap<String, CollationKey>()
+
+    fun getKey(title: String): CollationKey {
+        return synchronized(this) {
+            if (keys.size >= MAX_SIZE) {
+                keys.clear()
+            }
+
+            keys.getOrPut(title) { collator.getCollationKey(title) }
+        }
+    }
+
+    fun clear() {
+        synchronized(this) {
+            keys.clear()
+        }
+    }
+
+    companion object {
+        private const val MAX_SIZE = 50_000
+    }
+}
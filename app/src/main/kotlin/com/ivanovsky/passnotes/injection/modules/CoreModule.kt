@@ -20,6 +20,7 @@ import com.ivanovsky.passnotes.domain.LocaleProvider
 import com.ivanovsky.passnotes.domain.NoteDiffer
 import com.ivanovsky.passnotes.domain.PermissionHelper
 import com.ivanovsky.passnotes.domain.ResourceProvider
+import com.ivanovsky.passnotes.domain.UploadRetryScheduler
 import com.ivanovsky.passnotes.domain.interactor.SelectionHolder
 import com.ivanovsky.passnotes.injection.AppStartDependencies
 import com.ivanovsky.passnotes.presentation.core.ThemeProvider
@@ -61,6 +62,7 @@ object CoreModule {
 
         // Files, Keepass
         single { DatabaseSyncStateProvider(get(), get(), get()) }
+        single { UploadRetryScheduler(get(), get(), get(), get()) }
         single<EncryptedDatabaseRepository> {
             KeepassDatabaseRepository(get(), get(), get(), get())
         }
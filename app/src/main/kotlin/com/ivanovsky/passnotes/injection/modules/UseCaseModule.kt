@@ -57,12 +57,12 @@ object UseCaseModule {
             single { RemoveUsedFileUseCase(get(), get(), get(), get()) }
             single { GetUsedFileUseCase(get(), get()) }
             single { UpdateUsedFileUseCase(get(), get()) }
-            single { SortGroupsAndNotesUseCase(get(), get()) }
+            single { SortGroupsAndNotesUseCase(get(), get(), get(), get()) }
             single { GeneratePasswordUseCase() }
             single { RemoveBiometricDataUseCase(get(), get(), get()) }
             single { DecodePasswordWithBiometricUseCase(get()) }
             single { EncodePasswordWithBiometricUseCase(get()) }
-            single { SearchUseCases(get(), get(), get()) }
+            single { SearchUseCases(get(), get(), get(), get()) }
             single { FindParentGroupsUseCase(get(), get()) }
             single { GetDiffUseCase(get()) }
             single { GetHistoryUseCase(get(), get()) }
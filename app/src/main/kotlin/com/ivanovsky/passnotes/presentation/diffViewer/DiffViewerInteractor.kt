@@ -213,6 +213,9 @@ class DiffViewerInteractor(
             val openedDb = getDbUseCase.getDatabaseSynchronously().toEither().bind()
             val fsProvider = fileSystemResolver.resolveProvider(openedDb.getFile().fsAuthority)
 
+            // Changes scheduled for commit should be in the file before it is read
+            openedDb.commitScheduler.flush().bind()
+
             val db = dbRepository.read(
                 KeepassImplementation.KOTPASS,
                 openedDb.getKey(),
@@ -11,6 +11,8 @@ import android.view.MenuItem
 import android.view.View
 import android.view.ViewGroup
 import androidx.lifecycle.ViewModelProvider
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
 import com.github.terrakok.cicerone.Router
 import com.ivanovsky.passnotes.R
 import com.ivanovsky.passnotes.data.entity.FileDescriptor
@@ -110,6 +112,19 @@ class GroupsFragment : BaseFragment(), PermissionRequestResultReceiver {
         )
         binding.recyclerView.adapter = adapter
         binding.recyclerView.itemAnimator = null
+        binding.recyclerView.addOnScrollListener(
+            object : RecyclerView.OnScrollListener() {
+                override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                    val layoutManager = recyclerView.layoutManager as? LinearLayoutManager
+                        ?: return
+
+                    val position = layoutManager.findLastVisibleItemPosition()
+
+                    // Adapter can't be updated inside of scroll callback
+                    recyclerView.post { viewModel.onListScrolled(position) }
+                }
+            }
+        )
 
         syncIconAnimation = AnimationFactory.createRotationAnimation(binding.syncStateView.syncIcon)
             .apply {
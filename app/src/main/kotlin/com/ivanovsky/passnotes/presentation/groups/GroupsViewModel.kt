@@ -85,6 +85,9 @@ import com.ivanovsky.passnotes.util.toUUID
 import java.util.Deque
 import java.util.LinkedList
 import java.util.UUID
+import kotlin.math.max
+import kotlin.math.min
+import kotlinx.coroutines.CoroutineStart
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.Job
 import kotlinx.coroutines.delay
@@ -182,9 +185,19 @@ class GroupsViewModel(
     private var isSearchModeEnabled = false
     private var isFillNavigationStack = false
     private var currentEntries: List<EncryptedDatabaseEntry> = emptyList()
+
+    // Cells are created page by page while the list is scrolled, [pagedEntries] are
+    // displayed entries and [pagedCellViewModels] contain cells of the first
+    // [pagedEntryCount] of them
+    private var pagedEntries: List<EncryptedDatabaseEntry> = emptyList()
+    private var pagedEntryCount = 0
+    private var pagedCellViewModels: List<BaseCellViewModel> = emptyList()
     private var searchableEntries: List<EncryptedDatabaseEntry>? = null
     private var navigationPanelGroups: List<Group> = emptyList()
     private var loadDataJob: Job? = null
+    private var updateNotesJob: Job? = null
+    private val pendingNoteUids = HashSet<UUID>()
+    private var isGroupReloadPending = false
     private var searchOptions = MutableStateFlow<SearchOptions?>(null)
 
     init {
@@ -222,17 +235,26 @@ class GroupsViewModel(
         loadData()
     }
 
-    override fun onNoteDataSetChanged(groupUid: UUID) {
+    override fun onNoteDataSetChanged(groupUid: UUID, noteUids: Set<UUID>?) {
         searchableEntries = null
-        if (groupUid == getCurrentGroupUid()) {
-            loadData()
+        val isChildGroup = currentEntries.any { entry ->
+            entry is Group && entry.uid == groupUid
+        }
+
+        when {
+            groupUid == getCurrentGroupUid() && noteUids != null -> {
+                updateNotes(noteUids, isReloadGroups = false)
+            }
+            groupUid == getCurrentGroupUid() -> loadData()
+            // Note count of the child group is changed
+            isChildGroup -> updateNotes(emptySet(), isReloadGroups = true)
         }
     }
 
     override fun onNoteContentChanged(groupUid: UUID, oldNoteUid: UUID, newNoteUid: UUID) {
         searchableEntries = null
         if (groupUid == getCurrentGroupUid()) {
-            loadData()
+            updateNotes(setOf(oldNoteUid, newNoteUid), isReloadGroups = false)
         }
     }
 
@@ -267,6 +289,7 @@ class GroupsViewModel(
         setScreenState(ScreenState.loading())
 
         loadDataJob?.cancel()
+        clearPendingUpdates()
         loadDataJob = viewModelScope.launch {
             if (loadTemplates().isFailed) {
                 return@launch
@@ -295,7 +318,15 @@ class GroupsViewModel(
             }
 
             val getEntriesResult = when {
-                isSearchModeEnabled -> loadSearchEntries(searchQuery.value ?: EMPTY)
+                isSearchModeEnabled -> {
+                    loadSearchEntries(searchQuery.value ?: EMPTY) { partialEntries ->
+                        if (partialEntries.isNotEmpty()) {
+                            setPagedEntries(partialEntries, isResetScroll)
+                            setScreenState(ScreenState.data())
+                        }
+                    }
+                }
+
                 currentGroupUid == null -> interactor.getRootEntries()
                 else -> interactor.getGroupEntries(currentGroupUid ?: EMPTY_UUID)
             }
@@ -308,10 +339,7 @@ class GroupsViewModel(
                 }
 
                 if (currentEntries.isNotEmpty()) {
-                    cells.value = CellsData(
-                        isResetScroll = isResetScroll,
-                        viewModels = createCellViewModels(currentEntries)
-                    )
+                    setPagedEntries(currentEntries, isResetScroll)
                     setScreenState(ScreenState.data())
                 } else {
                     val emptyText = if (isSearchModeEnabled) {
@@ -334,6 +362,86 @@ class GroupsViewModel(
         }
     }
 
+    /**
+     * Reloads only notes with [noteUids] and updates their cells, other cells are kept.
+     * Group cells are reloaded if [isReloadGroups] is set or if some of the notes left the
+     * current group. Changes that come while an update is running are applied by the same
+     * update. Falls back to [loadData] if the screen is not in the data state.
+     */
+    private fun updateNotes(noteUids: Set<UUID>, isReloadGroups: Boolean) {
+        val groupUid = getCurrentGroupUid()
+        val isUpdating = (loadDataJob != null && loadDataJob === updateNotesJob)
+        if (groupUid == null ||
+            isSearchModeEnabled ||
+            (loadDataJob != null && !isUpdating) ||
+            screenState.value?.isDisplayingData != true
+        ) {
+            loadData()
+            return
+        }
+
+        pendingNoteUids.addAll(noteUids)
+        isGroupReloadPending = isGroupReloadPending || isReloadGroups
+        if (isUpdating) {
+            return
+        }
+
+        // Started after it is stored, so it can't finish before that
+        val job = viewModelScope.launch(start = CoroutineStart.LAZY) {
+            var isFailed = false
+            while (!isFailed && (pendingNoteUids.isNotEmpty() || isGroupReloadPending)) {
+                val changedNoteUids = pendingNoteUids.toSet()
+                val isReloadGroupsNeeded = isGroupReloadPending
+                pendingNoteUids.clear()
+                isGroupReloadPending = false
+
+                val updateResult = interactor.updateGroupEntries(
+                    groupUid = groupUid,
+                    entries = currentEntries,
+                    noteUids = changedNoteUids,
+                    isReloadGroups = isReloadGroupsNeeded
+                )
+                if (updateResult.isSucceeded) {
+                    currentEntries = updateResult.getOrThrow()
+                } else {
+                    setErrorState(updateResult.error)
+                    isFailed = true
+                }
+            }
+
+            if (!isFailed) {
+                if (currentEntries.isNotEmpty()) {
+                    setPagedEntries(currentEntries, isResetScroll = false)
+                } else {
+                    setScreenState(
+                        ScreenState.empty(resourceProvider.getString(R.string.no_items))
+                    )
+                }
+            }
+
+            clearPendingUpdates()
+            loadDataJob = null
+        }
+
+        updateNotesJob = job
+        loadDataJob = job
+        job.start()
+    }
+
+    private fun clearPendingUpdates() {
+        pendingNoteUids.clear()
+        isGroupReloadPending = false
+        updateNotesJob = null
+    }
+
+    fun onListScrolled(lastVisibleCellPosition: Int) {
+        if (pagedEntryCount < pagedEntries.size &&
+            lastVisibleCellPosition + PREFETCH_CELL_COUNT >= pagedCellViewModels.size
+        ) {
+            loadNextPage(isResetScroll = false)
+        }
+    }
+
     fun onAddButtonClicked() {
         showNewEntryDialogEvent.call(templates ?: emptyList())
     }
@@ -1018,8 +1126,13 @@ class GroupsViewModel(
         visibleMenuItems.value = getVisibleMenuItems()
     }
 
+    /**
+     * @param onPartialResult is called with intermediate results while search is in progress,
+     * the complete result is returned
+     */
     private suspend fun loadSearchEntries(
-        query: String
+        query: String,
+        onPartialResult: (List<EncryptedDatabaseEntry>) -> Unit
     ): OperationResult<List<EncryptedDatabaseEntry>> {
         var allEntries = searchableEntries
         if (allEntries == null) {
@@ -1042,11 +1155,20 @@ class GroupsViewModel(
         }
 
         val searchEntries = if (query.isNotEmpty()) {
+            var lastEntries: List<EncryptedDatabaseEntry>? = null
+
+            // Collection is cancelled with [loadDataJob] when the query is changed
             interactor.filterEntries(
                 options = getSearchOptions(),
                 entries = allEntries,
                 query = query
             )
+                .collect { entries ->
+                    lastEntries?.let { onPartialResult.invoke(it) }
+                    lastEntries = entries
+                }
+
+            lastEntries ?: emptyList()
         } else {
             allEntries
         }
@@ -1153,11 +1275,59 @@ class GroupsViewModel(
         }
     }
 
-    private fun createCellViewModels(
-        data: List<EncryptedDatabaseEntry>
-    ): List<BaseCellViewModel> {
-        val models = cellModelFactory.createCellModels(data)
-        return cellViewModelFactory.createCellViewModels(models, eventProvider)
+    private fun setPagedEntries(
+        entries: List<EncryptedDatabaseEntry>,
+        isResetScroll: Boolean
+    ) {
+        // After reload of the same list, already scrolled pages stay loaded
+        val minEntryCount = if (isResetScroll) PAGE_SIZE else max(pagedEntryCount, PAGE_SIZE)
+
+        // Cells of unchanged entries are reused, so adapter rebinds only changed cells
+        val reusableViewModels = pagedCellViewModels
+            .filter { viewModel -> viewModel.model.id != null }
+            .associateBy { viewModel -> viewModel.model.id }
+
+        pagedEntries = entries
+        pagedEntryCount = 0
+        pagedCellViewModels = emptyList()
+
+        loadNextPage(
+            isResetScroll = isResetScroll,
+            pageSize = minEntryCount,
+            reusableViewModels = reusableViewModels
+        )
+    }
+
+    private fun loadNextPage(
+        isResetScroll: Boolean,
+        pageSize: Int = PAGE_SIZE,
+        reusableViewModels: Map<Any?, BaseCellViewModel> = emptyMap()
+    ) {
+        val start = pagedEntryCount
+        val end = min(start + pageSize, pagedEntries.size)
+        val isLastPage = (end == pagedEntries.size)
+
+        val models = cellModelFactory.createCellModels(
+            items = pagedEntries.subList(start, end),
+            isLastPage = isLastPage
+        )
+
+        val viewModels = models.map { model ->
+            val reusableViewModel = reusableViewModels[model.id]
+            if (reusableViewModel != null && reusableViewModel.model == model) {
+                reusableViewModel
+            } else {
+                cellViewModelFactory.createCellViewModel(model, eventProvider)
+            }
+        }
+
+        pagedEntryCount = end
+        pagedCellViewModels = pagedCellViewModels + viewModels
+
+        cells.value = CellsData(
+            isResetScroll = isResetScroll,
+            viewModels = pagedCellViewModels
+        )
     }
 
     override fun setScreenState(state: ScreenState) {
@@ -1305,5 +1475,7 @@ class GroupsViewModel(
     companion object {
         private val EMPTY_UUID = UUID(0, 0)
         private const val SEARCH_DELAY = 300L
+        private const val PAGE_SIZE = 100
+        private const val PREFETCH_CELL_COUNT = 50
     }
 }
\ No newline at end of file
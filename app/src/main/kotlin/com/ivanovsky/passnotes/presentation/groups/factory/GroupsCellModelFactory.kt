@@ -22,7 +22,17 @@ class GroupsCellModelFactory(
     private val resourceProvider: ResourceProvider
 ) : CellModelFactory<List<EncryptedDatabaseEntry>> {
 
-    override fun createCellModels(items: List<EncryptedDatabaseEntry>): List<BaseCellModel> {
+    override fun createCellModels(items: List<EncryptedDatabaseEntry>): List<BaseCellModel> =
+        createCellModels(items, isLastPage = true)
+
+    /**
+     * Creates cells for a page of entries, each entry is followed by a divider and
+     * the space cell is added only after the last page
+     */
+    fun createCellModels(
+        items: List<EncryptedDatabaseEntry>,
+        isLastPage: Boolean
+    ): List<BaseCellModel> {
         val result = mutableListOf<BaseCellModel>()
 
         for (item in items) {
@@ -50,7 +60,9 @@ class GroupsCellModelFactory(
             result.add(createDividerCell())
         }
 
-        result.add(createSpaceCell())
+        if (isLastPage) {
+            result.add(createSpaceCell())
+        }
 
         return result
     }
@@ -1,5 +1,7 @@
 package com.ivanovsky.passnotes.util
 
+import android.system.ErrnoException
+import android.system.Os
 import android.webkit.MimeTypeMap
 import arrow.core.Either
 import arrow.core.catch
@@ -18,6 +20,7 @@ import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.io.IOException
 import java.util.UUID
+import timber.log.Timber
 
 object FileUtils {
 
@@ -98,6 +101,26 @@ object FileUtils {
         InputOutputUtils.copyOrThrow(input, output, true)
     }
 
+    /**
+     * Creates hard link to [source] at [destination], if the file system doesn't support
+     * hard links the file is copied. Linked files share the content, so [source] should be
+     * replaced instead of being modified in place afterwards.
+     */
+    @JvmStatic
+    @Throws(IOException::class)
+    fun linkOrCopyFileOrThrow(source: File, destination: File) {
+        if (destination.exists() && !destination.delete()) {
+            throw IOException("Failed to delete file: ${destination.path}")
+        }
+
+        try {
+            Os.link(source.path, destination.path)
+        } catch (exception: ErrnoException) {
+            Timber.d("Failed to create link, file will be copied: %s", exception.message)
+            copyFileOrThrow(source, destination)
+        }
+    }
+
     fun copyFile(
         source: File,
         destination: File
@@ -106,6 +129,27 @@ object FileUtils {
             .catch { copyFileOrThrow(source, destination) }
             .mapLeft { exception -> OperationError.newGenericIOError(exception) }
 
+    /**
+     * Opens new file at [file] path instead of truncating the existing one, so hard links
+     * to the previous content, e.g. created by [linkOrCopyFileOrThrow], are not modified.
+     */
+    @Throws(IOException::class)
+    fun newReplacingFileOutputStream(file: File): FileOutputStream {
+        if (file.exists() && !file.delete()) {
+            throw IOException("Failed to delete file: ${file.path}")
+        }
+
+        return FileOutputStream(file)
+    }
+
+    fun linkOrCopyFile(
+        source: File,
+        destination: File
+    ): Either<OperationError, Unit> =
+        Either
+            .catch { linkOrCopyFileOrThrow(source, destination) }
+            .mapLeft { exception -> OperationError.newGenericIOError(exception) }
+
     @JvmStatic
     fun createPath(parentPath: String, name: String): String {
         return if (parentPath.endsWith(SEPARATOR)) {
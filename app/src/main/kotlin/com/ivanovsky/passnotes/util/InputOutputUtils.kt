@@ -14,6 +14,7 @@ import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.io.OutputStream
+import java.nio.ByteBuffer
 import java.util.concurrent.atomic.AtomicBoolean
 import kotlin.Throws
 import timber.log.Timber
@@ -193,4 +194,105 @@ object InputOutputUtils {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads [source] into a direct [ByteBuffer], which is allocated outside of the Java heap.
+     * Returned buffer is flipped and ready to be read.
+     *
+     * If [source] is backed by a file, buffer is allocated once with the size of the file.
+     * Otherwise data is collected in heap chunks and copied to the buffer of the exact size,
+     * direct buffers are never reallocated because they are freed only by GC.
+     */
+    @JvmStatic
+    fun readAllBytesToDirectBuffer(
+        source: InputStream,
+        isCloseOnFinish: Boolean
+    ): Either<OperationError, ByteBuffer> {
+        return try {
+            val buffer = readFileToDirectBuffer(source)
+                ?: readChunksToDirectBuffer(source, prefix = null)
+
+            buffer.flip()
+            buffer.right()
+        } catch (e: IOException) {
+            Timber.e(e)
+            newGenericIOError(e).left()
+        } finally {
+            if (isCloseOnFinish) {
+                close(source)
+            }
+        }
+    }
+
+    private fun readFileToDirectBuffer(source: InputStream): ByteBuffer? {
+        if (source !is FileInputStream) {
+            return null
+        }
+
+        val channel = source.channel
+        val length = try {
+            channel.size() - channel.position()
+        } catch (e: IOException) {
+            // Pipes and sockets don't have a size
+            Timber.d(e)
+            return null
+        }
+
+        if (length <= 0 || length >= Int.MAX_VALUE) {
+            return null
+        }
+
+        val buffer = ByteBuffer.allocateDirect(length.toInt())
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            // read until the buffer is full or the end of the file is reached
+        }
+
+        return if (buffer.hasRemaining()) {
+            buffer
+        } else {
+            // File could be extended after its size was checked
+            readChunksToDirectBuffer(source, prefix = buffer)
+        }
+    }
+
+    private fun readChunksToDirectBuffer(
+        source: InputStream,
+        prefix: ByteBuffer?
+    ): ByteBuffer {
+        val chunks = mutableListOf<ByteArray>()
+        var lastChunkSize = 0
+        var totalSize = prefix?.position() ?: 0
+
+        while (true) {
+            if (chunks.isEmpty() || lastChunkSize == BUFFER_SIZE) {
+                chunks.add(ByteArray(BUFFER_SIZE))
+                lastChunkSize = 0
+            }
+
+            val count = source.read(chunks.last(), lastChunkSize, BUFFER_SIZE - lastChunkSize)
+            if (count < 0) {
+                break
+            }
+
+            lastChunkSize += count
+            totalSize += count
+        }
+
+        if (prefix != null && totalSize == prefix.position()) {
+            return prefix
+        }
+
+        val buffer = ByteBuffer.allocateDirect(totalSize)
+        if (prefix != null) {
+            prefix.flip()
+            buffer.put(prefix)
+        }
+
+        for ((index, chunk) in chunks.withIndex()) {
+            val size = if (index == chunks.lastIndex) lastChunkSize else BUFFER_SIZE
+            buffer.put(chunk, 0, size)
+        }
+
+        return buffer
+    }
+}
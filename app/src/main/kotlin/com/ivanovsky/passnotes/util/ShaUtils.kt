@@ -2,15 +2,35 @@ package com.ivanovsky.passnotes.util
 
 import com.ivanovsky.passnotes.data.entity.Hash
 import com.ivanovsky.passnotes.data.entity.HashType
+import java.io.InputStream
 import java.security.MessageDigest
 
 object ShaUtils {
 
     private const val SHA_256 = "SHA-256"
+    private const val BUFFER_SIZE = 8 * 1024
 
     fun sha256(bytes: ByteArray): Hash {
         val digest = MessageDigest.getInstance(SHA_256)
         val sha = digest.digest(bytes)
         return Hash(sha, HashType.SHA_256)
     }
-}
\ No newline at end of file
+
+    /**
+     * Calculates hash without reading the whole [input] to memory, [input] is closed.
+     */
+    fun sha256(input: InputStream): Hash {
+        val digest = MessageDigest.getInstance(SHA_256)
+
+        input.use {
+            val buffer = ByteArray(BUFFER_SIZE)
+            var read = input.read(buffer)
+            while (read != -1) {
+                digest.update(buffer, 0, read)
+                read = input.read(buffer)
+            }
+        }
+
+        return Hash(digest.digest(), HashType.SHA_256)
+    }
+}
@@ -0,0 +1,61 @@
+package com.ivanovsky.passnotes.data.entity
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class PropertyTest {
+
+    @Test
+    fun `createLazy should resolve value only once on access`() {
+        // arrange
+        var invocationCount = 0
+        val property = Property.createLazy(
+            type = PropertyType.PASSWORD,
+            name = PropertyType.PASSWORD.propertyName,
+            isProtected = true,
+            valueProvider = {
+                invocationCount++
+                VALUE
+            }
+        )
+
+        // act
+        val copy = property.copy(isProtected = false)
+        val countBeforeAccess = invocationCount
+        val values = listOf(property.value, copy.value)
+
+        // assert
+        assertThat(countBeforeAccess).isEqualTo(0)
+        assertThat(invocationCount).isEqualTo(1)
+        assertThat(values).isEqualTo(listOf(VALUE, VALUE))
+    }
+
+    @Test
+    fun `equals should compare lazy and eager properties by value`() {
+        // arrange
+        val lazyProperty = Property.createLazy(
+            type = PropertyType.PASSWORD,
+            name = PropertyType.PASSWORD.propertyName,
+            isProtected = true,
+            valueProvider = { VALUE }
+        )
+        val property = Property(
+            type = PropertyType.PASSWORD,
+            name = PropertyType.PASSWORD.propertyName,
+            value = VALUE,
+            isProtected = true
+        )
+
+        // act
+        val isEqual = lazyProperty == property
+
+        // assert
+        assertThat(isEqual).isTrue()
+        assertThat(lazyProperty.hashCode()).isEqualTo(property.hashCode())
+        assertThat(lazyProperty.toString()).doesNotContain(VALUE)
+    }
+
+    companion object {
+        private const val VALUE = "secret"
+    }
+}
@@ -0,0 +1,75 @@
+package com.ivanovsky.passnotes.data.repository
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.entity.RemoteFile
+import com.ivanovsky.passnotes.data.repository.db.dao.RemoteFileDao
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import org.junit.Test
+
+class RemoteFileRepositoryTest {
+
+    private val dao: RemoteFileDao = mockk(relaxUnitFun = true)
+    private val repository = RemoteFileRepository(dao)
+
+    @Test
+    fun `findByUid should query database only once`() {
+        // arrange
+        val file = newRemoteFile(id = 1L, uid = UID, remotePath = REMOTE_PATH)
+        every { dao.getByUid(UID) } returns listOf(file)
+
+        // act
+        repository.findByUid(UID, FS_AUTHORITY)
+        val result = repository.findByUid(UID, FS_AUTHORITY)
+
+        // assert
+        assertThat(result).isEqualTo(file)
+        verify(exactly = 1) { dao.getByUid(UID) }
+    }
+
+    @Test
+    fun `findByUid should return updated file`() {
+        // arrange
+        val file = newRemoteFile(id = 1L, uid = UID, remotePath = REMOTE_PATH)
+        every { dao.getByUid(UID) } returns listOf(file)
+        every { dao.getByRemotePath(REMOTE_PATH) } returns listOf(file)
+        repository.findByUid(UID, FS_AUTHORITY)
+        repository.findByRemotePath(REMOTE_PATH, FS_AUTHORITY)
+
+        val updatedFile = file.copy().apply {
+            remotePath = NEW_REMOTE_PATH
+            isLocallyModified = true
+        }
+
+        // act
+        repository.update(updatedFile)
+
+        // assert
+        assertThat(repository.findByUid(UID, FS_AUTHORITY)).isEqualTo(updatedFile)
+        assertThat(repository.findByRemotePath(REMOTE_PATH, FS_AUTHORITY)).isNull()
+        verify(exactly = 1) { dao.getByUid(UID) }
+        verify(exactly = 1) { dao.getByRemotePath(REMOTE_PATH) }
+    }
+
+    private fun newRemoteFile(
+        id: Long,
+        uid: String,
+        remotePath: String
+    ): RemoteFile =
+        RemoteFile().apply {
+            this.id = id
+            this.uid = uid
+            this.remotePath = remotePath
+            this.fsAuthority = FS_AUTHORITY
+        }
+
+    companion object {
+        private const val UID = "uid"
+        private const val REMOTE_PATH = "/remote/file.kdbx"
+        private const val NEW_REMOTE_PATH = "/remote/new-file.kdbx"
+
+        private val FS_AUTHORITY = FSAuthority.INTERNAL_FS_AUTHORITY
+    }
+}
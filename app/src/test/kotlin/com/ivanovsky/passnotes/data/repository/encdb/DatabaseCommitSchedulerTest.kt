@@ -0,0 +1,112 @@
+package com.ivanovsky.passnotes.data.repository.encdb
+
+import arrow.core.Either
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.data.entity.OperationError
+import com.ivanovsky.passnotes.domain.entity.exception.Stacktrace
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.Test
+
+class DatabaseCommitSchedulerTest {
+
+    private val commitCount = AtomicInteger(0)
+
+    @Test
+    fun `flush should write burst of requests with single commit`() {
+        // arrange
+        val scheduler = newScheduler()
+        repeat(30) {
+            scheduler.requestCommit()
+        }
+
+        // act
+        val result = scheduler.flush()
+
+        // assert
+        assertThat(result).isEqualTo(Either.Right(true))
+        assertThat(commitCount.get()).isEqualTo(1)
+        assertThat(scheduler.hasPendingCommits()).isFalse()
+        assertThat(scheduler.getStatistics().commitCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `flush should not commit if there are no requests`() {
+        // arrange
+        val scheduler = newScheduler()
+
+        // act
+        scheduler.flush()
+
+        // assert
+        assertThat(commitCount.get()).isEqualTo(0)
+    }
+
+    @Test
+    fun `requestCommit should be rejected after close`() {
+        // arrange
+        val scheduler = newScheduler()
+        scheduler.requestCommit()
+
+        // act
+        scheduler.close()
+        val result = scheduler.requestCommit()
+
+        // assert
+        assertThat(commitCount.get()).isEqualTo(1)
+        assertThat(result.isLeft()).isTrue()
+    }
+
+    @Test
+    fun `failed commit should be reported and retried`() {
+        // arrange
+        val failedAttempts = AtomicInteger(0)
+        val reportedErrors = CopyOnWriteArrayList<OperationError>()
+        val retryLatch = CountDownLatch(1)
+        val scheduler = DatabaseCommitScheduler(
+            commitAction = {
+                if (failedAttempts.getAndIncrement() == 0) {
+                    Either.Left(ERROR)
+                } else {
+                    retryLatch.countDown()
+                    Either.Right(true)
+                }
+            },
+            onCommitFailed = { error -> reportedErrors.add(error) },
+            quietPeriodInMillis = LONG_DELAY,
+            maxDelayInMillis = LONG_DELAY,
+            retryDelayInMillis = SHORT_DELAY
+        )
+        scheduler.requestCommit()
+
+        // act
+        val result = scheduler.flush()
+
+        // assert
+        assertThat(result).isEqualTo(Either.Left(ERROR))
+        assertThat(reportedErrors).containsExactly(ERROR)
+        assertThat(retryLatch.await(TIMEOUT, TimeUnit.MILLISECONDS)).isTrue()
+        assertThat(scheduler.flush()).isEqualTo(Either.Right(true))
+        assertThat(scheduler.hasPendingCommits()).isFalse()
+        scheduler.close()
+    }
+
+    private fun newScheduler(): DatabaseCommitScheduler =
+        DatabaseCommitScheduler(
+            commitAction = {
+                commitCount.incrementAndGet()
+                Either.Right(true)
+            },
+            quietPeriodInMillis = LONG_DELAY,
+            maxDelayInMillis = LONG_DELAY
+        )
+
+    companion object {
+        private const val LONG_DELAY = 60_000L
+        private const val SHORT_DELAY = 10L
+        private const val TIMEOUT = 5_000L
+        private val ERROR = OperationError.newDbError("Test error", Stacktrace())
+    }
+}
@@ -0,0 +1,134 @@
+package com.ivanovsky.passnotes.data.repository.file.remote
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.entity.FileDescriptor
+import com.ivanovsky.passnotes.data.entity.OperationError
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.entity.RemoteFileMetadata
+import com.ivanovsky.passnotes.domain.entity.exception.Stacktrace
+import java.util.Date
+import org.junit.Test
+
+class RemoteApiClientTest {
+
+    @Test
+    fun `downloadFileIfChanged should not download file with the same revision`() {
+        // arrange
+        val client = FakeRemoteApiClient(
+            metadata = OperationResult.success(newMetadata(REVISION))
+        )
+
+        // act
+        val result = client.downloadFileIfChanged(
+            file = FILE,
+            remotePath = FILE.path,
+            revision = REVISION,
+            destinationPath = DESTINATION_PATH,
+            progressListener = null
+        )
+
+        // assert
+        assertThat(result.isSucceeded).isTrue()
+        assertThat(result.obj).isNull()
+        assertThat(client.downloadedPaths).isEmpty()
+    }
+
+    @Test
+    fun `downloadFileIfChanged should download file with other revision`() {
+        // arrange
+        val metadata = newMetadata(NEW_REVISION)
+        val client = FakeRemoteApiClient(metadata = OperationResult.success(metadata))
+
+        // act
+        val result = client.downloadFileIfChanged(
+            file = FILE,
+            remotePath = FILE.path,
+            revision = REVISION,
+            destinationPath = DESTINATION_PATH,
+            progressListener = null
+        )
+
+        // assert
+        assertThat(result.obj).isEqualTo(metadata)
+        assertThat(client.downloadedPaths).containsExactly(FILE.path to DESTINATION_PATH)
+    }
+
+    @Test
+    fun `downloadFileIfChanged should return error if metadata is not available`() {
+        // arrange
+        val error = OperationError.newNetworkIOError(Stacktrace())
+        val client = FakeRemoteApiClient(metadata = OperationResult.error(error))
+
+        // act
+        val result = client.downloadFileIfChanged(
+            file = FILE,
+            remotePath = FILE.path,
+            revision = REVISION,
+            destinationPath = DESTINATION_PATH,
+            progressListener = null
+        )
+
+        // assert
+        assertThat(result.isFailedDueToNetwork).isTrue()
+        assertThat(client.downloadedPaths).isEmpty()
+    }
+
+    private class FakeRemoteApiClient(
+        private val metadata: OperationResult<RemoteFileMetadata>
+    ) : RemoteApiClient {
+
+        val downloadedPaths = mutableListOf<Pair<String, String>>()
+
+        override fun getFileMetadata(file: FileDescriptor): OperationResult<RemoteFileMetadata> =
+            metadata
+
+        override fun downloadFile(
+            remotePath: String,
+            destinationPath: String,
+            progressListener: DownloadProgressListener?
+        ): OperationResult<RemoteFileMetadata> {
+            downloadedPaths.add(remotePath to destinationPath)
+            return metadata
+        }
+
+        override fun listFiles(dir: FileDescriptor): OperationResult<List<FileDescriptor>> =
+            throw UnsupportedOperationException()
+
+        override fun getParent(file: FileDescriptor): OperationResult<FileDescriptor> =
+            throw UnsupportedOperationException()
+
+        override fun getRoot(): OperationResult<FileDescriptor> =
+            throw UnsupportedOperationException()
+
+        override fun uploadFile(
+            remotePath: String,
+            localPath: String
+        ): OperationResult<RemoteFileMetadata> =
+            throw UnsupportedOperationException()
+    }
+
+    private fun newMetadata(revision: String): RemoteFileMetadata =
+        RemoteFileMetadata(
+            uid = FILE.uid,
+            path = FILE.path,
+            serverModified = Date(0),
+            clientModified = Date(0),
+            revision = revision
+        )
+
+    companion object {
+        private const val REVISION = "\"revision\""
+        private const val NEW_REVISION = "\"new-revision\""
+        private const val DESTINATION_PATH = "/cache/file.kdbx"
+
+        private val FILE = FileDescriptor(
+            fsAuthority = FSAuthority.INTERNAL_FS_AUTHORITY,
+            path = "/dir/file.kdbx",
+            uid = "/dir/file.kdbx",
+            name = "file.kdbx",
+            isDirectory = false,
+            isRoot = false
+        )
+    }
+}
@@ -0,0 +1,84 @@
+package com.ivanovsky.passnotes.data.repository.file.remote
+
+import com.google.common.truth.Truth.assertThat
+import java.util.UUID
+import org.junit.Test
+
+class StatusMapTest {
+
+    @Test
+    fun `claim should register unit if file is not processed`() {
+        // arrange
+        val statusMap = StatusMap()
+
+        // act
+        val latch = statusMap.claim(newUnit(FILE_UID))
+
+        // assert
+        assertThat(latch).isNull()
+    }
+
+    @Test
+    fun `claim should return latch of running unit with the same file uid`() {
+        // arrange
+        val statusMap = StatusMap()
+        val runningUnit = newUnit(FILE_UID)
+        statusMap.claim(runningUnit)
+
+        // act
+        val latch = statusMap.claim(newUnit(FILE_UID))
+
+        // assert
+        assertThat(latch).isNotNull()
+        assertThat(latch?.count).isEqualTo(1L)
+        assertThat(statusMap.claim(newUnit(OTHER_FILE_UID))).isNull()
+    }
+
+    @Test
+    fun `release should count down latch and allow next claim`() {
+        // arrange
+        val statusMap = StatusMap()
+        val runningUnit = newUnit(FILE_UID)
+        statusMap.claim(runningUnit)
+        val latch = statusMap.claim(newUnit(FILE_UID))
+
+        // act
+        val releasedUnit = statusMap.release(runningUnit.processingUid)
+
+        // assert
+        assertThat(releasedUnit).isEqualTo(runningUnit)
+        assertThat(latch?.count).isEqualTo(0L)
+        assertThat(statusMap.claim(newUnit(FILE_UID))).isNull()
+    }
+
+    @Test
+    fun `release should ignore unit that was not claimed`() {
+        // arrange
+        val statusMap = StatusMap()
+        val runningUnit = newUnit(FILE_UID)
+        val rejectedUnit = newUnit(FILE_UID)
+        statusMap.claim(runningUnit)
+        statusMap.claim(rejectedUnit)
+
+        // act
+        val releasedUnit = statusMap.release(rejectedUnit.processingUid)
+
+        // assert
+        assertThat(releasedUnit).isNull()
+        assertThat(statusMap.claim(newUnit(FILE_UID))).isNotNull()
+    }
+
+    private fun newUnit(fileUid: String): ProcessingUnit {
+        return ProcessingUnit(
+            processingUid = UUID.randomUUID(),
+            status = ProcessingStatus.DOWNLOADING,
+            fileUid = fileUid,
+            remotePath = "/$fileUid.kdbx"
+        )
+    }
+
+    companion object {
+        private const val FILE_UID = "file-uid"
+        private const val OTHER_FILE_UID = "other-file-uid"
+    }
+}
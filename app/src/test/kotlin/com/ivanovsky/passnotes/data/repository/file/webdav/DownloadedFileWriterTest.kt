@@ -0,0 +1,123 @@
+package com.ivanovsky.passnotes.data.repository.file.webdav
+
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import java.security.MessageDigest
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.asResponseBody
+import okhttp3.ResponseBody.Companion.toResponseBody
+import okio.Buffer
+import org.junit.Assert.assertThrows
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+class DownloadedFileWriterTest {
+
+    @get:Rule
+    var folder = TemporaryFolder()
+
+    @Test
+    fun `write should replace destination with downloaded data`() {
+        // arrange
+        val destination = newDestination()
+        val response = newResponse(checksum = "SHA1:${DATA.sha1()}")
+
+        // act
+        DownloadedFileWriter(progressListener = null).write(response, destination)
+
+        // assert
+        assertThat(destination.readBytes()).isEqualTo(DATA)
+        assertThat(folder.root.list()).asList().containsExactly(destination.name)
+    }
+
+    @Test
+    fun `write should throw verification error if checksum is not matched`() {
+        // arrange
+        val destination = newDestination()
+        val response = newResponse(checksum = "SHA1:${OLD_DATA.sha1()}")
+
+        // act
+        assertThrows(DownloadVerificationException::class.java) {
+            DownloadedFileWriter(progressListener = null).write(response, destination)
+        }
+
+        // assert
+        assertThat(destination.readBytes()).isEqualTo(OLD_DATA)
+        assertThat(folder.root.list()).asList().containsExactly(destination.name)
+    }
+
+    @Test
+    fun `write should throw verification error if body is truncated`() {
+        // arrange
+        val destination = newDestination()
+        val body = Buffer()
+            .write(DATA)
+            .asResponseBody(MEDIA_TYPE.toMediaType(), contentLength = DATA.size + 1L)
+        val response = newResponseBuilder()
+            .body(body)
+            .build()
+
+        // act
+        assertThrows(DownloadVerificationException::class.java) {
+            DownloadedFileWriter(progressListener = null).write(response, destination)
+        }
+
+        // assert
+        assertThat(destination.readBytes()).isEqualTo(OLD_DATA)
+        assertThat(folder.root.list()).asList().containsExactly(destination.name)
+    }
+
+    @Test
+    fun `write should ignore unsupported checksum`() {
+        // arrange
+        val destination = newDestination()
+        val response = newResponse(checksum = "ADLER32:00000000")
+
+        // act
+        DownloadedFileWriter(progressListener = null).write(response, destination)
+
+        // assert
+        assertThat(destination.readBytes()).isEqualTo(DATA)
+    }
+
+    private fun newDestination(): File {
+        return folder.newFile(FILE_NAME).apply {
+            writeBytes(OLD_DATA)
+        }
+    }
+
+    private fun newResponse(checksum: String): Response {
+        return newResponseBuilder()
+            .header(HEADER_OC_CHECKSUM, checksum)
+            .body(DATA.toResponseBody(MEDIA_TYPE.toMediaType()))
+            .build()
+    }
+
+    private fun newResponseBuilder(): Response.Builder {
+        return Response.Builder()
+            .request(Request.Builder().url(URL).build())
+            .protocol(Protocol.HTTP_1_1)
+            .code(200)
+            .message("OK")
+    }
+
+    private fun ByteArray.sha1(): String {
+        return MessageDigest.getInstance("SHA-1")
+            .digest(this)
+            .joinToString(separator = "") { byte -> "%02x".format(byte) }
+    }
+
+    companion object {
+        private const val URL = "https://cloud.example.com/remote.php/webdav/file.kdbx"
+        private const val FILE_NAME = "file.kdbx"
+        private const val MEDIA_TYPE = "application/octet-stream"
+        private const val HEADER_OC_CHECKSUM = "OC-Checksum"
+
+        private val DATA = "new database content".toByteArray()
+        private val OLD_DATA = "old database content".toByteArray()
+    }
+}
@@ -0,0 +1,96 @@
+package com.ivanovsky.passnotes.data.repository.file.webdav
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.data.repository.file.webdav.NextcloudUploadProtocol.Chunk
+import org.junit.Test
+
+class NextcloudUploadProtocolTest {
+
+    @Test
+    fun `getUploadsUrl should return uploads url for files url`() {
+        // arrange
+        val fileUrl = "$SERVER_URL/remote.php/dav/files/$USER_ID/dir/file.kdbx"
+
+        // act
+        val url = NextcloudUploadProtocol.getUploadsUrl(fileUrl, USERNAME)
+
+        // assert
+        assertThat(url).isEqualTo("$SERVER_URL/remote.php/dav/uploads/$USER_ID")
+    }
+
+    @Test
+    fun `getUploadsUrl should use username for legacy url`() {
+        // arrange
+        val fileUrl = "$SERVER_URL/remote.php/webdav/dir/file.kdbx"
+
+        // act
+        val url = NextcloudUploadProtocol.getUploadsUrl(fileUrl, USERNAME)
+
+        // assert
+        assertThat(url).isEqualTo("$SERVER_URL/remote.php/dav/uploads/$USERNAME")
+    }
+
+    @Test
+    fun `getUploadsUrl should return null for other urls`() {
+        assertThat(
+            NextcloudUploadProtocol.getUploadsUrl("$SERVER_URL/dav/file.kdbx", USERNAME)
+        ).isNull()
+        assertThat(
+            NextcloudUploadProtocol.getUploadsUrl("$SERVER_URL/remote.php/dav/files/", USERNAME)
+        ).isNull()
+    }
+
+    @Test
+    fun `chunk name should be parsed back to chunk`() {
+        // arrange
+        val name = NextcloudUploadProtocol.formatChunkName(offset = 1024L, length = 512)
+
+        // act
+        val chunk = NextcloudUploadProtocol.parseChunkOffset(name, 512L)
+
+        // assert
+        assertThat(name).isEqualTo("000000000001024-000000000001535")
+        assertThat(chunk).isEqualTo(Chunk(offset = 1024L, length = 512L))
+    }
+
+    @Test
+    fun `parseChunkOffset should skip unknown files and files without length`() {
+        assertThat(NextcloudUploadProtocol.parseChunkOffset(".file", 512L)).isNull()
+        assertThat(NextcloudUploadProtocol.parseChunkOffset("000000000000000-1", null)).isNull()
+    }
+
+    @Test
+    fun `getContiguousLength should stop at the first gap`() {
+        // arrange
+        val chunks = listOf(
+            Chunk(offset = 200L, length = 100L),
+            Chunk(offset = 0L, length = 100L),
+            Chunk(offset = 400L, length = 100L),
+            Chunk(offset = 100L, length = 100L)
+        )
+
+        // act
+        val length = NextcloudUploadProtocol.getContiguousLength(chunks)
+
+        // assert
+        assertThat(length).isEqualTo(300L)
+    }
+
+    @Test
+    fun `getContiguousLength should return 0 if first chunk is missing`() {
+        // arrange
+        val chunks = listOf(Chunk(offset = 100L, length = 100L))
+
+        // act
+        val length = NextcloudUploadProtocol.getContiguousLength(chunks)
+
+        // assert
+        assertThat(length).isEqualTo(0L)
+    }
+
+    companion object {
+        private const val SERVER_URL = "https://cloud.example.com"
+        private const val USER_ID = "user-id"
+        private const val USERNAME = "username"
+    }
+}
@@ -0,0 +1,103 @@
+package com.ivanovsky.passnotes.data.repository.keepass.keepassrs
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Entry as RawEntry
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Group as RawGroup
+import java.util.UUID
+import org.junit.Test
+
+class KeepassRsIndexTest {
+
+    @Test
+    fun `build should index all groups and entries`() {
+        // arrange
+        val root = newTree()
+
+        // act
+        val index = KeepassRsIndex.build(root)
+
+        // assert
+        assertThat(index.rootUid).isEqualTo(ROOT_UID)
+        assertThat(index.getGroupPath(ROOT_UID)).isEmpty()
+        assertThat(index.getGroupPath(CHILD_UID)).containsExactly(GROUP_UID, CHILD_UID).inOrder()
+        assertThat(index.getParentUid(CHILD_UID)).isEqualTo(GROUP_UID)
+        assertThat(index.getEntryGroupUid(ENTRY_UID)).isEqualTo(CHILD_UID)
+        assertThat(index.isGroupExist(OTHER_GROUP_UID)).isTrue()
+    }
+
+    @Test
+    fun `onGroupRemoved should remove all nodes of group tree`() {
+        // arrange
+        val root = newTree()
+        val index = KeepassRsIndex.build(root)
+
+        // act
+        index.onGroupRemoved(root.groupsList.first())
+
+        // assert
+        assertThat(index.isGroupExist(GROUP_UID)).isFalse()
+        assertThat(index.isGroupExist(CHILD_UID)).isFalse()
+        assertThat(index.getEntryGroupUid(ENTRY_UID)).isNull()
+        assertThat(index.isGroupExist(OTHER_GROUP_UID)).isTrue()
+    }
+
+    @Test
+    fun `onGroupMoved should change path of group tree`() {
+        // arrange
+        val index = KeepassRsIndex.build(newTree())
+
+        // act
+        index.onGroupMoved(CHILD_UID, OTHER_GROUP_UID)
+
+        // assert
+        assertThat(index.getGroupPath(CHILD_UID))
+            .containsExactly(OTHER_GROUP_UID, CHILD_UID)
+            .inOrder()
+        assertThat(index.getEntryGroupUid(ENTRY_UID)).isEqualTo(CHILD_UID)
+    }
+
+    @Test
+    fun `rebuild should drop changes`() {
+        // arrange
+        val root = newTree()
+        val index = KeepassRsIndex.build(root)
+        index.onGroupMoved(CHILD_UID, OTHER_GROUP_UID)
+        index.onEntryRemoved(ENTRY_UID)
+
+        // act
+        index.rebuild(root)
+
+        // assert
+        assertThat(index.getParentUid(CHILD_UID)).isEqualTo(GROUP_UID)
+        assertThat(index.getEntryGroupUid(ENTRY_UID)).isEqualTo(CHILD_UID)
+    }
+
+    companion object {
+        private val ROOT_UID = UUID(0L, 1L)
+        private val GROUP_UID = UUID(0L, 2L)
+        private val CHILD_UID = UUID(0L, 3L)
+        private val OTHER_GROUP_UID = UUID(0L, 4L)
+        private val ENTRY_UID = UUID(0L, 5L)
+
+        // root -> group -> child -> entry
+        //      -> other group
+        private fun newTree(): RawGroup {
+            val child = newGroup(CHILD_UID)
+                .toBuilder()
+                .addEntries(RawEntry.newBuilder().setUuid(ENTRY_UID.toByteString()))
+                .build()
+
+            return newGroup(ROOT_UID)
+                .toBuilder()
+                .addGroups(newGroup(GROUP_UID).toBuilder().addGroups(child))
+                .addGroups(newGroup(OTHER_GROUP_UID))
+                .build()
+        }
+
+        private fun newGroup(uid: UUID): RawGroup {
+            return RawGroup.newBuilder()
+                .setUuid(uid.toByteString())
+                .build()
+        }
+    }
+}
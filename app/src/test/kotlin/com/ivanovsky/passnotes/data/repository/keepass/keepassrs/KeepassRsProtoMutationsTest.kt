@@ -0,0 +1,166 @@
+package com.ivanovsky.passnotes.data.repository.keepass.keepassrs
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Database as RawDatabase
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Entry as RawEntry
+import com.ivanovsky.passnotes.keepassrs.proto.v1.Group as RawGroup
+import java.util.UUID
+import org.junit.Test
+
+class KeepassRsProtoMutationsTest {
+
+    @Test
+    fun `putGroup should move group tree to new parent`() {
+        // arrange
+        val database = newDatabase()
+        val index = KeepassRsIndex.build(database.rootGroup)
+        val child = database.rootGroup.getGroupAt(listOf(GROUP_UID, CHILD_UID))!!
+        val mutation = putGroupMutation(
+            parentUid = OTHER_GROUP_UID,
+            group = child.toBuilder()
+                .setName("Moved")
+                .clearEntries()
+                .build()
+        )
+
+        // act
+        val result = database.applyMutation(mutation, index).getOrNull()!!
+
+        // assert
+        val root = result.rootGroup
+        assertThat(root.getGroupAt(listOf(GROUP_UID))!!.groupsList).isEmpty()
+        val movedGroup = root.getGroupAt(listOf(OTHER_GROUP_UID, CHILD_UID))!!
+        assertThat(movedGroup.name).isEqualTo("Moved")
+        assertThat(movedGroup.parentUuid).isEqualTo(OTHER_GROUP_UID.toByteString())
+        assertThat(movedGroup.entriesList.map { it.uuid }).containsExactly(ENTRY_UID.toByteString())
+        assertThat(index.getGroupPath(CHILD_UID))
+            .containsExactly(OTHER_GROUP_UID, CHILD_UID)
+            .inOrder()
+        assertThat(index.getEntryGroupUid(ENTRY_UID)).isEqualTo(CHILD_UID)
+    }
+
+    @Test
+    fun `putEntry should move entry to new group`() {
+        // arrange
+        val database = newDatabase()
+        val index = KeepassRsIndex.build(database.rootGroup)
+        val mutation = putEntryMutation(OTHER_GROUP_UID, newEntry(ENTRY_UID))
+
+        // act
+        val result = database.applyMutation(mutation, index).getOrNull()!!
+
+        // assert
+        val root = result.rootGroup
+        assertThat(root.getGroupAt(listOf(GROUP_UID, CHILD_UID))!!.entriesList).isEmpty()
+        val entries = root.getGroupAt(listOf(OTHER_GROUP_UID))!!.entriesList
+        assertThat(entries.map { it.uuid }).containsExactly(ENTRY_UID.toByteString())
+        assertThat(entries.first().parentGroupUuid).isEqualTo(OTHER_GROUP_UID.toByteString())
+        assertThat(index.getEntryGroupUid(ENTRY_UID)).isEqualTo(OTHER_GROUP_UID)
+    }
+
+    @Test
+    fun `applyMutation should return error if node is missing`() {
+        // arrange
+        val database = newDatabase()
+        val index = KeepassRsIndex.build(database.rootGroup)
+
+        // act
+        val result = database.applyMutation(removeEntryMutation(UNKNOWN_UID), index)
+
+        // assert
+        assertThat(result.isLeft()).isTrue()
+    }
+
+    @Test
+    fun `validateMutations should reject whole batch if node is missing`() {
+        // arrange
+        val index = KeepassRsIndex.build(newDatabase().rootGroup)
+        val mutations = listOf(
+            putEntryMutation(OTHER_GROUP_UID, newEntry(UNKNOWN_UID)),
+            removeGroupMutation(UNKNOWN_UID)
+        )
+
+        // act
+        val result = index.validateMutations(mutations)
+
+        // assert
+        assertThat(result.isLeft()).isTrue()
+        assertThat(index.getEntryGroupUid(UNKNOWN_UID)).isNull()
+    }
+
+    @Test
+    fun `validateMutations should take previous mutations of batch into account`() {
+        // arrange
+        val index = KeepassRsIndex.build(newDatabase().rootGroup)
+        val removeThenUpdate = listOf(
+            removeGroupMutation(GROUP_UID),
+            removeEntryMutation(ENTRY_UID)
+        )
+        val insertThenUpdate = listOf(
+            putEntryMutation(OTHER_GROUP_UID, newEntry(UNKNOWN_UID)),
+            removeEntryMutation(UNKNOWN_UID)
+        )
+
+        // act
+        val removeThenUpdateResult = index.validateMutations(removeThenUpdate)
+        val insertThenUpdateResult = index.validateMutations(insertThenUpdate)
+
+        // assert
+        assertThat(removeThenUpdateResult.isLeft()).isTrue()
+        assertThat(insertThenUpdateResult.isRight()).isTrue()
+    }
+
+    @Test
+    fun `validateMutations should reject moving group inside its own tree`() {
+        // arrange
+        val database = newDatabase()
+        val index = KeepassRsIndex.build(database.rootGroup)
+        val group = database.rootGroup.getGroupAt(listOf(GROUP_UID))!!
+
+        // act
+        val result = index.validateMutations(listOf(putGroupMutation(CHILD_UID, group)))
+
+        // assert
+        assertThat(result.isLeft()).isTrue()
+    }
+
+    companion object {
+        private val ROOT_UID = UUID(0L, 1L)
+        private val GROUP_UID = UUID(0L, 2L)
+        private val CHILD_UID = UUID(0L, 3L)
+        private val OTHER_GROUP_UID = UUID(0L, 4L)
+        private val ENTRY_UID = UUID(0L, 5L)
+        private val UNKNOWN_UID = UUID(0L, 6L)
+
+        // root -> group -> child -> entry
+        //      -> other group
+        private fun newDatabase(): RawDatabase {
+            val child = newGroup(CHILD_UID)
+                .toBuilder()
+                .addEntries(newEntry(ENTRY_UID))
+                .build()
+
+            val root = newGroup(ROOT_UID)
+                .toBuilder()
+                .addGroups(newGroup(GROUP_UID).toBuilder().addGroups(child))
+                .addGroups(newGroup(OTHER_GROUP_UID))
+                .build()
+
+            return RawDatabase.newBuilder()
+                .setRootGroup(root)
+                .build()
+        }
+
+        private fun newGroup(uid: UUID): RawGroup {
+            return RawGroup.newBuilder()
+                .setUuid(uid.toByteString())
+                .build()
+        }
+
+        private fun newEntry(uid: UUID): RawEntry {
+            return RawEntry.newBuilder()
+                .setUuid(uid.toByteString())
+                .build()
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.ivanovsky.passnotes.domain
+
+import com.google.common.truth.Truth.assertThat
+import kotlin.random.Random
+import org.junit.Test
+
+class UploadRetrySchedulerTest {
+
+    @Test
+    fun `getBackoffDelay should return jittered base delay for the first retry`() {
+        // arrange
+        val random = Random(SEED)
+
+        // act
+        val delays = List(SAMPLE_COUNT) { UploadRetryScheduler.getBackoffDelay(0, random) }
+
+        // assert
+        assertThat(delays.min()).isAtLeast(2_500L)
+        assertThat(delays.max()).isAtMost(5_000L)
+        assertThat(delays.distinct().size).isGreaterThan(1)
+    }
+
+    @Test
+    fun `getBackoffDelay should grow exponentially with retry count`() {
+        // arrange
+        val random = Random(SEED)
+
+        // act
+        val delays = List(SAMPLE_COUNT) { UploadRetryScheduler.getBackoffDelay(3, random) }
+
+        // assert
+        assertThat(delays.min()).isAtLeast(20_000L)
+        assertThat(delays.max()).isAtMost(40_000L)
+    }
+
+    @Test
+    fun `getBackoffDelay should not exceed max delay`() {
+        // arrange
+        val random = Random(SEED)
+
+        // act
+        val delays = listOf(16, 17, Int.MAX_VALUE)
+            .flatMap { retryCount ->
+                List(SAMPLE_COUNT) { UploadRetryScheduler.getBackoffDelay(retryCount, random) }
+            }
+
+        // assert
+        assertThat(delays.min()).isAtLeast(MAX_DELAY_IN_MILLIS / 2)
+        assertThat(delays.max()).isAtMost(MAX_DELAY_IN_MILLIS)
+    }
+
+    companion object {
+        private const val SEED = 42
+        private const val SAMPLE_COUNT = 100
+        private const val MAX_DELAY_IN_MILLIS = 30 * 60 * 1000L
+    }
+}
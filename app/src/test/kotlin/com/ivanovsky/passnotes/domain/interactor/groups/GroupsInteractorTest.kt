@@ -0,0 +1,146 @@
+package com.ivanovsky.passnotes.domain.interactor.groups
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.TEST_DISPATCHER_PROVIDER
+import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.InheritableBooleanOption
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
+import com.ivanovsky.passnotes.domain.usecases.GetDatabaseUseCase
+import com.ivanovsky.passnotes.domain.usecases.SortGroupsAndNotesUseCase
+import io.mockk.coEvery
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.verify
+import java.util.Date
+import java.util.UUID
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+class GroupsInteractorTest {
+
+    private val db: EncryptedDatabase = mockk()
+    private val getDbUseCase: GetDatabaseUseCase = mockk {
+        every { getDatabaseSynchronously() } returns OperationResult.success(db)
+    }
+    private val sortUseCase: SortGroupsAndNotesUseCase = mockk {
+        coEvery { sortGroupsAndNotesAccordingToSettings(any()) } answers { firstArg() }
+    }
+    private val interactor = GroupsInteractor(
+        observerBus = mockk(),
+        dispatchers = TEST_DISPATCHER_PROVIDER,
+        lockDbInteractor = mockk(),
+        lockUseCase = mockk(),
+        addTemplatesUseCase = mockk(),
+        moveNoteUseCase = mockk(),
+        moveGroupUseCae = mockk(),
+        sortUseCase = sortUseCase,
+        getDbUseCase = getDbUseCase,
+        getUsedFileUseCase = mockk(),
+        updateUsedFileUseCase = mockk(),
+        removeBiometricDataUseCase = mockk(),
+        encodePasswordUseCase = mockk(),
+        searchUseCases = mockk(),
+        findParentGroupsUseCase = mockk(),
+        getGroupUseCase = mockk(),
+        exportDbUseCae = mockk()
+    )
+
+    @Test
+    fun `updateGroupEntries should reload groups if note is moved to child group`() = runTest {
+        // arrange
+        val child = newGroup(uid = CHILD_UID, noteCount = 0)
+        val note = newNote(uid = NOTE_UID, groupUid = GROUP_UID)
+        val movedNote = note.copy(groupUid = CHILD_UID)
+        val updatedChild = child.copy(noteCount = 1)
+        every { db.noteDao.getNoteSummaryByUid(NOTE_UID) } returns
+            OperationResult.success(movedNote)
+        every { db.groupDao.getChildGroups(GROUP_UID) } returns
+            OperationResult.success(listOf(updatedChild))
+
+        // act
+        val result = interactor.updateGroupEntries(
+            groupUid = GROUP_UID,
+            entries = listOf(child, note),
+            noteUids = setOf(NOTE_UID),
+            isReloadGroups = false
+        )
+
+        // assert
+        assertThat(result.obj).containsExactly(updatedChild)
+        assertThat((result.obj.first() as Group).noteCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `updateGroupEntries should keep groups if note is changed in the group`() = runTest {
+        // arrange
+        val child = newGroup(uid = CHILD_UID, noteCount = 0)
+        val note = newNote(uid = NOTE_UID, groupUid = GROUP_UID)
+        val otherNote = newNote(uid = OTHER_NOTE_UID, groupUid = GROUP_UID)
+        val changedNote = note.copy(title = "Changed")
+        every { db.noteDao.getNoteSummaryByUid(NOTE_UID) } returns
+            OperationResult.success(changedNote)
+
+        // act
+        val result = interactor.updateGroupEntries(
+            groupUid = GROUP_UID,
+            entries = listOf(child, note, otherNote),
+            noteUids = setOf(NOTE_UID),
+            isReloadGroups = false
+        )
+
+        // assert
+        assertThat(result.obj).containsExactly(child, otherNote, changedNote)
+        verify(exactly = 0) { db.groupDao.getChildGroups(any()) }
+    }
+
+    @Test
+    fun `updateGroupEntries should reload groups if it is requested`() = runTest {
+        // arrange
+        val child = newGroup(uid = CHILD_UID, noteCount = 0)
+        val note = newNote(uid = NOTE_UID, groupUid = GROUP_UID)
+        val updatedChild = child.copy(noteCount = 1)
+        every { db.groupDao.getChildGroups(GROUP_UID) } returns
+            OperationResult.success(listOf(updatedChild))
+
+        // act
+        val result = interactor.updateGroupEntries(
+            groupUid = GROUP_UID,
+            entries = listOf(child, note),
+            noteUids = emptySet(),
+            isReloadGroups = true
+        )
+
+        // assert
+        assertThat(result.obj).containsExactly(updatedChild, note)
+    }
+
+    private fun newGroup(uid: UUID, noteCount: Int): Group =
+        Group(
+            uid = uid,
+            parentUid = GROUP_UID,
+            title = "Child",
+            groupCount = 0,
+            noteCount = noteCount,
+            autotypeEnabled = InheritableBooleanOption.ENABLED,
+            searchEnabled = InheritableBooleanOption.ENABLED
+        )
+
+    private fun newNote(uid: UUID, groupUid: UUID): Note =
+        Note(
+            uid = uid,
+            groupUid = groupUid,
+            created = Date(0),
+            modified = Date(0),
+            expiration = null,
+            title = "Note"
+        )
+
+    companion object {
+        private val GROUP_UID = UUID(0, 1)
+        private val CHILD_UID = UUID(0, 2)
+        private val NOTE_UID = UUID(0, 3)
+        private val OTHER_NOTE_UID = UUID(0, 4)
+    }
+}
@@ -2,6 +2,7 @@ package com.ivanovsky.passnotes.domain.search
 
 import com.google.common.truth.Truth.assertThat
 import com.ivanovsky.passnotes.data.entity.Attachment
+import com.ivanovsky.passnotes.data.entity.ByteArrayAttachmentContent
 import com.ivanovsky.passnotes.data.entity.Group
 import com.ivanovsky.passnotes.data.entity.Hash
 import com.ivanovsky.passnotes.data.entity.HashType
@@ -170,6 +171,36 @@ class Fzf4jFuzzyEntryMatcherTest {
         assertThat(result).containsExactly(note)
     }
 
+    @Test
+    fun `match should narrow previous result if query is extended`() {
+        // arrange
+        val github = newNote(title = "Github")
+        val gitlab = newNote(title = "Gitlab")
+        val entries = listOf(github, gitlab)
+        matcher.match(SearchOptions.DEFAULT, "git", entries)
+
+        // act
+        val result = matcher.match(SearchOptions.DEFAULT, "gith", entries)
+
+        // assert
+        assertThat(result).containsExactly(github)
+    }
+
+    @Test
+    fun `match should search all entries if query is not extended`() {
+        // arrange
+        val github = newNote(title = "Github")
+        val gitlab = newNote(title = "Gitlab")
+        val entries = listOf(github, gitlab)
+        matcher.match(SearchOptions.DEFAULT, "gith", entries)
+
+        // act
+        val result = matcher.match(SearchOptions.DEFAULT, "gitl", entries)
+
+        // assert
+        assertThat(result).containsExactly(gitlab)
+    }
+
     private fun newNote(
         title: String,
         properties: List<Property> = emptyList(),
@@ -213,6 +244,6 @@ class Fzf4jFuzzyEntryMatcherTest {
             uid = UUID.randomUUID().toString(),
             name = name,
             hash = Hash("hash".toByteArray(), HashType.SHA_256),
-            data = byteArrayOf()
+            content = ByteArrayAttachmentContent(byteArrayOf())
         )
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.ivanovsky.passnotes.domain.search
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.data.entity.EncryptedDatabaseEntry
+import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.InheritableBooleanOption
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.entity.Property
+import com.ivanovsky.passnotes.data.entity.PropertyType
+import com.ivanovsky.passnotes.domain.entity.SearchOptions
+import java.util.Date
+import java.util.UUID
+import org.junit.Test
+
+class SearchIndexTest {
+
+    @Test
+    fun `filterCandidates should return entries containing query ignoring case`() {
+        // arrange
+        val github = newNote(title = "GitHub")
+        val gitlab = newNote(title = "GitLab")
+        val group = newGroup(title = "Hub")
+        val index = newIndex(github, gitlab, group)
+
+        // act
+        val result = index.filterCandidates(
+            SearchOptions.DEFAULT,
+            "ithu",
+            listOf(github, gitlab, group)
+        )
+
+        // assert
+        assertThat(result).containsExactly(github)
+    }
+
+    @Test
+    fun `filterCandidates should use updated entry`() {
+        // arrange
+        val note = newNote(title = "Old title")
+        val index = newIndex(note)
+        val updatedNote = note.copy(properties = listOf(newProperty(PropertyType.TITLE, "New")))
+
+        // act
+        index.put(updatedNote)
+        val oldResult = index.filterCandidates(SearchOptions.DEFAULT, "old", listOf(updatedNote))
+        val newResult = index.filterCandidates(SearchOptions.DEFAULT, "new", listOf(updatedNote))
+
+        // assert
+        assertThat(oldResult).isEmpty()
+        assertThat(newResult).containsExactly(updatedNote)
+    }
+
+    @Test
+    fun `filterCandidates should return all entries if query is too short`() {
+        // arrange
+        val note = newNote(title = "Note")
+        val index = newIndex(note)
+
+        // act
+        val result = index.filterCandidates(SearchOptions.DEFAULT, "ab", listOf(note))
+
+        // assert
+        assertThat(result).isNull()
+    }
+
+    @Test
+    fun `filterCandidates should not index passwords`() {
+        // arrange
+        val note = newNote(
+            title = "Note",
+            properties = listOf(newProperty(PropertyType.PASSWORD, "secret"))
+        )
+        val index = newIndex(note)
+        val options = SearchOptions.DEFAULT.copy(isPasswordEnabled = true)
+
+        // act
+        val defaultResult = index.filterCandidates(SearchOptions.DEFAULT, "secret", listOf(note))
+        val passwordResult = index.filterCandidates(options, "secret", listOf(note))
+
+        // assert
+        assertThat(defaultResult).isEmpty()
+        assertThat(passwordResult).isNull()
+    }
+
+    @Test
+    fun `remove should remove entry from index`() {
+        // arrange
+        val note = newNote(title = "GitHub")
+        val index = newIndex(note)
+
+        // act
+        index.remove(note.uid!!)
+
+        // assert
+        assertThat(index.filterCandidates(SearchOptions.DEFAULT, "git", listOf(note)))
+            .containsExactly(note)
+    }
+
+    @Test
+    fun `filterCandidates should return remaining entries after compaction`() {
+        // arrange
+        val removedNotes = (1..100).map { number -> newNote(title = "Removed $number") }
+        val github = newNote(title = "GitHub")
+        val gitlab = newNote(title = "GitLab")
+        val index = newIndex(*(removedNotes + github + gitlab).toTypedArray())
+
+        // act
+        for (note in removedNotes) {
+            index.remove(note.uid!!)
+        }
+        val gitResult = index.filterCandidates(SearchOptions.DEFAULT, "git", listOf(github, gitlab))
+        val hubResult = index.filterCandidates(SearchOptions.DEFAULT, "hub", listOf(github, gitlab))
+
+        // assert
+        assertThat(gitResult).containsExactly(github, gitlab)
+        assertThat(hubResult).containsExactly(github)
+    }
+
+    private fun newIndex(vararg entries: EncryptedDatabaseEntry) =
+        SearchIndex().apply {
+            for (entry in entries) {
+                put(entry)
+            }
+        }
+
+    private fun newNote(
+        title: String,
+        properties: List<Property> = emptyList()
+    ): Note =
+        Note(
+            uid = UUID.randomUUID(),
+            groupUid = UUID.randomUUID(),
+            created = Date(0),
+            modified = Date(0),
+            expiration = null,
+            title = title,
+            properties = listOf(newProperty(PropertyType.TITLE, title)) + properties
+        )
+
+    private fun newGroup(title: String): Group =
+        Group(
+            uid = UUID.randomUUID(),
+            parentUid = null,
+            title = title,
+            groupCount = 0,
+            noteCount = 0,
+            autotypeEnabled = InheritableBooleanOption.ENABLED,
+            searchEnabled = InheritableBooleanOption.ENABLED
+        )
+
+    private fun newProperty(type: PropertyType, value: String): Property =
+        Property(
+            type = type,
+            name = type.propertyName,
+            value = value
+        )
+}
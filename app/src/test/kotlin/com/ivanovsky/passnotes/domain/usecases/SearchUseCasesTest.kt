@@ -0,0 +1,127 @@
+package com.ivanovsky.passnotes.domain.usecases
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.TEST_DISPATCHER_PROVIDER
+import com.ivanovsky.passnotes.data.entity.EncryptedDatabaseEntry
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.entity.OperationError
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.entity.Property
+import com.ivanovsky.passnotes.data.entity.PropertyType
+import com.ivanovsky.passnotes.domain.entity.SearchOptions
+import com.ivanovsky.passnotes.domain.entity.SearchType
+import com.ivanovsky.passnotes.domain.entity.exception.Stacktrace
+import io.mockk.every
+import io.mockk.mockk
+import java.util.Date
+import java.util.UUID
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+class SearchUseCasesTest {
+
+    private val getDbUseCase: GetDatabaseUseCase = mockk {
+        every { getDatabase() } returns OperationResult.error(
+            OperationError.newDbError("Database is not opened", Stacktrace())
+        )
+    }
+    private val useCase = SearchUseCases(
+        dispatchers = TEST_DISPATCHER_PROVIDER,
+        getDbUseCase = getDbUseCase,
+        sortUseCase = mockk(),
+        observerBus = mockk(relaxed = true)
+    )
+
+    @Test
+    fun `filterEntries should return all entries if query is empty`() = runTest {
+        // arrange
+        val entries = listOf(newNote(title = "GitHub"), newNote(title = "GitLab"))
+
+        // act
+        val result = useCase.filterEntries(SearchOptions.DEFAULT, entries, "").toList()
+
+        // assert
+        assertThat(result).containsExactly(entries)
+    }
+
+    @Test
+    fun `filterEntries should emit growing results and all matches at the end`() = runTest {
+        // arrange
+        val entries = (1..ENTRY_COUNT).map { number ->
+            if (number % 2 == 0) {
+                newNote(title = "GitHub $number")
+            } else {
+                newNote(title = "Other $number")
+            }
+        }
+        val matchedEntries = entries.filter { entry -> (entry as Note).title.startsWith("Git") }
+
+        // act
+        val result = useCase.filterEntries(SearchOptions.DEFAULT, entries, "github").toList()
+
+        // assert
+        assertThat(result.size).isGreaterThan(1)
+        assertThat(result.map { it.size }).isInOrder()
+        assertThat(result.last()).containsExactlyElementsIn(matchedEntries).inOrder()
+    }
+
+    @Test
+    fun `filterEntries should return empty list if nothing is matched`() = runTest {
+        // arrange
+        val entries = listOf(newNote(title = "GitHub"))
+
+        // act
+        val result = useCase.filterEntries(SearchOptions.DEFAULT, entries, "gitlab").toList()
+
+        // assert
+        assertThat(result.last()).isEmpty()
+    }
+
+    @Test
+    fun `filterEntries should place fuzzy title matches first across parts`() = runTest {
+        // arrange
+        val urlMatch = newNote(
+            title = "Other",
+            properties = listOf(newProperty(PropertyType.URL, "https://github.com"))
+        )
+        val fillers = (1..ENTRY_COUNT).map { number -> newNote(title = "Filler $number") }
+        val titleMatch = newNote(title = "GitHub")
+        val entries = listOf(urlMatch) + fillers + titleMatch
+        val options = SearchOptions.DEFAULT.copy(searchType = SearchType.FUZZY)
+
+        // act
+        val result = useCase.filterEntries(options, entries, "github").toList()
+
+        // assert
+        assertThat(result.last()).containsExactly(titleMatch, urlMatch).inOrder()
+    }
+
+    private fun newNote(
+        title: String,
+        properties: List<Property> = emptyList()
+    ): EncryptedDatabaseEntry =
+        Note(
+            uid = UUID.randomUUID(),
+            groupUid = GROUP_UID,
+            created = Date(0),
+            modified = Date(0),
+            expiration = null,
+            title = title,
+            properties = listOf(newProperty(PropertyType.TITLE, title)) + properties
+        )
+
+    private fun newProperty(type: PropertyType, value: String): Property =
+        Property(
+            type = type,
+            name = type.propertyName,
+            value = value
+        )
+
+    companion object {
+        private val GROUP_UID = UUID(0, 1)
+
+        // Larger than a single part, so entries are matched in several parts
+        private const val ENTRY_COUNT = 1000
+    }
+}
@@ -0,0 +1,105 @@
+package com.ivanovsky.passnotes.domain.usecases
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.TEST_DISPATCHER_PROVIDER
+import com.ivanovsky.passnotes.data.ObserverBus
+import com.ivanovsky.passnotes.data.entity.Group
+import com.ivanovsky.passnotes.data.entity.Note
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.repository.encdb.ContentWatcher
+import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
+import com.ivanovsky.passnotes.domain.entity.SortDirection
+import com.ivanovsky.passnotes.domain.entity.SortType
+import io.mockk.every
+import io.mockk.mockk
+import java.util.Date
+import java.util.UUID
+import kotlinx.coroutines.test.runTest
+import org.junit.Test
+
+class SortGroupsAndNotesUseCaseTest {
+
+    private val noteWatcher = ContentWatcher<Note>()
+    private val groupWatcher = ContentWatcher<Group>()
+    private val db: EncryptedDatabase = mockk {
+        every { noteDao.contentWatcher } returns noteWatcher
+        every { groupDao.contentWatcher } returns groupWatcher
+    }
+    private val getDbUseCase: GetDatabaseUseCase = mockk {
+        every { getDatabaseSynchronously() } returns OperationResult.success(db)
+    }
+    private val useCase = SortGroupsAndNotesUseCase(
+        settings = mockk(),
+        dispatchers = TEST_DISPATCHER_PROVIDER,
+        getDbUseCase = getDbUseCase,
+        observerBus = mockk(relaxed = true)
+    )
+
+    @Test
+    fun `sortGroupsAndNotes should sort titles ignoring case`() = runTest {
+        // arrange
+        val b = newNote(title = "b")
+        val a = newNote(title = "A")
+        val c = newNote(title = "c")
+
+        // act
+        val result = sortByTitle(listOf(b, a, c))
+
+        // assert
+        assertThat(result).containsExactly(a, b, c).inOrder()
+    }
+
+    @Test
+    fun `sortGroupsAndNotes should sort again after note is changed`() = runTest {
+        // arrange
+        val first = newNote(title = "A")
+        val second = newNote(title = "B")
+        sortByTitle(listOf(second, first))
+
+        val changedFirst = first.copy(title = "C")
+        noteWatcher.notifyEntryChanged(first, changedFirst)
+
+        // act
+        val result = sortByTitle(listOf(second, changedFirst))
+
+        // assert
+        assertThat(result).containsExactly(second, changedFirst).inOrder()
+    }
+
+    @Test
+    fun `sortGroupsAndNotes should not use cached order for changed entries`() = runTest {
+        // arrange
+        val first = newNote(title = "A")
+        val second = newNote(title = "B")
+        sortByTitle(listOf(second, first))
+
+        // act
+        val changedFirst = first.copy(title = "C")
+        val result = sortByTitle(listOf(second, changedFirst))
+
+        // assert
+        assertThat(result).containsExactly(second, changedFirst).inOrder()
+    }
+
+    private suspend fun sortByTitle(items: List<Note>) =
+        useCase.sortGroupsAndNotes(
+            items = items,
+            sortType = SortType.TITLE,
+            direction = SortDirection.ASCENDING,
+            isGroupsAtStart = true
+        )
+
+    private fun newNote(title: String): Note =
+        Note(
+            uid = UUID.randomUUID(),
+            groupUid = GROUP_UID,
+            created = Date(0),
+            modified = Date(0),
+            expiration = null,
+            title = title
+        )
+
+    companion object {
+        private val GROUP_UID = UUID(0, 1)
+    }
+}
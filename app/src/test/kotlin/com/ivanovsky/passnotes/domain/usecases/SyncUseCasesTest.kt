@@ -0,0 +1,181 @@
+package com.ivanovsky.passnotes.domain.usecases
+
+import com.google.common.truth.Truth.assertThat
+import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.entity.FSCredentials
+import com.ivanovsky.passnotes.data.entity.FSType
+import com.ivanovsky.passnotes.data.entity.FileDescriptor
+import com.ivanovsky.passnotes.data.entity.KeyType
+import com.ivanovsky.passnotes.data.entity.OperationError
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.entity.UsedFile
+import com.ivanovsky.passnotes.data.repository.UsedFileRepository
+import com.ivanovsky.passnotes.data.repository.file.FileSystemProvider
+import com.ivanovsky.passnotes.data.repository.file.FileSystemResolver
+import com.ivanovsky.passnotes.domain.DispatcherProvider
+import com.ivanovsky.passnotes.domain.entity.exception.Stacktrace
+import io.mockk.every
+import io.mockk.mockk
+import java.io.ByteArrayInputStream
+import java.io.InputStream
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.runBlocking
+import org.junit.Test
+
+class SyncUseCasesTest {
+
+    private val runningSyncs = ConcurrentHashMap<FSAuthority, AtomicInteger>()
+    private val maxRunningSyncs = ConcurrentHashMap<FSAuthority, Int>()
+    private val runningTotal = AtomicInteger()
+    private val maxRunningTotal = AtomicInteger()
+    private val syncedFileUids = ConcurrentHashMap.newKeySet<String>()
+
+    @Test
+    fun `syncChanges should sync all files and return the first error`() = runBlocking {
+        // arrange
+        val files = (1..3).map { number -> newUsedFile(WEBDAV_AUTHORITY, "file-$number") }
+        val useCase = newUseCase(files, failedFileUids = setOf("file-2"))
+
+        // act
+        val result = useCase.syncChanges()
+
+        // assert
+        assertThat(result.leftOrNull()?.message).isEqualTo(ERROR_MESSAGE)
+        assertThat(syncedFileUids).containsExactly("file-1", "file-2", "file-3")
+    }
+
+    @Test
+    fun `syncChanges should limit parallel syncs per authority and in total`() = runBlocking {
+        // arrange
+        val gitFiles = (1..3).map { number -> newUsedFile(GIT_AUTHORITY, "git-$number") }
+        val webdavFiles = (1..6).map { number -> newUsedFile(WEBDAV_AUTHORITY, "dav-$number") }
+        val otherWebdavFiles = (1..6).map { number ->
+            newUsedFile(OTHER_WEBDAV_AUTHORITY, "other-dav-$number")
+        }
+        val useCase = newUseCase(gitFiles + webdavFiles + otherWebdavFiles)
+
+        // act
+        val result = useCase.syncChanges()
+
+        // assert
+        assertThat(result.isRight()).isTrue()
+        assertThat(syncedFileUids).hasSize(15)
+        assertThat(maxRunningSyncs[GIT_AUTHORITY]).isEqualTo(1)
+        assertThat(maxRunningSyncs[WEBDAV_AUTHORITY]).isAtMost(2)
+        assertThat(maxRunningSyncs[OTHER_WEBDAV_AUTHORITY]).isAtMost(2)
+        assertThat(maxRunningTotal.get()).isGreaterThan(1)
+        assertThat(maxRunningTotal.get()).isAtMost(4)
+    }
+
+    @Test
+    fun `syncChanges should skip files without credentials`() = runBlocking {
+        // arrange
+        val files = listOf(
+            newUsedFile(WEBDAV_AUTHORITY, "remote"),
+            newUsedFile(FSAuthority.INTERNAL_FS_AUTHORITY, "local")
+        )
+        val useCase = newUseCase(files)
+
+        // act
+        val result = useCase.syncChanges()
+
+        // assert
+        assertThat(result.isRight()).isTrue()
+        assertThat(syncedFileUids).containsExactly("remote")
+    }
+
+    private fun newUseCase(
+        files: List<UsedFile>,
+        failedFileUids: Set<String> = emptySet()
+    ): SyncUseCases {
+        val usedFileRepository: UsedFileRepository = mockk {
+            every { getAll() } returns files
+        }
+        val fileSystemResolver: FileSystemResolver = mockk {
+            every { resolveProvider(any()) } answers {
+                newProvider(firstArg(), failedFileUids)
+            }
+        }
+
+        return SyncUseCases(
+            fileSystemResolver = fileSystemResolver,
+            dispatchers = DispatcherProvider(
+                Main = Dispatchers.Unconfined,
+                IO = Dispatchers.IO,
+                Default = Dispatchers.Default
+            ),
+            dbRepo = mockk {
+                every { getDatabase() } returns null
+            },
+            usedFileRepository = usedFileRepository
+        )
+    }
+
+    private fun newProvider(
+        fsAuthority: FSAuthority,
+        failedFileUids: Set<String>
+    ): FileSystemProvider =
+        mockk {
+            every { syncProcessor.getCachedFile(any()) } returns null
+            every { openFileForRead(any(), any(), any()) } answers {
+                val file = firstArg<FileDescriptor>()
+                simulateSync(fsAuthority, file.uid)
+
+                if (file.uid in failedFileUids) {
+                    OperationResult.error(
+                        OperationError.newGenericIOError(ERROR_MESSAGE, Stacktrace())
+                    )
+                } else {
+                    OperationResult.success<InputStream>(ByteArrayInputStream(ByteArray(0)))
+                }
+            }
+        }
+
+    private fun simulateSync(fsAuthority: FSAuthority, fileUid: String) {
+        val running = runningSyncs.getOrPut(fsAuthority) { AtomicInteger() }.incrementAndGet()
+        maxRunningSyncs.merge(fsAuthority, running) { old, new -> maxOf(old, new) }
+        maxRunningTotal.accumulateAndGet(runningTotal.incrementAndGet()) { old, new ->
+            maxOf(old, new)
+        }
+
+        Thread.sleep(SYNC_DURATION_IN_MILLIS)
+
+        runningTotal.decrementAndGet()
+        runningSyncs.getValue(fsAuthority).decrementAndGet()
+        syncedFileUids.add(fileUid)
+    }
+
+    private fun newUsedFile(fsAuthority: FSAuthority, uid: String): UsedFile =
+        UsedFile(
+            fsAuthority = fsAuthority,
+            filePath = "/$uid.kdbx",
+            fileUid = uid,
+            fileName = "$uid.kdbx",
+            isRoot = false,
+            addedTime = 0L,
+            keyType = KeyType.PASSWORD
+        )
+
+    companion object {
+        private const val ERROR_MESSAGE = "Failed to sync"
+        private const val SYNC_DURATION_IN_MILLIS = 50L
+
+        private val WEBDAV_AUTHORITY = newAuthority(FSType.WEBDAV, "https://dav.example.com")
+        private val OTHER_WEBDAV_AUTHORITY = newAuthority(FSType.WEBDAV, "https://example.org")
+        private val GIT_AUTHORITY = newAuthority(FSType.GIT, "https://git.example.com")
+
+        private fun newAuthority(type: FSType, url: String): FSAuthority =
+            FSAuthority(
+                credentials = FSCredentials.BasicCredentials(
+                    url = url,
+                    username = "user",
+                    password = "password",
+                    isIgnoreSslValidation = false
+                ),
+                type = type,
+                isBrowsable = true
+            )
+    }
+}
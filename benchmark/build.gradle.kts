@@ -0,0 +1,46 @@
+plugins {
+    alias(libs.plugins.android.test)
+    alias(libs.plugins.kotlin.android)
+}
+
+android {
+    namespace = "com.ivanovsky.passnotes.benchmark"
+    compileSdk = 36
+
+    defaultConfig {
+        minSdk = 26
+        targetSdk = 36
+        testInstrumentationRunner = "androidx.benchmark.junit4.AndroidBenchmarkRunner"
+
+        // Benchmarks run inside the app process, app is built in the debuggable variant
+        testInstrumentationRunnerArguments["androidx.benchmark.suppressErrors"] =
+            "DEBUGGABLE,EMULATOR"
+
+        missingDimensionStrategy("default", "gplay")
+    }
+
+    kotlin {
+        compilerOptions {
+            jvmToolchain(21)
+        }
+    }
+
+    sourceSets {
+        getByName("main") {
+            java.srcDir("src/main/kotlin")
+        }
+    }
+
+    targetProjectPath = ":app"
+}
+
+dependencies {
+    implementation(libs.androidx.benchmark.junit4)
+    implementation(libs.androidx.test.ext.junit)
+    implementation(libs.androidx.test.rules)
+    implementation(libs.truth)
+
+    implementation(libs.keepass.tree.builder)
+    implementation(libs.koin.core)
+    implementation(libs.arrowCore)
+}
@@ -0,0 +1,116 @@
+package com.ivanovsky.passnotes.benchmark
+
+import com.github.aivanovski.keepasstreebuilder.DatabaseBuilderDsl
+import com.github.aivanovski.keepasstreebuilder.Fields
+import com.github.aivanovski.keepasstreebuilder.converter.kotpass.KotpassDatabaseConverter
+import com.github.aivanovski.keepasstreebuilder.generator.EntityFactory.newBinaryFrom
+import com.github.aivanovski.keepasstreebuilder.model.Database
+import com.github.aivanovski.keepasstreebuilder.model.DatabaseKey
+import com.github.aivanovski.keepasstreebuilder.model.EntryEntity
+import com.github.aivanovski.keepasstreebuilder.model.GroupEntity
+import com.ivanovsky.passnotes.data.entity.PropertyType
+import java.io.File
+import java.time.Instant
+import java.util.UUID
+
+/**
+ * Generates synthetic databases with [GROUP_COUNT] groups, entries are distributed evenly
+ * between the groups and every [ATTACHMENT_INTERVAL]th entry has an attachment.
+ */
+object BenchmarkDatabaseFactory {
+
+    const val PASSWORD = "benchmark"
+
+    const val GROUP_COUNT = 50
+    const val ATTACHMENT_INTERVAL = 20
+    const val ATTACHMENT_SIZE = 4 * 1024
+
+    /**
+     * Creates database file in [directory] or returns the existing one.
+     */
+    fun getOrCreateDatabaseFile(directory: File, entryCount: Int): File {
+        val file = File(directory, "benchmark-$entryCount.kdbx")
+        if (!file.exists()) {
+            directory.mkdirs()
+            file.writeBytes(createDatabase(entryCount))
+        }
+
+        return file
+    }
+
+    fun createDatabase(entryCount: Int): ByteArray {
+        val entriesPerGroup = (entryCount + GROUP_COUNT - 1) / GROUP_COUNT
+
+        return DatabaseBuilderDsl.newBuilder(KotpassDatabaseConverter())
+            .key(DatabaseKey.PasswordKey(PASSWORD))
+            .content(newGroup(uid = UUID(0L, 0L), title = "Database")) {
+                for (groupIndex in 0 until GROUP_COUNT) {
+                    val firstEntryIndex = groupIndex * entriesPerGroup
+                    val lastEntryIndex = minOf(firstEntryIndex + entriesPerGroup, entryCount)
+
+                    group(newGroupAt(groupIndex)) {
+                        for (entryIndex in firstEntryIndex until lastEntryIndex) {
+                            entry(newEntry(entryIndex))
+                        }
+                    }
+                }
+            }
+            .build()
+            .toByteArray()
+    }
+
+    fun getGroupUid(groupIndex: Int): UUID = UUID(1L, groupIndex.toLong())
+
+    private fun newGroupAt(groupIndex: Int): GroupEntity =
+        newGroup(
+            uid = getGroupUid(groupIndex),
+            title = "Group $groupIndex"
+        )
+
+    private fun newGroup(uid: UUID, title: String): GroupEntity =
+        GroupEntity(
+            uuid = uid,
+            fields = mapOf(
+                Fields.TITLE to title
+            )
+        )
+
+    private fun newEntry(index: Int): EntryEntity {
+        val timestamp = Instant.ofEpochMilli(BASE_TIMESTAMP + index * 1000L)
+        val attachments = if (index % ATTACHMENT_INTERVAL == 0) {
+            listOf(
+                newBinaryFrom(
+                    name = "attachment-$index.bin",
+                    content = ByteArray(ATTACHMENT_SIZE) { i -> (i + index).toByte() }
+                )
+            )
+        } else {
+            emptyList()
+        }
+
+        return EntryEntity(
+            uuid = UUID(2L, index.toLong()),
+            created = timestamp,
+            modified = timestamp,
+            expires = null,
+            fields = mapOf(
+                PropertyType.TITLE.propertyName to "Entry $index",
+                PropertyType.USER_NAME.propertyName to "user$index@example.com",
+                PropertyType.PASSWORD.propertyName to "password-$index",
+                PropertyType.URL.propertyName to "https://example.com/$index",
+                PropertyType.NOTES.propertyName to "Notes of entry $index",
+                "Custom field" to "Custom value $index"
+            ),
+            history = emptyList(),
+            binaries = attachments
+        )
+    }
+
+    private fun Database<*, *>.toByteArray(): ByteArray {
+        return contentFactory.invoke().use { input ->
+            input.readBytes()
+        }
+    }
+
+    private const val BASE_TIMESTAMP = 1577836800000L // 2020-01-01
+}
@@ -0,0 +1,172 @@
+package com.ivanovsky.passnotes.benchmark
+
+import android.util.Log
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.filters.LargeTest
+import androidx.test.platform.app.InstrumentationRegistry
+import com.ivanovsky.passnotes.data.entity.FSAuthority
+import com.ivanovsky.passnotes.data.entity.OperationResult
+import com.ivanovsky.passnotes.data.repository.encdb.EncryptedDatabase
+import com.ivanovsky.passnotes.data.repository.file.FSOptions
+import com.ivanovsky.passnotes.data.repository.file.FileSystemResolver
+import com.ivanovsky.passnotes.data.repository.keepass.KeepassImplementation
+import com.ivanovsky.passnotes.data.repository.keepass.PasswordKeepassKey
+import com.ivanovsky.passnotes.data.repository.keepass.keepassrs.KeepassRsDatabase
+import com.ivanovsky.passnotes.data.repository.keepass.kotpass.KotpassDatabase
+import com.ivanovsky.passnotes.extensions.getOrThrow
+import com.ivanovsky.passnotes.extensions.toFileDescriptor
+import java.io.File
+import java.io.FileInputStream
+import java.io.InputStream
+import java.util.Date
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+import org.koin.core.context.GlobalContext
+
+/**
+ * Compares [KeepassImplementation]s on synthetic databases of different size,
+ * see [BenchmarkDatabaseFactory]. Besides time, BenchmarkRule reports allocation count
+ * per iteration. Peak memory usage of opening is printed to logcat with [TAG].
+ *
+ * Run with: ./gradlew :benchmark:connectedCheck
+ */
+@LargeTest
+@RunWith(Parameterized::class)
+class DatabaseEngineBenchmark(
+    private val implementation: KeepassImplementation,
+    private val entryCount: Int
+) {
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    private lateinit var fsResolver: FileSystemResolver
+    private lateinit var databaseFile: File
+    private val openedDatabases = mutableListOf<EncryptedDatabase>()
+
+    @Before
+    fun setUp() {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+
+        fsResolver = GlobalContext.get().get()
+        databaseFile = BenchmarkDatabaseFactory.getOrCreateDatabaseFile(
+            directory = File(context.filesDir, BENCHMARK_DIRECTORY),
+            entryCount = entryCount
+        )
+    }
+
+    @After
+    fun tearDown() {
+        for (db in openedDatabases) {
+            db.close()
+        }
+        openedDatabases.clear()
+    }
+
+    @Test
+    fun open() {
+        benchmarkRule.measureRepeated {
+            val db = openDatabase(databaseFile)
+
+            runWithTimingDisabled {
+                db.close()
+            }
+        }
+    }
+
+    @Test
+    fun openPeakMemory() {
+        val (db, usage) = PeakMemorySampler().measure {
+            openDatabase(databaseFile)
+        }
+        openedDatabases.add(db)
+
+        Log.i(
+            TAG,
+            "openPeakMemory[$implementation, $entryCount]: " +
+                "heap=${usage.peakHeapInBytes}, nativeHeap=${usage.peakNativeHeapInBytes}"
+        )
+    }
+
+    @Test
+    fun getAll() {
+        val db = openDatabase(databaseFile).also { openedDatabases.add(it) }
+
+        benchmarkRule.measureRepeated {
+            db.noteDao.all.getOrThrow()
+        }
+    }
+
+    @Test
+    fun getNotesByGroupUid() {
+        val db = openDatabase(databaseFile).also { openedDatabases.add(it) }
+        val groupUid = BenchmarkDatabaseFactory.getGroupUid(groupIndex = 0)
+
+        benchmarkRule.measureRepeated {
+            db.noteDao.getNotesByGroupUid(groupUid).getOrThrow()
+        }
+    }
+
+    @Test
+    fun updateAndCommit() {
+        // Commits change the file, so the shared database file is not used
+        val file = File(databaseFile.parentFile, "commit-$implementation-${databaseFile.name}")
+        databaseFile.copyTo(file, overwrite = true)
+
+        val db = openDatabase(file).also { openedDatabases.add(it) }
+        val note = db.noteDao.all.getOrThrow().first()
+
+        benchmarkRule.measureRepeated {
+            val newNote = note.copy(modified = Date())
+
+            db.noteDao.update(newNote, false).getOrThrow()
+            db.commit().onLeft { error ->
+                throw IllegalStateException("Failed to commit: $error")
+            }
+        }
+    }
+
+    private fun openDatabase(file: File): EncryptedDatabase {
+        val descriptor = file.toFileDescriptor(FSAuthority.INTERNAL_FS_AUTHORITY)
+        val content = OperationResult.success<InputStream>(FileInputStream(file))
+        val key = PasswordKeepassKey(BenchmarkDatabaseFactory.PASSWORD)
+
+        return when (implementation) {
+            KeepassImplementation.KOTPASS -> {
+                KotpassDatabase.open(fsResolver, FSOptions.DEFAULT, descriptor, content, key)
+                    .getOrThrow()
+            }
+
+            KeepassImplementation.KEEPASS_RS -> {
+                KeepassRsDatabase.open(fsResolver, FSOptions.DEFAULT, descriptor, content, key)
+                    .fold(
+                        ifLeft = { error ->
+                            throw IllegalStateException("Failed to open database: $error")
+                        },
+                        ifRight = { db -> db }
+                    )
+            }
+        }
+    }
+
+    companion object {
+
+        private const val TAG = "DatabaseEngineBenchmark"
+        private const val BENCHMARK_DIRECTORY = "benchmark"
+
+        private val ENTRY_COUNTS = listOf(1_000, 10_000, 50_000)
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "{0}_{1}")
+        fun parameters(): List<Array<Any>> {
+            return KeepassImplementation.entries.flatMap { implementation ->
+                ENTRY_COUNTS.map { entryCount -> arrayOf(implementation, entryCount) }
+            }
+        }
+    }
+}
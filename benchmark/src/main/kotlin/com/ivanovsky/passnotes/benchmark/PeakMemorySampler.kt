@@ -0,0 +1,63 @@
+package com.ivanovsky.passnotes.benchmark
+
+import android.os.Debug
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.concurrent.thread
+
+/**
+ * Samples used Java heap and native heap while an action is running.
+ * Native heap is important for keepass-rs, that keeps decoded database outside of Java heap.
+ */
+class PeakMemorySampler(
+    private val intervalInMillis: Long = DEFAULT_INTERVAL_IN_MILLIS
+) {
+
+    fun <T> measure(action: () -> T): Pair<T, MemoryUsage> {
+        Runtime.getRuntime().gc()
+
+        val initialHeap = getUsedHeap()
+        val initialNativeHeap = Debug.getNativeHeapAllocatedSize()
+        val peakHeap = AtomicLong(initialHeap)
+        val peakNativeHeap = AtomicLong(initialNativeHeap)
+        val isRunning = AtomicBoolean(true)
+
+        val sampler = thread(name = THREAD_NAME, isDaemon = true) {
+            while (isRunning.get()) {
+                peakHeap.accumulateAndGet(getUsedHeap(), ::maxOf)
+                peakNativeHeap.accumulateAndGet(Debug.getNativeHeapAllocatedSize(), ::maxOf)
+                Thread.sleep(intervalInMillis)
+            }
+        }
+
+        val result = try {
+            action.invoke()
+        } finally {
+            isRunning.set(false)
+            sampler.join()
+        }
+
+        peakHeap.accumulateAndGet(getUsedHeap(), ::maxOf)
+        peakNativeHeap.accumulateAndGet(Debug.getNativeHeapAllocatedSize(), ::maxOf)
+
+        return result to MemoryUsage(
+            peakHeapInBytes = peakHeap.get() - initialHeap,
+            peakNativeHeapInBytes = peakNativeHeap.get() - initialNativeHeap
+        )
+    }
+
+    private fun getUsedHeap(): Long {
+        val runtime = Runtime.getRuntime()
+        return runtime.totalMemory() - runtime.freeMemory()
+    }
+
+    data class MemoryUsage(
+        val peakHeapInBytes: Long,
+        val peakNativeHeapInBytes: Long
+    )
+
+    companion object {
+        private const val THREAD_NAME = "PeakMemorySampler"
+        private const val DEFAULT_INTERVAL_IN_MILLIS = 2L
+    }
+}
@@ -2,16 +2,19 @@ package com.ivanovsky.passnotes.keepassrs
 
 import arrow.core.Either
 import arrow.core.raise.either
+import com.google.protobuf.CodedOutputStream
 import com.google.protobuf.InvalidProtocolBufferException
 import com.ivanovsky.passnotes.keepassrs.proto.v1.Database
 import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseError
 import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseErrorType
 import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseKey
 import com.ivanovsky.passnotes.keepassrs.proto.v1.DecodeDatabaseResult
-import com.ivanovsky.passnotes.keepassrs.proto.v1.EncodeDatabaseResult
+import com.ivanovsky.passnotes.keepassrs.proto.v1.OpenHandleResult
 import com.ivanovsky.passnotes.keepassrs.proto.v1.errorOrNull
 import com.ivanovsky.passnotes.keepassrs.KeepassRsAndroid.nativeDecode
-import com.ivanovsky.passnotes.keepassrs.KeepassRsAndroid.nativeEncode
+import com.ivanovsky.passnotes.keepassrs.KeepassRsAndroid.nativeDecodeBuffer
+import com.ivanovsky.passnotes.keepassrs.KeepassRsAndroid.nativeOpenHandle
+import java.nio.ByteBuffer
 
 object KeepassRs {
 
@@ -34,6 +37,33 @@ object KeepassRs {
             }
         }
 
+    /**
+     * Decodes database from a direct [ByteBuffer]. Native side reads the buffer
+     * in place, so the file content is not copied to the Java heap.
+     * Content is read from the current position up to the limit.
+     */
+    fun decode(
+        data: ByteBuffer,
+        key: DatabaseKey
+    ): Either<KeepassRsException, Database> =
+        either {
+            val buffer = data.toDirectBuffer()
+
+            val protobufResult = nativeDecodeBuffer(
+                databaseBuffer = buffer,
+                databaseLength = buffer.remaining(),
+                keyProto = key.toByteArray()
+            )
+
+            val result = parseProtobuf { DecodeDatabaseResult.parseFrom(protobufResult) }.bind()
+
+            if (result.hasDatabase()) {
+                result.database
+            } else {
+                raise(result.errorOrNull?.toKeepassRsException() ?: KeepassRsException())
+            }
+        }
+
     private fun DatabaseError.toKeepassRsException(): KeepassRsException {
         return when (this.errorType) {
             DatabaseErrorType.INVALID_KEY -> InvalidKeyException(
@@ -47,20 +77,23 @@ object KeepassRs {
         }
     }
 
-    fun encode(
-        database: Database,
-        key: DatabaseKey
-    ): Either<KeepassRsException, ByteArray> =
+    /**
+     * Transfers [database] to native memory. Further changes should be applied
+     * through the returned [KeepassRsHandle].
+     */
+    fun openHandle(database: Database): Either<KeepassRsException, KeepassRsHandle> =
         either {
-            val protobufResult = nativeEncode(
-                databaseProto = database.toByteArray(),
-                keyProto = key.toByteArray()
+            val databaseBuffer = database.toDirectBuffer()
+
+            val protobufResult = nativeOpenHandle(
+                databaseBuffer = databaseBuffer,
+                databaseLength = databaseBuffer.capacity()
             )
 
-            val result = parseProtobuf { EncodeDatabaseResult.parseFrom(protobufResult) }.bind()
+            val result = parseProtobuf { OpenHandleResult.parseFrom(protobufResult) }.bind()
 
-            if (result.hasDatabase()) {
-                result.database.toByteArray()
+            if (result.hasHandle()) {
+                KeepassRsHandle(result.handle)
             } else {
                 raise(
                     KeepassRsException(
@@ -70,6 +103,28 @@ object KeepassRs {
                 )
             }
         }
+
+    private fun Database.toDirectBuffer(): ByteBuffer {
+        val buffer = ByteBuffer.allocateDirect(serializedSize)
+
+        val output = CodedOutputStream.newInstance(buffer)
+        writeTo(output)
+        output.flush()
+
+        return buffer
+    }
+
+    private fun ByteBuffer.toDirectBuffer(): ByteBuffer {
+        if (isDirect && position() == 0) {
+            return this
+        }
+
+        val buffer = ByteBuffer.allocateDirect(remaining())
+        buffer.put(duplicate())
+        buffer.flip()
+
+        return buffer
+    }
 }
 
 fun <T> parseProtobuf(converter: () -> T): Either<KeepassRsException, T> {
@@ -1,5 +1,8 @@
 package com.ivanovsky.passnotes.keepassrs
 
+import java.io.OutputStream
+import java.nio.ByteBuffer
+
 internal object KeepassRsAndroid {
 
     private const val LIBRARY_NAME = "keepass_rs"
@@ -9,5 +12,22 @@ internal object KeepassRsAndroid {
     }
 
     external fun nativeDecode(databaseBytes: ByteArray, keyProto: ByteArray): ByteArray?
-    external fun nativeEncode(databaseProto: ByteArray, keyProto: ByteArray): ByteArray?
+
+    external fun nativeDecodeBuffer(
+        databaseBuffer: ByteBuffer,
+        databaseLength: Int,
+        keyProto: ByteArray
+    ): ByteArray?
+
+    external fun nativeOpenHandle(databaseBuffer: ByteBuffer, databaseLength: Int): ByteArray?
+
+    external fun nativeApplyMutations(handle: Long, mutationsProto: ByteArray): ByteArray?
+
+    external fun nativeEncodeHandle(
+        handle: Long,
+        keyProto: ByteArray,
+        output: OutputStream
+    ): ByteArray?
+
+    external fun nativeCloseHandle(handle: Long)
 }
@@ -0,0 +1,103 @@
+package com.ivanovsky.passnotes.keepassrs
+
+import arrow.core.Either
+import arrow.core.raise.either
+import com.ivanovsky.passnotes.keepassrs.KeepassRsAndroid.nativeApplyMutations
+import com.ivanovsky.passnotes.keepassrs.KeepassRsAndroid.nativeCloseHandle
+import com.ivanovsky.passnotes.keepassrs.KeepassRsAndroid.nativeEncodeHandle
+import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseKey
+import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseMutation
+import com.ivanovsky.passnotes.keepassrs.proto.v1.DatabaseMutations
+import com.ivanovsky.passnotes.keepassrs.proto.v1.EncodeDatabaseResult
+import com.ivanovsky.passnotes.keepassrs.proto.v1.MutationResult
+import com.ivanovsky.passnotes.keepassrs.proto.v1.errorOrNull
+import java.io.Closeable
+import java.io.OutputStream
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Database that is kept in native memory between calls.
+ * Changes are sent as small [DatabaseMutation] messages instead of the whole database.
+ */
+class KeepassRsHandle internal constructor(
+    handle: Long
+) : Closeable {
+
+    private val handleRef = AtomicLong(handle)
+
+    val isClosed: Boolean
+        get() = handleRef.get() == 0L
+
+    fun apply(mutations: List<DatabaseMutation>): Either<KeepassRsException, Unit> =
+        either {
+            if (mutations.isEmpty()) {
+                return@either
+            }
+
+            val protobufResult = nativeApplyMutations(
+                handle = getHandle().bind(),
+                mutationsProto = DatabaseMutations.newBuilder()
+                    .addAllMutations(mutations)
+                    .build()
+                    .toByteArray()
+            )
+
+            val result = parseProtobuf { MutationResult.parseFrom(protobufResult) }.bind()
+
+            if (result.hasError()) {
+                raise(
+                    KeepassRsException(
+                        message = result.errorOrNull?.message ?: "",
+                        cause = null
+                    )
+                )
+            }
+        }
+
+    /**
+     * Encodes database and writes it to [output], nothing is written if encoding fails.
+     * [output] is not closed.
+     */
+    fun encode(
+        key: DatabaseKey,
+        output: OutputStream
+    ): Either<KeepassRsException, Unit> =
+        either {
+            val protobufResult = nativeEncodeHandle(
+                handle = getHandle().bind(),
+                keyProto = key.toByteArray(),
+                output = output
+            )
+
+            val result = parseProtobuf { EncodeDatabaseResult.parseFrom(protobufResult) }.bind()
+
+            if (result.hasError()) {
+                raise(
+                    KeepassRsException(
+                        message = result.errorOrNull?.message ?: "",
+                        cause = null
+                    )
+                )
+            }
+        }
+
+    override fun close() {
+        val handle = handleRef.getAndSet(0L)
+        if (handle != 0L) {
+            nativeCloseHandle(handle)
+        }
+    }
+
+    protected fun finalize() {
+        close()
+    }
+
+    private fun getHandle(): Either<KeepassRsException, Long> {
+        val handle = handleRef.get()
+        return if (handle != 0L) {
+            Either.Right(handle)
+        } else {
+            Either.Left(KeepassRsException(message = "Database handle is closed"))
+        }
+    }
+}
@@ -447,7 +447,7 @@ fn uuid_to_bytes(uuid: &uuid::Uuid) -> Vec<u8> {
     uuid.as_bytes().to_vec()
 }
 
-pub fn convert_proto_database(proto: proto::Database) -> Result<Database, BridgeError> {
+pub fn convert_proto_database(proto: &proto::Database) -> Result<Database, BridgeError> {
     let config = proto
         .config
         .as_ref()
@@ -3,23 +3,42 @@ use crate::error::BridgeError;
 use crate::proto;
 use keepass::config::DatabaseVersion;
 use keepass::Database;
+use std::io::Write;
 
 pub fn encode(
     database_proto: proto::Database,
     key_proto: proto::DatabaseKey,
 ) -> Result<Vec<u8>, BridgeError> {
+    let mut output = Vec::new();
+    encode_to(&database_proto, key_proto, &mut output)?;
+
+    Ok(output)
+}
+
+/// Encodes database and writes it to `output`.
+/// The encrypted file is fully encoded in native memory before the first byte is written,
+/// so that invalid input or a failed encoding never touch `output`. Only a failure of
+/// `output` itself can leave a partially written file behind.
+pub fn encode_to(
+    database_proto: &proto::Database,
+    key_proto: proto::DatabaseKey,
+    output: &mut dyn Write,
+) -> Result<(), BridgeError> {
     let key = convert_proto_key(key_proto)?;
     let mut database = convert_proto_database(database_proto)?;
     convert_to_supported_version(&mut database);
 
-    let mut output = Vec::new();
+    let mut encoded = Vec::new();
     database
-        .save(&mut output, key)
+        .save(&mut encoded, key)
         .map_err(|error| BridgeError::IoError {
             message: error.to_string(),
         })?;
 
-    Ok(output)
+    output.write_all(&encoded)?;
+    output.flush()?;
+
+    Ok(())
 }
 
 fn convert_to_supported_version(database: &mut Database) {
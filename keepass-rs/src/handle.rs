@@ -0,0 +1,418 @@
+use crate::encode::encode_to;
+use crate::error::BridgeError;
+use crate::proto;
+use crate::proto::database_mutation::Value as Mutation;
+use std::collections::HashMap;
+use std::io::Write;
+
+type Uuid = Vec<u8>;
+
+const UUID_SIZE: usize = 16;
+
+/// Database that is kept in native memory between JNI calls.
+/// Parent indexes allow to locate any node without walking the whole tree,
+/// so every mutation touches only the path to the changed node.
+pub struct DatabaseHandle {
+    database: proto::Database,
+    root_uuid: Uuid,
+    group_parents: HashMap<Uuid, Uuid>,
+    entry_groups: HashMap<Uuid, Uuid>,
+}
+
+impl DatabaseHandle {
+    pub fn new(database: proto::Database) -> Result<DatabaseHandle, BridgeError> {
+        let root = database
+            .root_group
+            .as_ref()
+            .ok_or_else(|| handle_error("missing root group"))?;
+
+        let mut handle = DatabaseHandle {
+            root_uuid: root.uuid.clone(),
+            group_parents: HashMap::new(),
+            entry_groups: HashMap::new(),
+            database: proto::Database::default(),
+        };
+        handle.index_group(root);
+        handle.database = database;
+
+        Ok(handle)
+    }
+
+    /// Applies all mutations or none of them: the whole batch is validated before
+    /// the first mutation is applied. Validation rules are the same as on the JVM side
+    /// (see KeepassRsProtoMutations.kt), every referenced node must exist.
+    pub fn apply(&mut self, mutations: proto::DatabaseMutations) -> Result<(), BridgeError> {
+        self.validate(&mutations.mutations)?;
+
+        for mutation in mutations.mutations {
+            let Some(value) = mutation.value else {
+                continue;
+            };
+
+            match value {
+                Mutation::PutEntry(put) => self.put_entry(put)?,
+                Mutation::RemoveEntry(remove) => self.remove_entry(&remove.uuid)?,
+                Mutation::PutGroup(put) => self.put_group(put)?,
+                Mutation::RemoveGroup(remove) => self.remove_group(&remove.uuid)?,
+                Mutation::PutAttachment(attachment) => self.put_attachment(attachment),
+                Mutation::RemoveAttachment(remove) => {
+                    self.database
+                        .attachments
+                        .retain(|attachment| attachment.id != remove.id);
+                }
+                Mutation::SetMeta(meta) => self.database.meta = Some(meta),
+            }
+        }
+
+        Ok(())
+    }
+
+    fn validate(&self, mutations: &[proto::DatabaseMutation]) -> Result<(), BridgeError> {
+        let mut batch = BatchIndex::new(self);
+
+        for mutation in mutations {
+            let Some(value) = mutation.value.as_ref() else {
+                continue;
+            };
+
+            match value {
+                Mutation::PutEntry(put) => {
+                    let entry = put.entry.as_ref().ok_or_else(|| handle_error("missing entry"))?;
+                    check_uuid(&entry.uuid)?;
+                    check_uuid(&put.group_uuid)?;
+
+                    if !batch.is_group_exist(&put.group_uuid) {
+                        return Err(handle_error("group not found"));
+                    }
+
+                    batch
+                        .entry_groups
+                        .insert(entry.uuid.clone(), Some(put.group_uuid.clone()));
+                }
+                Mutation::RemoveEntry(remove) => {
+                    check_uuid(&remove.uuid)?;
+
+                    if batch.entry_group(&remove.uuid).is_none() {
+                        return Err(handle_error("entry not found"));
+                    }
+
+                    batch.entry_groups.insert(remove.uuid.clone(), None);
+                }
+                Mutation::PutGroup(put) => {
+                    let group = put.group.as_ref().ok_or_else(|| handle_error("missing group"))?;
+                    check_uuid(&group.uuid)?;
+
+                    if group.uuid != self.root_uuid {
+                        check_uuid(&put.parent_uuid)?;
+                        if !batch.is_group_exist(&put.parent_uuid) {
+                            return Err(handle_error("group not found"));
+                        }
+
+                        batch.put_group(group, &put.parent_uuid)?;
+                    }
+                }
+                Mutation::RemoveGroup(remove) => {
+                    check_uuid(&remove.uuid)?;
+
+                    if remove.uuid == self.root_uuid || !batch.is_group_exist(&remove.uuid) {
+                        return Err(handle_error("group not found"));
+                    }
+
+                    batch.group_parents.insert(remove.uuid.clone(), None);
+                }
+                _ => {}
+            }
+        }
+
+        Ok(())
+    }
+
+    pub fn encode_to(
+        &self,
+        key_proto: proto::DatabaseKey,
+        output: &mut dyn Write,
+    ) -> Result<(), BridgeError> {
+        encode_to(&self.database, key_proto, output)
+    }
+
+    fn put_entry(&mut self, put: proto::PutEntry) -> Result<(), BridgeError> {
+        let mut entry = put.entry.ok_or_else(|| handle_error("missing entry"))?;
+        entry.parent_group_uuid = put.group_uuid.clone();
+        self.group_path(&put.group_uuid)?;
+
+        let old_group_uuid = self.entry_groups.get(&entry.uuid).cloned();
+        if let Some(old_group_uuid) = old_group_uuid.as_ref() {
+            if old_group_uuid == &put.group_uuid {
+                let group = self.group_mut(&put.group_uuid)?;
+                let old_entry = group
+                    .entries
+                    .iter_mut()
+                    .find(|old_entry| old_entry.uuid == entry.uuid);
+                match old_entry {
+                    Some(old_entry) => *old_entry = entry,
+                    None => group.entries.push(entry),
+                }
+                return Ok(());
+            }
+
+            self.remove_entry(&entry.uuid)?;
+        }
+
+        self.entry_groups
+            .insert(entry.uuid.clone(), put.group_uuid.clone());
+        self.group_mut(&put.group_uuid)?.entries.push(entry);
+
+        Ok(())
+    }
+
+    fn remove_entry(&mut self, uuid: &[u8]) -> Result<(), BridgeError> {
+        let group_uuid = self
+            .entry_groups
+            .remove(uuid)
+            .ok_or_else(|| handle_error("entry not found"))?;
+
+        self.group_mut(&group_uuid)?
+            .entries
+            .retain(|entry| entry.uuid != uuid);
+
+        Ok(())
+    }
+
+    fn put_group(&mut self, put: proto::PutGroup) -> Result<(), BridgeError> {
+        let mut group = put.group.ok_or_else(|| handle_error("missing group"))?;
+        if group.uuid != self.root_uuid {
+            group.parent_uuid = Some(put.parent_uuid.clone());
+            self.group_path(&put.parent_uuid)?;
+        }
+
+        if group.uuid == self.root_uuid || self.group_parents.contains_key(&group.uuid) {
+            let old_parent_uuid = self.group_parents.get(&group.uuid).cloned();
+            if old_parent_uuid.is_some() && old_parent_uuid.as_ref() != Some(&put.parent_uuid) {
+                let moved = self.detach_group(&group.uuid)?;
+                self.group_mut(&put.parent_uuid)?.groups.push(moved);
+                self.group_parents
+                    .insert(group.uuid.clone(), put.parent_uuid);
+            }
+
+            let target = self.group_mut(&group.uuid)?;
+            group.groups = std::mem::take(&mut target.groups);
+            group.entries = std::mem::take(&mut target.entries);
+            *target = group;
+        } else {
+            self.group_parents
+                .insert(group.uuid.clone(), put.parent_uuid.clone());
+            self.index_group(&group);
+            self.group_mut(&put.parent_uuid)?.groups.push(group);
+        }
+
+        Ok(())
+    }
+
+    fn remove_group(&mut self, uuid: &[u8]) -> Result<(), BridgeError> {
+        let group = self.detach_group(uuid)?;
+        self.group_parents.remove(uuid);
+        self.unindex_group(&group);
+
+        Ok(())
+    }
+
+    fn put_attachment(&mut self, attachment: proto::Attachment) {
+        let attachments = &mut self.database.attachments;
+
+        match attachments.iter_mut().find(|item| item.id == attachment.id) {
+            Some(existing) => *existing = attachment,
+            None => attachments.push(attachment),
+        }
+    }
+
+    /// Removes group from its parent and returns it, indexes are not changed.
+    fn detach_group(&mut self, uuid: &[u8]) -> Result<proto::Group, BridgeError> {
+        let parent_uuid = self
+            .group_parents
+            .get(uuid)
+            .cloned()
+            .ok_or_else(|| handle_error("group not found"))?;
+
+        let parent = self.group_mut(&parent_uuid)?;
+        let index = parent
+            .groups
+            .iter()
+            .position(|group| group.uuid == uuid)
+            .ok_or_else(|| handle_error("group not found"))?;
+
+        Ok(parent.groups.remove(index))
+    }
+
+    fn group_mut(&mut self, uuid: &[u8]) -> Result<&mut proto::Group, BridgeError> {
+        let path = self.group_path(uuid)?;
+
+        let mut group = self
+            .database
+            .root_group
+            .as_mut()
+            .ok_or_else(|| handle_error("missing root group"))?;
+
+        for child_uuid in &path {
+            group = group
+                .groups
+                .iter_mut()
+                .find(|child| &child.uuid == child_uuid)
+                .ok_or_else(|| handle_error("group not found"))?;
+        }
+
+        Ok(group)
+    }
+
+    /// Returns uuids of groups from the root (exclusive) to the group (inclusive).
+    fn group_path(&self, uuid: &[u8]) -> Result<Vec<Uuid>, BridgeError> {
+        let mut path = Vec::new();
+        let mut current = uuid.to_vec();
+
+        while current != self.root_uuid {
+            let parent = self
+                .group_parents
+                .get(&current)
+                .ok_or_else(|| handle_error("group not found"))?;
+
+            path.push(current);
+            current = parent.clone();
+        }
+        path.reverse();
+
+        Ok(path)
+    }
+
+    fn index_group(&mut self, group: &proto::Group) {
+        for entry in &group.entries {
+            self.entry_groups
+                .insert(entry.uuid.clone(), group.uuid.clone());
+        }
+
+        for child in &group.groups {
+            self.group_parents
+                .insert(child.uuid.clone(), group.uuid.clone());
+            self.index_group(child);
+        }
+    }
+
+    fn unindex_group(&mut self, group: &proto::Group) {
+        for entry in &group.entries {
+            self.entry_groups.remove(&entry.uuid);
+        }
+
+        for child in &group.groups {
+            self.group_parents.remove(&child.uuid);
+            self.unindex_group(child);
+        }
+    }
+}
+
+/// Changes of the batch on top of the handle indexes, the indexes themselves are not modified.
+/// Node exists if all groups on the path from it to the root exist.
+struct BatchIndex<'a> {
+    handle: &'a DatabaseHandle,
+    // None means that node is removed by the batch
+    group_parents: HashMap<Uuid, Option<Uuid>>,
+    entry_groups: HashMap<Uuid, Option<Uuid>>,
+}
+
+impl<'a> BatchIndex<'a> {
+    fn new(handle: &'a DatabaseHandle) -> BatchIndex<'a> {
+        BatchIndex {
+            handle,
+            group_parents: HashMap::new(),
+            entry_groups: HashMap::new(),
+        }
+    }
+
+    fn parent(&self, uuid: &[u8]) -> Option<&Uuid> {
+        match self.group_parents.get(uuid) {
+            Some(parent) => parent.as_ref(),
+            None => self.handle.group_parents.get(uuid),
+        }
+    }
+
+    fn is_group_exist(&self, uuid: &[u8]) -> bool {
+        let mut current = uuid;
+        while current != self.handle.root_uuid.as_slice() {
+            match self.parent(current) {
+                Some(parent) => current = parent.as_slice(),
+                None => return false,
+            }
+        }
+
+        true
+    }
+
+    fn is_inside_group_tree(&self, uuid: &[u8], tree_root_uuid: &[u8]) -> bool {
+        let mut current = Some(uuid);
+        while let Some(uuid) = current {
+            if uuid == tree_root_uuid {
+                return true;
+            }
+            current = self.parent(uuid).map(|parent| parent.as_slice());
+        }
+
+        false
+    }
+
+    fn entry_group(&self, uuid: &[u8]) -> Option<&Uuid> {
+        let group_uuid = match self.entry_groups.get(uuid) {
+            Some(group_uuid) => group_uuid.as_ref(),
+            None => self.handle.entry_groups.get(uuid),
+        };
+
+        group_uuid.filter(|group_uuid| self.is_group_exist(group_uuid))
+    }
+
+    fn put_group(&mut self, group: &proto::Group, parent_uuid: &[u8]) -> Result<(), BridgeError> {
+        if self.is_group_exist(&group.uuid) {
+            if self.is_inside_group_tree(parent_uuid, &group.uuid) {
+                return Err(handle_error("group can't be moved inside its own tree"));
+            }
+
+            self.group_parents
+                .insert(group.uuid.clone(), Some(parent_uuid.to_vec()));
+            return Ok(());
+        }
+
+        // Removed groups can't be inserted back in the same batch, their descendants
+        // that are still referenced by the indexes would be resurrected
+        if self.handle.group_path(&group.uuid).is_ok() {
+            return Err(handle_error("group not found"));
+        }
+
+        self.group_parents
+            .insert(group.uuid.clone(), Some(parent_uuid.to_vec()));
+        self.index_group(group);
+
+        Ok(())
+    }
+
+    fn index_group(&mut self, group: &proto::Group) {
+        for entry in &group.entries {
+            self.entry_groups
+                .insert(entry.uuid.clone(), Some(group.uuid.clone()));
+        }
+
+        for child in &group.groups {
+            self.group_parents
+                .insert(child.uuid.clone(), Some(group.uuid.clone()));
+            self.index_group(child);
+        }
+    }
+}
+
+fn check_uuid(uuid: &[u8]) -> Result<(), BridgeError> {
+    if uuid.len() != UUID_SIZE {
+        return Err(handle_error("invalid uuid"));
+    }
+
+    Ok(())
+}
+
+fn handle_error(message: &str) -> BridgeError {
+    BridgeError::ProtobufFormat {
+        message: message.to_string(),
+    }
+}
@@ -0,0 +1,92 @@
+use crate::error::BridgeError;
+use jni::{
+    objects::{JByteArray, JByteBuffer, JObject, JValue},
+    JNIEnv,
+};
+use std::io::{Error, ErrorKind, Write};
+
+const OUTPUT_CHUNK_SIZE: usize = 64 * 1024;
+
+/// Returns content of a direct `java.nio.ByteBuffer` without copying it.
+/// The slice is valid as long as the buffer is referenced by the Java side.
+pub fn get_direct_buffer_slice<'a>(
+    env: &JNIEnv<'_>,
+    buffer: &'a JByteBuffer<'_>,
+    length: usize,
+) -> Result<&'a [u8], BridgeError> {
+    let address = env.get_direct_buffer_address(buffer)?;
+    let capacity = env.get_direct_buffer_capacity(buffer)?;
+
+    if address.is_null() || length > capacity {
+        return Err(BridgeError::IoError {
+            message: format!("Invalid direct buffer: length={length}, capacity={capacity}"),
+        });
+    }
+
+    Ok(unsafe { std::slice::from_raw_parts(address, length) })
+}
+
+/// Adapter that writes to `java.io.OutputStream` through a single reusable
+/// Java array, so the written data is never fully materialized on the Java heap.
+pub struct JniOutputStream<'a, 'local> {
+    env: &'a mut JNIEnv<'local>,
+    stream: &'a JObject<'local>,
+    chunk: JByteArray<'local>,
+}
+
+impl<'a, 'local> JniOutputStream<'a, 'local> {
+    pub fn new(
+        env: &'a mut JNIEnv<'local>,
+        stream: &'a JObject<'local>,
+    ) -> Result<Self, BridgeError> {
+        let chunk = env.new_byte_array(OUTPUT_CHUNK_SIZE as i32)?;
+
+        Ok(JniOutputStream { env, stream, chunk })
+    }
+
+    fn to_io_error(&mut self, error: jni::errors::Error) -> Error {
+        // Pending Java exception must be cleared before any further JNI call
+        if self.env.exception_check().unwrap_or(false) {
+            let _ = self.env.exception_clear();
+        }
+
+        Error::new(ErrorKind::Other, error.to_string())
+    }
+}
+
+impl Write for JniOutputStream<'_, '_> {
+    fn write(&mut self, buf: &[u8]) -> std::io::Result<usize> {
+        let length = buf.len().min(OUTPUT_CHUNK_SIZE);
+        if length == 0 {
+            return Ok(0);
+        }
+
+        let bytes = unsafe { std::slice::from_raw_parts(buf.as_ptr() as *const i8, length) };
+        if let Err(error) = self.env.set_byte_array_region(&self.chunk, 0, bytes) {
+            return Err(self.to_io_error(error));
+        }
+
+        let result = self.env.call_method(
+            self.stream,
+            "write",
+            "([BII)V",
+            &[
+                JValue::Object(self.chunk.as_ref()),
+                JValue::Int(0),
+                JValue::Int(length as i32),
+            ],
+        );
+
+        match result {
+            Ok(_) => Ok(length),
+            Err(error) => Err(self.to_io_error(error)),
+        }
+    }
+
+    fn flush(&mut self) -> std::io::Result<()> {
+        match self.env.call_method(self.stream, "flush", "()V", &[]) {
+            Ok(_) => Ok(()),
+            Err(error) => Err(self.to_io_error(error)),
+        }
+    }
+}
@@ -2,15 +2,20 @@ pub mod converter;
 pub mod decode;
 pub mod encode;
 pub mod error;
+pub mod handle;
+pub mod jni_io;
 
 use crate::decode::decode;
-use crate::encode::encode;
 use crate::error::BridgeError;
+use crate::handle::DatabaseHandle;
+use crate::jni_io::{get_direct_buffer_slice, JniOutputStream};
 
-use crate::proto::{DatabaseError, DecodeDatabaseResult, EncodeDatabaseResult};
+use crate::proto::{
+    DatabaseError, DecodeDatabaseResult, EncodeDatabaseResult, MutationResult, OpenHandleResult,
+};
 use jni::{
-    objects::{JByteArray, JObject},
-    sys::jbyteArray,
+    objects::{JByteArray, JByteBuffer, JObject},
+    sys::{jbyteArray, jint, jlong},
     JNIEnv,
 };
 use prost::Message;
@@ -44,18 +49,66 @@ fn native_decode(
     Ok(decode(&bytes, key)?)
 }
 
-fn native_encode(
+fn native_decode_buffer(
     env: &JNIEnv<'_>,
-    database_proto: JByteArray<'_>,
+    database_buffer: JByteBuffer<'_>,
+    database_length: jint,
     key_proto: JByteArray<'_>,
-) -> Result<Vec<u8>, BridgeError> {
+) -> Result<proto::Database, BridgeError> {
+    let bytes = get_direct_buffer_slice(env, &database_buffer, database_length as usize)?;
     let key = get_jni_byte_array(env, key_proto)
         .and_then(|bytes| Ok(proto::DatabaseKey::decode(bytes.as_slice())?))?;
 
-    let database = get_jni_byte_array(env, database_proto)
-        .and_then(|bytes| Ok(proto::Database::decode(bytes.as_slice())?))?;
+    Ok(decode(bytes, key)?)
+}
+
+fn native_open_handle(
+    env: &JNIEnv<'_>,
+    database_buffer: JByteBuffer<'_>,
+    database_length: jint,
+) -> Result<jlong, BridgeError> {
+    let database = get_direct_buffer_slice(env, &database_buffer, database_length as usize)
+        .and_then(|bytes| Ok(proto::Database::decode(bytes)?))?;
+
+    let handle = DatabaseHandle::new(database)?;
+
+    Ok(Box::into_raw(Box::new(handle)) as jlong)
+}
+
+fn get_database_handle<'a>(handle: jlong) -> Result<&'a mut DatabaseHandle, BridgeError> {
+    if handle == 0 {
+        return Err(BridgeError::IoError {
+            message: "Database handle is closed".to_string(),
+        });
+    }
 
-    Ok(encode(database, key)?)
+    Ok(unsafe { &mut *(handle as *mut DatabaseHandle) })
+}
+
+fn native_apply_mutations(
+    env: &JNIEnv<'_>,
+    handle: jlong,
+    mutations_proto: JByteArray<'_>,
+) -> Result<(), BridgeError> {
+    let mutations = get_jni_byte_array(env, mutations_proto)
+        .and_then(|bytes| Ok(proto::DatabaseMutations::decode(bytes.as_slice())?))?;
+
+    get_database_handle(handle)?.apply(mutations)
+}
+
+fn native_encode_handle<'local>(
+    env: &mut JNIEnv<'local>,
+    handle: jlong,
+    key_proto: JByteArray<'local>,
+    output: JObject<'local>,
+) -> Result<(), BridgeError> {
+    let key = get_jni_byte_array(env, key_proto)
+        .and_then(|bytes| Ok(proto::DatabaseKey::decode(bytes.as_slice())?))?;
+
+    let database = get_database_handle(handle)?;
+    let mut stream = JniOutputStream::new(env, &output)?;
+
+    database.encode_to(key, &mut stream)
 }
 
 #[allow(non_snake_case)]
@@ -83,15 +136,83 @@ pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_n
 
 #[allow(non_snake_case)]
 #[unsafe(no_mangle)]
-pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_nativeEncode(
+pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_nativeDecodeBuffer(
     env: JNIEnv<'_>,
     _this: JObject<'_>,
-    database_proto: JByteArray<'_>,
+    database_buffer: JByteBuffer<'_>,
+    database_length: jint,
     key_proto: JByteArray<'_>,
 ) -> jbyteArray {
-    let result = match native_encode(&env, database_proto, key_proto) {
-        Ok(bytes) => EncodeDatabaseResult {
-            database: Some(bytes),
+    let result = match native_decode_buffer(&env, database_buffer, database_length, key_proto) {
+        Ok(db) => DecodeDatabaseResult {
+            database: Some(db),
+            error: None,
+        },
+
+        Err(error) => DecodeDatabaseResult {
+            database: None,
+            error: Some(DatabaseError::from(error)),
+        },
+    };
+
+    new_jni_byte_array(&env, &result.encode_to_vec())
+}
+
+#[allow(non_snake_case)]
+#[unsafe(no_mangle)]
+pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_nativeOpenHandle(
+    env: JNIEnv<'_>,
+    _this: JObject<'_>,
+    database_buffer: JByteBuffer<'_>,
+    database_length: jint,
+) -> jbyteArray {
+    let result = match native_open_handle(&env, database_buffer, database_length) {
+        Ok(handle) => OpenHandleResult {
+            handle: Some(handle as u64),
+            error: None,
+        },
+
+        Err(error) => OpenHandleResult {
+            handle: None,
+            error: Some(DatabaseError::from(error)),
+        },
+    };
+
+    new_jni_byte_array(&env, &result.encode_to_vec())
+}
+
+#[allow(non_snake_case)]
+#[unsafe(no_mangle)]
+pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_nativeApplyMutations(
+    env: JNIEnv<'_>,
+    _this: JObject<'_>,
+    handle: jlong,
+    mutations_proto: JByteArray<'_>,
+) -> jbyteArray {
+    let result = match native_apply_mutations(&env, handle, mutations_proto) {
+        Ok(()) => MutationResult { error: None },
+        Err(error) => MutationResult {
+            error: Some(DatabaseError::from(error)),
+        },
+    };
+
+    new_jni_byte_array(&env, &result.encode_to_vec())
+}
+
+#[allow(non_snake_case)]
+#[unsafe(no_mangle)]
+pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_nativeEncodeHandle<
+    'local,
+>(
+    mut env: JNIEnv<'local>,
+    _this: JObject<'local>,
+    handle: jlong,
+    key_proto: JByteArray<'local>,
+    output: JObject<'local>,
+) -> jbyteArray {
+    let result = match native_encode_handle(&mut env, handle, key_proto, output) {
+        Ok(()) => EncodeDatabaseResult {
+            database: None,
             error: None,
         },
 
@@ -103,3 +224,15 @@ pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_n
 
     new_jni_byte_array(&env, &result.encode_to_vec())
 }
+
+#[allow(non_snake_case)]
+#[unsafe(no_mangle)]
+pub extern "system" fn Java_com_ivanovsky_passnotes_keepassrs_KeepassRsAndroid_nativeCloseHandle(
+    _env: JNIEnv<'_>,
+    _this: JObject<'_>,
+    handle: jlong,
+) {
+    if handle != 0 {
+        drop(unsafe { Box::from_raw(handle as *mut DatabaseHandle) });
+    }
+}
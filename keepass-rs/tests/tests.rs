@@ -4,8 +4,9 @@ pub mod test_data;
 mod tests {
     use crate::test_data::{TestDatabaseKey, TEST_DATABASES};
     use keepass_rs::decode::decode;
-    use keepass_rs::encode::encode;
+    use keepass_rs::encode::{encode, encode_to};
     use keepass_rs::error::BridgeError;
+    use keepass_rs::handle::DatabaseHandle;
     use keepass_rs::proto;
     use std::fs;
     use std::io::Error;
@@ -71,6 +72,125 @@ mod tests {
         }
     }
 
+    #[test]
+    fn should_encode_database_to_writer() {
+        for test_database in TEST_DATABASES {
+            // arrange
+            let db_bytes = read_file(test_database.path).unwrap();
+            let key = convert_key(&test_database.key);
+            let database = decode(&db_bytes, key.clone()).unwrap();
+            let expected = get_expected_database(&database);
+            let mut output = Vec::new();
+
+            // act
+            let result = encode_to(&database, key.clone(), &mut output);
+
+            // assert
+            assert!(result.is_ok());
+            let actual = decode(&output, key.clone()).unwrap();
+            assert_eq!(actual.root_group, expected.root_group);
+            assert_eq!(actual.attachments, expected.attachments);
+        }
+    }
+
+    #[test]
+    fn should_apply_mutations_to_handle() {
+        // arrange
+        let test_database = TEST_DATABASES.first().unwrap();
+        let db_bytes = read_file(test_database.path).unwrap();
+        let key = convert_key(&test_database.key);
+        let database = decode(&db_bytes, key.clone()).unwrap();
+        let root = database.root_group.clone().unwrap();
+        let group = root
+            .groups
+            .iter()
+            .find(|group| !group.entries.is_empty())
+            .unwrap();
+        let group_uuid = group.uuid.clone();
+        let mut entry = group.entries.first().unwrap().clone();
+        entry.fields = vec![proto::Field {
+            name: "Title".to_string(),
+            value: "Updated title".to_string(),
+            is_protected: false,
+        }];
+        let mutations = proto::DatabaseMutations {
+            mutations: vec![proto::DatabaseMutation {
+                value: Some(proto::database_mutation::Value::PutEntry(proto::PutEntry {
+                    group_uuid: group_uuid.clone(),
+                    entry: Some(entry.clone()),
+                })),
+            }],
+        };
+        let mut handle = DatabaseHandle::new(database).unwrap();
+
+        // act
+        let result = handle.apply(mutations);
+
+        // assert
+        assert!(result.is_ok());
+        let mut output = Vec::new();
+        handle.encode_to(key.clone(), &mut output).unwrap();
+        let actual = decode(&output, key.clone()).unwrap();
+        let actual_entry = actual
+            .root_group
+            .unwrap()
+            .groups
+            .into_iter()
+            .find(|actual_group| actual_group.uuid == group_uuid)
+            .unwrap()
+            .entries
+            .into_iter()
+            .find(|actual_entry| actual_entry.uuid == entry.uuid)
+            .unwrap();
+        assert_eq!(actual_entry.fields, entry.fields);
+    }
+
+    #[test]
+    fn should_not_apply_batch_with_missing_node() {
+        // arrange
+        let test_database = TEST_DATABASES.first().unwrap();
+        let db_bytes = read_file(test_database.path).unwrap();
+        let key = convert_key(&test_database.key);
+        let database = decode(&db_bytes, key.clone()).unwrap();
+        let root = database.root_group.clone().unwrap();
+        let entry = proto::Entry {
+            uuid: vec![1; 16],
+            ..Default::default()
+        };
+        let mutations = proto::DatabaseMutations {
+            mutations: vec![
+                proto::DatabaseMutation {
+                    value: Some(proto::database_mutation::Value::PutEntry(proto::PutEntry {
+                        group_uuid: root.uuid.clone(),
+                        entry: Some(entry.clone()),
+                    })),
+                },
+                proto::DatabaseMutation {
+                    value: Some(proto::database_mutation::Value::RemoveGroup(
+                        proto::RemoveGroup {
+                            uuid: vec![2; 16],
+                        },
+                    )),
+                },
+            ],
+        };
+        let mut handle = DatabaseHandle::new(database).unwrap();
+
+        // act
+        let result = handle.apply(mutations);
+
+        // assert
+        assert!(result.is_err());
+        let mut output = Vec::new();
+        handle.encode_to(key.clone(), &mut output).unwrap();
+        let actual = decode(&output, key.clone()).unwrap();
+        let actual_root = actual.root_group.unwrap();
+        assert!(actual_root
+            .entries
+            .iter()
+            .all(|actual_entry| actual_entry.uuid != entry.uuid));
+    }
+
     fn get_expected_database(source: &proto::Database) -> proto::Database {
         proto::Database {
             config: source.config.clone().map(|config| proto::DatabaseConfig {
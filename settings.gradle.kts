@@ -9,3 +9,4 @@ pluginManagement {
 rootProject.name = "KeePassVault"
 include(":app")
 include(":keepass-rs-android")
+include(":benchmark")